@@ -11,11 +11,21 @@ import com.hazelcast.config.FileSystemXmlConfig;
 import com.hazelcast.config.XmlConfigLocator;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
+import com.weaxme.wicket.cluster.component.CounterPanel;
+import com.weaxme.wicket.cluster.counter.ClusterCounter;
+import com.weaxme.wicket.cluster.pageStore.HazelcastDataStore;
+import com.weaxme.wicket.cluster.pageStore.HazelcastPerPageDataStore;
+import com.weaxme.wicket.cluster.pageStore.tiered.TieredDataStore;
+import com.weaxme.wicket.cluster.persistence.MapPersistence;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import com.weaxme.wicket.cluster.session.HazelcastSessionStore2;
+import com.weaxme.wicket.cluster.session.SessionAliases;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.wicket.guice.GuiceWebApplicationFactory;
 import org.apache.wicket.protocol.http.WebApplication;
 import org.apache.wicket.protocol.http.WicketFilter;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -60,7 +70,13 @@ public class InitModule extends ServletModule {
 
     @Provides
     @Singleton
-    public HazelcastInstance provideHazelcast(@Named("hazelcast.config") String configFile) {
+    public HazelcastInstance provideHazelcast(@Named("hazelcast.config") String configFile, @Named("node.name") String node,
+                                              @Named("map-store") boolean mapStore,
+                                              @Named("map-store.directory") String mapStoreDirectory,
+                                              @Named("map-store.write-delay-seconds") int mapStoreWriteDelay,
+                                              @Named("map-store.write-batch-size") int mapStoreBatchSize,
+                                              @Named("map-store.max-age-seconds") long mapStoreMaxAge,
+                                              @Named("session.timeout-seconds") int sessionTimeout) {
         Config config;
         try {
             config = new FileSystemXmlConfig(configFile);
@@ -69,6 +85,32 @@ public class InitModule extends ServletModule {
             config = new Config();
             config.setInstanceName("wicket-cluster-hazelcast");
         }
+        ClusterSerialization.configure(config);
+        config.getMemberAttributeConfig().setStringAttribute(TieredDataStore.MEMBER_NODE_ATTRIBUTE, node);
+        // entries of idle sessions expire together with the http sessions, page locations are removed by
+        // the session sweeper
+        for (String mapName : new String[]{HazelcastSessionStore2.STORE_NAME, HazelcastDataStore.STORE_NAME,
+                HazelcastPerPageDataStore.STORE_NAME, HazelcastPerPageDataStore.INDEX_NAME}) {
+            config.getMapConfig(mapName).setMaxIdleSeconds(sessionTimeout);
+        }
+        // graphs are touched with the attributes every half of the timeout and outlive them, so the sweeper
+        // still finds the group of an expired session. Graphs it missed expire too
+        config.getMapConfig(SessionAliases.GRAPH_STORE_NAME).setMaxIdleSeconds(2 * sessionTimeout);
+        if (mapStore) {
+            MapPersistence.configure(config, new File(mapStoreDirectory), mapStoreWriteDelay, mapStoreBatchSize, mapStoreMaxAge,
+                    HazelcastDataStore.STORE_NAME, HazelcastPerPageDataStore.STORE_NAME, HazelcastPerPageDataStore.INDEX_NAME,
+                    HazelcastSessionStore2.STORE_NAME, SessionAliases.GRAPH_STORE_NAME);
+            // written once per demoted page and removed with it, so they are never too old to be loaded
+            MapPersistence.configure(config, new File(mapStoreDirectory), mapStoreWriteDelay, mapStoreBatchSize, 0,
+                    TieredDataStore.LOCATION_STORE_NAME, TieredDataStore.COLD_INDEX_NAME);
+        }
         return Hazelcast.getOrCreateHazelcastInstance(config);
     }
+
+    @Provides
+    @Singleton
+    public ClusterCounter provideCounter(HazelcastInstance hazelcast,
+                                         @Named("counter.max-staleness-millis") long maxStalenessMillis) {
+        return new ClusterCounter(hazelcast, CounterPanel.COUNTER_NAME, maxStalenessMillis);
+    }
 }
@@ -4,8 +4,13 @@ import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.name.Named;
 import com.hazelcast.core.HazelcastInstance;
-import com.weaxme.wicket.cluster.pageStore.HazelcastDataStore;
+import com.weaxme.wicket.cluster.counter.ClusterCounter;
+import com.weaxme.wicket.cluster.pageStore.HazelcastDataStoreFactory;
+import com.weaxme.wicket.cluster.serialization.FstSerializer;
 import com.weaxme.wicket.cluster.session.HazelcastSessionStore2;
+import com.weaxme.wicket.cluster.session.HeaderSessionIdResolver;
+import com.weaxme.wicket.cluster.session.RoutingHints;
+import com.weaxme.wicket.cluster.session.SessionIdResolver;
 import com.weaxme.wicket.cluster.web.HomePage;
 import de.agilecoders.wicket.webjars.WicketWebjars;
 import de.agilecoders.wicket.webjars.request.resource.WebjarsJavaScriptResourceReference;
@@ -24,6 +29,36 @@ public class WicketClusterApplication extends WebApplication {
     @Named("node.name")
     private String node;
 
+    @Inject
+    private HazelcastDataStoreFactory dataStoreFactory;
+
+    @Inject
+    private ClusterCounter counter;
+
+    @Inject
+    @Named("session.timeout-seconds")
+    private int sessionTimeout;
+
+    @Inject
+    @Named("session.sweeper.interval-seconds")
+    private int sweepInterval;
+
+    @Inject
+    @Named("session.sweeper.batch-size")
+    private int sweepBatchSize;
+
+    @Inject
+    @Named("session.id-header")
+    private String sessionIdHeader;
+
+    @Inject
+    @Named("session.routing-hints")
+    private boolean routingHints;
+
+    @Inject
+    @Named("serializer")
+    private String serializer;
+
     @Override
     public Class<? extends Page> getHomePage() {
         return HomePage.class;
@@ -38,13 +73,27 @@ public class WicketClusterApplication extends WebApplication {
 
         mountPage("/", HomePage.class);
 
+        if ("fst".equals(serializer)) {
+            getFrameworkSettings().setSerializer(new FstSerializer(getApplicationSettings().getClassResolver().getClassLoader()));
+        }
+
+        IDataStore dataStore = dataStoreFactory.newDataStore(hazelcast);
         setPageManagerProvider(new DefaultPageManagerProvider(this) {
             @Override
             protected IDataStore newDataStore() {
-                return new HazelcastDataStore(hazelcast);
+                return dataStore;
             }
         });
-        setSessionStoreProvider(() -> new HazelcastSessionStore2(hazelcast, node));
+        SessionIdResolver idResolver = sessionIdHeader.isEmpty() ? SessionIdResolver.standard()
+                : SessionIdResolver.chain(SessionIdResolver.standard(), new HeaderSessionIdResolver(sessionIdHeader));
+        setSessionStoreProvider(() -> new HazelcastSessionStore2(hazelcast, node, sessionTimeout, sweepInterval,
+                sweepBatchSize, idResolver, routingHints ? new RoutingHints(node) : null, dataStore));
+    }
+
+    @Override
+    protected void onDestroy() {
+        counter.destroy();
+        super.onDestroy();
     }
 
     public Injector getInjector() {
@@ -54,4 +103,8 @@ public class WicketClusterApplication extends WebApplication {
     public HazelcastInstance getHazelcast() {
         return hazelcast;
     }
+
+    public ClusterCounter getCounter() {
+        return counter;
+    }
 }
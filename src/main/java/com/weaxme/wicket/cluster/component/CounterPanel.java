@@ -6,9 +6,9 @@ import com.google.inject.name.Named;
 import com.google.inject.name.Names;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.core.IAtomicLong;
 import com.hazelcast.core.IMap;
 import com.weaxme.wicket.cluster.WicketClusterApplication;
+import com.weaxme.wicket.cluster.counter.ClusterCounter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.ajax.markup.html.AjaxLink;
@@ -51,9 +51,7 @@ public class CounterPanel extends Panel {
             @Override
             protected void onConfigure() {
                 super.onConfigure();
-                IAtomicLong counter = getCounter();
-//                log.info("counter: {}", counter.get());
-                setDefaultModelObject(counter.get());
+                setDefaultModelObject(getCounter().get());
             }
 
             @Override
@@ -68,8 +66,7 @@ public class CounterPanel extends Panel {
         return new AjaxLink<Void>(id) {
             @Override
             public void onClick(AjaxRequestTarget target) {
-                IAtomicLong counter = getCounter();
-                counter.alter(l -> l + 1);
+                getCounter().increment();
                 target.add(CounterPanel.this);
             }
         };
@@ -79,16 +76,15 @@ public class CounterPanel extends Panel {
         return new AjaxLink<Void>(id) {
             @Override
             public void onClick(AjaxRequestTarget target) {
-                IAtomicLong counter = getCounter();
-                if (counter.get() > 0) counter.alter(l -> l - 1);
+                getCounter().decrement();
                 target.add(CounterPanel.this);
             }
         };
     }
 
 
-    private IAtomicLong getCounter() {
+    private ClusterCounter getCounter() {
         WicketClusterApplication app = (WicketClusterApplication) WicketClusterApplication.get();
-        return app.getHazelcast().getAtomicLong(COUNTER_NAME);
+        return app.getCounter();
     }
 }
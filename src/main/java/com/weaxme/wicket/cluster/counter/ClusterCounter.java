@@ -0,0 +1,232 @@
+package com.weaxme.wicket.cluster.counter;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IAtomicLong;
+import com.hazelcast.core.IFunction;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.ObjectName;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cluster wide counter which doesn't go below zero.
+ * <p>
+ * Increments are added to striped local counters and flushed to the cluster {@link IAtomicLong} by a background
+ * thread with one {@link IAtomicLong#addAndGet(long)} per interval, so clicks on a node cost no network round trip.
+ * A decrement first takes back an increment of this node which isn't flushed yet, otherwise it is applied by one
+ * {@link IAtomicLong#getAndAlter(IFunction)} on the member owning the counter, which decrements only a positive value.
+ * The counter never goes below zero and a decrement is refused only if the cluster value and the unflushed increments
+ * of the node are zero.
+ * <p>
+ * Reads return the last known cluster value plus the unflushed increments of the node. The cluster value is read
+ * again when it is older than half of the staleness bound and increments are flushed every half of the bound, so a
+ * read reflects every increment made on any node more than {@code maxStalenessMillis} ago. With a bound of zero every
+ * operation goes to the cluster.
+ */
+@Slf4j
+public class ClusterCounter {
+
+    /**
+     * Distance between used stripes, in longs, so the stripes lie on different cache lines
+     */
+    private static final int STRIDE = 8;
+
+    private final IAtomicLong counter;
+    private final long maxStalenessMillis;
+    private final long flushMillis;
+
+    private final AtomicLongArray stripes;
+    private final int mask;
+
+    /**
+     * Held while flushed increments are on the way to the cluster and by decrements which go to the cluster,
+     * so a decrement never misses increments of this node
+     */
+    private final Lock flushLock = new ReentrantLock();
+
+    private volatile long clusterValue;
+    private volatile long readAt;
+
+    private final CounterStats stats;
+    private final ObjectName objectName;
+    private final Thread flusher;
+
+    private volatile boolean destroyed;
+
+    public ClusterCounter(HazelcastInstance hazelcast, String name, long maxStalenessMillis) {
+        this.counter = hazelcast.getAtomicLong(name);
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.flushMillis = Math.max(1, maxStalenessMillis / 2);
+        // power of two not less than the number of processors
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1) << 1);
+        this.stripes = new AtomicLongArray(stripeCount * STRIDE);
+        this.mask = stripeCount - 1;
+        this.stats = new CounterStats(maxStalenessMillis);
+        this.objectName = JmxSupport.register(stats, "Counter", name);
+        if (maxStalenessMillis > 0) {
+            this.flusher = new Thread(this::flushPeriodically, "wicket-cluster-counter-" + name);
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    public void increment() {
+        stats.onIncrement();
+        if (flusher == null) {
+            clusterValue = counter.incrementAndGet();
+            return;
+        }
+        stripes.getAndIncrement(stripe() * STRIDE);
+    }
+
+    /**
+     * @return true if the counter was decremented, false if it is zero
+     */
+    public boolean decrement() {
+        if (takeLocal()) {
+            stats.onLocalDecrement();
+            return true;
+        }
+        long previous;
+        flushLock.lock();
+        try {
+            // increments of this node which came meanwhile are taken before the cluster value
+            if (takeLocal()) {
+                stats.onLocalDecrement();
+                return true;
+            }
+            previous = counter.getAndAlter(new DecrementIfPositive());
+        } finally {
+            flushLock.unlock();
+        }
+        clusterValue = Math.max(0, previous - 1);
+        readAt = System.currentTimeMillis();
+        if (previous > 0) {
+            stats.onClusterDecrement();
+            return true;
+        }
+        stats.onRefusedDecrement();
+        return false;
+    }
+
+    /**
+     * @return value of the counter which is at most {@code maxStalenessMillis} old
+     */
+    public long get() {
+        long now = System.currentTimeMillis();
+        if (flusher == null || now - readAt >= flushMillis) {
+            clusterValue = counter.get();
+            readAt = now;
+            stats.onClusterRead();
+        }
+        return clusterValue + pending();
+    }
+
+    public long getMaxStalenessMillis() {
+        return maxStalenessMillis;
+    }
+
+    /**
+     * Sends the unflushed increments of this node to the cluster
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            long delta = 0;
+            for (int i = 0; i <= mask; i++) {
+                delta += stripes.getAndSet(i * STRIDE, 0);
+            }
+            if (delta == 0) {
+                return;
+            }
+            try {
+                clusterValue = counter.addAndGet(delta);
+                readAt = System.currentTimeMillis();
+                stats.onFlush(delta);
+            } catch (RuntimeException ex) {
+                // keep the increments for the next flush
+                stripes.getAndAdd(0, delta);
+                throw ex;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public void destroy() {
+        destroyed = true;
+        if (flusher != null) {
+            flusher.interrupt();
+            try {
+                flusher.join(flushMillis * 2 + 1000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            flush();
+        }
+        JmxSupport.unregister(objectName);
+    }
+
+    private void flushPeriodically() {
+        while (!destroyed) {
+            try {
+                Thread.sleep(flushMillis);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            try {
+                flush();
+            } catch (RuntimeException ex) {
+                log.warn("Can't flush counter increments to the cluster", ex);
+            }
+        }
+    }
+
+    /**
+     * Takes one unflushed increment of this node, starting with the stripe of the thread
+     */
+    private boolean takeLocal() {
+        int start = stripe();
+        for (int i = 0; i <= mask; i++) {
+            int index = ((start + i) & mask) * STRIDE;
+            long value;
+            while ((value = stripes.get(index)) > 0) {
+                if (stripes.compareAndSet(index, value, value - 1)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private long pending() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += stripes.get(i * STRIDE);
+        }
+        return sum;
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & mask;
+    }
+
+    /**
+     * Decrements a positive value, applied on the member owning the counter
+     */
+    private static class DecrementIfPositive implements IFunction<Long, Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Long apply(Long value) {
+            return value > 0 ? value - 1 : value;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.weaxme.wicket.cluster.counter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class CounterStats implements CounterStatsMBean {
+
+    private final long maxStalenessMillis;
+
+    private final LongAdder increments = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedIncrements = new LongAdder();
+    private final LongAdder localDecrements = new LongAdder();
+    private final LongAdder clusterDecrements = new LongAdder();
+    private final LongAdder refusedDecrements = new LongAdder();
+    private final LongAdder clusterReads = new LongAdder();
+
+    CounterStats(long maxStalenessMillis) {
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    void onIncrement() {
+        increments.increment();
+    }
+
+    void onFlush(long delta) {
+        flushes.increment();
+        flushedIncrements.add(delta);
+    }
+
+    void onLocalDecrement() {
+        localDecrements.increment();
+    }
+
+    void onClusterDecrement() {
+        clusterDecrements.increment();
+    }
+
+    void onRefusedDecrement() {
+        refusedDecrements.increment();
+    }
+
+    void onClusterRead() {
+        clusterReads.increment();
+    }
+
+    @Override
+    public long getIncrements() {
+        return increments.sum();
+    }
+
+    @Override
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    @Override
+    public long getFlushedIncrements() {
+        return flushedIncrements.sum();
+    }
+
+    @Override
+    public long getLocalDecrements() {
+        return localDecrements.sum();
+    }
+
+    @Override
+    public long getClusterDecrements() {
+        return clusterDecrements.sum();
+    }
+
+    @Override
+    public long getRefusedDecrements() {
+        return refusedDecrements.sum();
+    }
+
+    @Override
+    public long getClusterReads() {
+        return clusterReads.sum();
+    }
+
+    @Override
+    public long getMaxStalenessMillis() {
+        return maxStalenessMillis;
+    }
+
+    @Override
+    public void reset() {
+        increments.reset();
+        flushes.reset();
+        flushedIncrements.reset();
+        localDecrements.reset();
+        clusterDecrements.reset();
+        refusedDecrements.reset();
+        clusterReads.reset();
+    }
+}
@@ -0,0 +1,40 @@
+package com.weaxme.wicket.cluster.counter;
+
+/**
+ * JMX view of a {@link ClusterCounter} on this node
+ */
+public interface CounterStatsMBean {
+
+    long getIncrements();
+
+    /**
+     * @return number of updates of the cluster value with the increments of this node
+     */
+    long getFlushes();
+
+    long getFlushedIncrements();
+
+    /**
+     * @return number of decrements which took back unflushed increments of this node
+     */
+    long getLocalDecrements();
+
+    /**
+     * @return number of decrements applied to the cluster value
+     */
+    long getClusterDecrements();
+
+    /**
+     * @return number of decrements refused because the counter was zero
+     */
+    long getRefusedDecrements();
+
+    /**
+     * @return number of reads which went to the cluster
+     */
+    long getClusterReads();
+
+    long getMaxStalenessMillis();
+
+    void reset();
+}
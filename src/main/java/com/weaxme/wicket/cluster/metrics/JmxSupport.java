@@ -0,0 +1,51 @@
+package com.weaxme.wicket.cluster.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers statistics beans of the cluster stores in the platform MBean server
+ * under the {@value #DOMAIN} domain.
+ */
+@Slf4j
+public final class JmxSupport {
+
+    public static final String DOMAIN = "com.weaxme.wicket.cluster";
+
+    private JmxSupport() {
+    }
+
+    /**
+     * Registers the given MBean. Registration failures are logged, statistics are never required for the store to work.
+     *
+     * @return name of registered bean or null if it wasn't registered
+     */
+    public static ObjectName register(Object mbean, String type, String name) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+            return objectName;
+        } catch (Exception ex) {
+            log.warn("Can't register MBean {} {}", type, name, ex);
+            return null;
+        }
+    }
+
+    public static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception ex) {
+            log.debug("Can't unregister MBean {}", objectName, ex);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.weaxme.wicket.cluster.pageStore.compression.PageCompression;
+import org.apache.wicket.pageStore.IDataStore;
+
+/**
+ * Compresses pages before they are passed to the delegate and decompresses them on read.
+ * Deltas of {@link DeltaDataStore} are passed as they are: they are small already and the cluster store
+ * reads their header to keep the pages they are based on.
+ */
+public class CompressingDataStore implements IDataStore {
+
+    private final IDataStore delegate;
+    private final PageCompression compression;
+
+    public CompressingDataStore(IDataStore delegate, PageCompression compression) {
+        this.delegate = delegate;
+        this.compression = compression;
+    }
+
+    @Override
+    public byte[] getData(String sessionId, int id) {
+        return compression.decode(delegate.getData(sessionId, id));
+    }
+
+    @Override
+    public void removeData(String sessionId, int id) {
+        delegate.removeData(sessionId, id);
+    }
+
+    @Override
+    public void removeData(String sessionId) {
+        delegate.removeData(sessionId);
+    }
+
+    @Override
+    public void storeData(String sessionId, int id, byte[] data) {
+        delegate.storeData(sessionId, id, DeltaDataStore.isDelta(data) ? data : compression.encode(data));
+    }
+
+    @Override
+    public void destroy() {
+        delegate.destroy();
+    }
+
+    @Override
+    public boolean isReplicated() {
+        return delegate.isReplicated();
+    }
+
+    @Override
+    public boolean canBeAsynchronous() {
+        return delegate.canBeAsynchronous();
+    }
+}
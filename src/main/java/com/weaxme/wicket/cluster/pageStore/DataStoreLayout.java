@@ -0,0 +1,17 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+/**
+ * How pages are laid out in the Hazelcast cluster.
+ */
+public enum DataStoreLayout {
+
+    /**
+     * All pages of a session are kept in one entry, see {@link HazelcastDataStore}
+     */
+    SESSION,
+
+    /**
+     * Every page is kept in its own entry, see {@link HazelcastPerPageDataStore}
+     */
+    PAGE
+}
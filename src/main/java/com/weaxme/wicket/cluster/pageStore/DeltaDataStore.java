@@ -0,0 +1,233 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.weaxme.wicket.cluster.pageStore.delta.PageDelta;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.wicket.pageStore.IDataStore;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Stores pages as a binary delta against a recent full page (snapshot) of the same session.
+ * <p>
+ * Every {@code snapshotInterval} pages, or when a delta isn't smaller than half of the page, the page is
+ * stored in full and becomes the base of the following pages. Deltas always refer to a full page, so a page
+ * is rebuilt from at most two stored pages. The delta header keeps a checksum of the base; if the base was
+ * removed or replaced the page is reported as missing instead of being rebuilt from wrong data.
+ * <p>
+ * When the page of a snapshot with deltas is stored again, the snapshot moves to a negative key of its own
+ * and the new version is stored as a delta of it, so the deltas stored before stay readable.
+ * <p>
+ * The last snapshot of each session is kept on this node to compute deltas without reading it back.
+ * <p>
+ * The header of a delta stays readable by the stores below ({@link CompressingDataStore} doesn't compress deltas),
+ * so the per-session limits of the cluster store don't evict a snapshot while its deltas are kept,
+ * see {@link PageEviction}.
+ */
+@Slf4j
+public class DeltaDataStore implements IDataStore {
+
+    private static final byte MAGIC_1 = (byte) 0x9E;
+    private static final byte MAGIC_2 = (byte) 0x44;
+
+    private static final int HEADER_LENGTH = 2 + 4 + 4;
+
+    private static final int NO_BASE = -1;
+
+    private final IDataStore delegate;
+    private final int snapshotInterval;
+
+    /**
+     * Last snapshot of recently written sessions, guarded by itself
+     */
+    private final Map<String, Snapshot> snapshots;
+
+    /**
+     * @param snapshotInterval max number of pages stored as delta against one snapshot
+     * @param maxSessions      max number of sessions whose last snapshot is kept on this node
+     */
+    public DeltaDataStore(IDataStore delegate, int snapshotInterval, int maxSessions) {
+        this.delegate = delegate;
+        this.snapshotInterval = snapshotInterval;
+        this.snapshots = new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > maxSessions;
+            }
+        };
+    }
+
+    @Override
+    public byte[] getData(String sessionId, int id) {
+        byte[] data = delegate.getData(sessionId, id);
+        if (!isDelta(data)) {
+            return data;
+        }
+        ByteBuffer header = ByteBuffer.wrap(data, 2, HEADER_LENGTH - 2);
+        int baseId = header.getInt();
+        int baseChecksum = header.getInt();
+
+        Snapshot snapshot = getSnapshot(sessionId);
+        byte[] base = snapshot != null && (snapshot.key == baseId || snapshot.id == baseId) && snapshot.checksum == baseChecksum
+                ? snapshot.data
+                : delegate.getData(sessionId, baseId);
+        if (!isBase(base, baseChecksum) && baseId >= 0) {
+            // the page was stored again after the delta, its old version was moved
+            base = delegate.getData(sessionId, movedKey(baseId));
+        }
+        if (!isBase(base, baseChecksum)) {
+            log.debug("Base page {} of page {} in session {} is missing or replaced", baseId, id, sessionId);
+            return null;
+        }
+        return PageDelta.apply(base, data, HEADER_LENGTH);
+    }
+
+    @Override
+    public void removeData(String sessionId, int id) {
+        synchronized (snapshots) {
+            Snapshot snapshot = snapshots.get(sessionId);
+            if (snapshot != null && snapshot.id == id) {
+                snapshots.remove(sessionId);
+            }
+        }
+        delegate.removeData(sessionId, id);
+    }
+
+    @Override
+    public void removeData(String sessionId) {
+        synchronized (snapshots) {
+            snapshots.remove(sessionId);
+        }
+        delegate.removeData(sessionId);
+    }
+
+    @Override
+    public void storeData(String sessionId, int id, byte[] data) {
+        Snapshot snapshot = getSnapshot(sessionId);
+        if (snapshot != null && snapshot.key == id) {
+            if (snapshot.deltas.get() == 0) {
+                // nothing refers to it, the new version replaces it
+                snapshot = null;
+            } else {
+                snapshot = snapshot.moveTo(movedKey(id));
+                delegate.storeData(sessionId, snapshot.key, snapshot.data);
+                synchronized (snapshots) {
+                    snapshots.put(sessionId, snapshot);
+                }
+            }
+        }
+        if (snapshot != null && snapshot.deltas.incrementAndGet() <= snapshotInterval) {
+            byte[] delta = PageDelta.diff(snapshot.data, data);
+            if (HEADER_LENGTH + delta.length < data.length / 2) {
+                delegate.storeData(sessionId, id, withHeader(snapshot, delta));
+                return;
+            }
+        }
+        delegate.storeData(sessionId, id, data);
+        synchronized (snapshots) {
+            snapshots.put(sessionId, new Snapshot(id, data));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        synchronized (snapshots) {
+            snapshots.clear();
+        }
+        delegate.destroy();
+    }
+
+    @Override
+    public boolean isReplicated() {
+        return delegate.isReplicated();
+    }
+
+    @Override
+    public boolean canBeAsynchronous() {
+        return delegate.canBeAsynchronous();
+    }
+
+    private Snapshot getSnapshot(String sessionId) {
+        synchronized (snapshots) {
+            return snapshots.get(sessionId);
+        }
+    }
+
+    public static boolean isDelta(byte[] data) {
+        return data != null && baseIdOf(data, 0, data.length) != NO_BASE;
+    }
+
+    /**
+     * @return id of the snapshot the delta at {@code offset} is based on, -1 if the bytes are not a delta.
+     * Other negative ids are the keys of moved snapshots.
+     */
+    public static int baseIdOf(byte[] buffer, int offset, int length) {
+        if (length < HEADER_LENGTH || buffer[offset] != MAGIC_1 || buffer[offset + 1] != MAGIC_2) {
+            return NO_BASE;
+        }
+        return ByteBuffer.wrap(buffer, offset + 2, 4).getInt();
+    }
+
+    private static byte[] withHeader(Snapshot snapshot, byte[] delta) {
+        return ByteBuffer.allocate(HEADER_LENGTH + delta.length)
+                .put(MAGIC_1)
+                .put(MAGIC_2)
+                .putInt(snapshot.key)
+                .putInt(snapshot.checksum)
+                .put(delta)
+                .array();
+    }
+
+    /**
+     * @return key of the old version of a snapshot whose page was stored again, never -1
+     */
+    private static int movedKey(int id) {
+        return -2 - id;
+    }
+
+    private static boolean isBase(byte[] base, int checksum) {
+        return base != null && !isDelta(base) && checksum(base) == checksum;
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    private static class Snapshot {
+
+        private final int id;
+
+        /**
+         * Key the snapshot is stored under, the id of its page until the page is stored again
+         */
+        private final int key;
+        private final byte[] data;
+        private final int checksum;
+
+        /**
+         * Number of pages stored as delta against this snapshot
+         */
+        private final AtomicInteger deltas;
+
+        private Snapshot(int id, byte[] data) {
+            this(id, id, data, checksum(data), 0);
+        }
+
+        private Snapshot(int id, int key, byte[] data, int checksum, int deltas) {
+            this.id = id;
+            this.key = key;
+            this.data = data;
+            this.checksum = checksum;
+            this.deltas = new AtomicInteger(deltas);
+        }
+
+        private Snapshot moveTo(int key) {
+            return new Snapshot(id, key, data, checksum, deltas.get());
+        }
+    }
+}
@@ -1,17 +1,31 @@
 package com.weaxme.wicket.cluster.pageStore;
 
+import com.hazelcast.core.ExecutionCallback;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ICompletableFuture;
 import com.hazelcast.core.IMap;
+import com.hazelcast.core.ReadOnly;
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.wicket.pageStore.IDataStore;
 
+import javax.management.ObjectName;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
-public class HazelcastDataStore implements IDataStore {
+@Slf4j
+public class HazelcastDataStore implements IHazelcastDataStore {
 
     public static final String STORE_NAME = "wicket-data-store";
 
@@ -20,47 +34,178 @@ public class HazelcastDataStore implements IDataStore {
      */
     private final IMap<String, HazelcastPageData> pageStore;
 
+    private final SessionUpdateListeners<String> updateListeners;
+
+    /**
+     * Max number of pages and bytes kept for one session, 0 for no limit
+     */
+    private final int maxPages;
+    private final long maxBytes;
+
+    /**
+     * Max number of sessions with prefetched pages, expired ones are dropped when it is reached
+     */
+    private static final int PREFETCH_MAX_SESSIONS = 256;
+
+    private final PageEvictionStats evictionStats;
+    private final ObjectName objectName;
+
+    /**
+     * Number of older pages read together with a requested page, 0 to read only the requested page
+     */
+    private final int prefetchDepth;
+    private final long prefetchTtlMillis;
+    private final ConcurrentMap<String, PrefetchedPages> prefetched = new ConcurrentHashMap<>();
+    private final PrefetchStats prefetchStats;
+    private final ObjectName prefetchObjectName;
+
     public HazelcastDataStore(HazelcastInstance hazelcast) {
+        this(hazelcast, 0, 0);
+    }
+
+    /**
+     * @param maxPages max number of pages kept for one session, the oldest pages are evicted first. 0 for no limit
+     * @param maxBytes max size of pages kept for one session, the oldest pages are evicted first. 0 for no limit
+     */
+    public HazelcastDataStore(HazelcastInstance hazelcast, int maxPages, long maxBytes) {
+        this(hazelcast, maxPages, maxBytes, 0, 0);
+    }
+
+    /**
+     * @param prefetchDepth     number of older pages of the session read together with a requested page and kept
+     *                          for the next reads, as back button and Ajax requests go through the recent pages. 0 to disable
+     * @param prefetchTtlMillis how long prefetched pages are used, bounds the time a page changed by another node may be seen
+     */
+    public HazelcastDataStore(HazelcastInstance hazelcast, int maxPages, long maxBytes, int prefetchDepth, long prefetchTtlMillis) {
         this.pageStore = hazelcast.getMap(STORE_NAME);
+        this.updateListeners = new SessionUpdateListeners<>(hazelcast, pageStore, sessionId -> sessionId);
+        this.maxPages = maxPages;
+        this.maxBytes = maxBytes;
+        this.evictionStats = new PageEvictionStats(maxPages, maxBytes);
+        this.objectName = JmxSupport.register(evictionStats, "DataStore", "session-window");
+        this.prefetchDepth = prefetchDepth;
+        this.prefetchTtlMillis = prefetchTtlMillis;
+        this.prefetchStats = new PrefetchStats(prefetchDepth);
+        this.prefetchObjectName = prefetchDepth > 0 ? JmxSupport.register(prefetchStats, "DataStore", "prefetch") : null;
     }
 
     @Override
     public byte[] getData(String sessionId, int id) {
-        HazelcastPageData pageData = pageStore.get(sessionId);
-//        log.info("getData for session: {} with id {} exists: {}", sessionId, id, pageData != null && pageData.getDataMap().containsKey(id));
-        if (pageData != null) {
-            Map<Integer, byte[]> data = pageData.getDataMap();
-            return data.get(id);
+        if (prefetchDepth <= 0) {
+            // only the requested page comes over the network, the other pages of the session stay on the owner
+            return (byte[]) pageStore.executeOnKey(sessionId, new ReadPageProcessor(id));
+        }
+        long now = System.currentTimeMillis();
+        PrefetchedPages pages = prefetched.get(sessionId);
+        if (pages != null) {
+            if (pages.expiresAt <= now) {
+                prefetched.remove(sessionId, pages);
+            } else {
+                byte[] data = pages.get(id);
+                if (data != null) {
+                    prefetchStats.onHit();
+                    return data;
+                }
+            }
+        }
+        // registered before the read, so writes of the session made meanwhile can veto the fetched pages
+        PrefetchedPages reading = null;
+        if (prefetched.size() >= PREFETCH_MAX_SESSIONS) {
+            prefetched.values().removeIf(expired -> expired.expiresAt <= now);
+        }
+        if (prefetched.size() < PREFETCH_MAX_SESSIONS) {
+            reading = new PrefetchedPages(now + prefetchTtlMillis);
+            prefetched.put(sessionId, reading);
+        }
+        HazelcastPageData result = readPages(sessionId, id);
+        PageTable fetched = result != null ? result.getPages() : null;
+        byte[] data = fetched != null ? fetched.get(id) : null;
+        int others = fetched != null ? fetched.size() - (data != null ? 1 : 0) : 0;
+        prefetchStats.onMiss(others);
+        if (reading != null && (others == 0 || !reading.fill(fetched))) {
+            prefetched.remove(sessionId, reading);
         }
-        return null;
+        return data;
+    }
+
+    /**
+     * Reads the page {@code id} of the session with the pages prefetched with it
+     */
+    HazelcastPageData readPages(String sessionId, int id) {
+        return (HazelcastPageData) pageStore.executeOnKey(sessionId, new ReadPagesProcessor(id, prefetchDepth));
     }
 
     @Override
     public void removeData(String sessionId, int id) {
-        HazelcastPageData pageData = pageStore.get(sessionId);
-        if (pageData != null) {
-            pageData.removeData(id);
-            pageStore.put(sessionId, pageData);
-        }
+        invalidatePrefetched(sessionId, id);
+        pageStore.executeOnKey(sessionId, new RemovePageProcessor(id));
+        invalidatePrefetched(sessionId, id);
     }
 
     @Override
     public void removeData(String sessionId) {
+        prefetched.remove(sessionId);
         pageStore.remove(sessionId);
+        // drops pages which a read started before the removal installed
+        prefetched.remove(sessionId);
     }
 
     @Override
     public void storeData(String sessionId, int id, byte[] data) {
-        HazelcastPageData pageData = pageStore.get(sessionId);
-        if (pageData == null) {
-            pageData = new HazelcastPageData(sessionId);
+        invalidatePrefetched(sessionId, id);
+        Integer evicted = (Integer) pageStore.executeOnKey(sessionId, new PutPageProcessor(id, data, maxPages, maxBytes));
+        invalidatePrefetched(sessionId, id);
+        evictionStats.onEvicted(evicted);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ICompletableFuture<?> storeDataAsync(String sessionId, int id, byte[] data) {
+        invalidatePrefetched(sessionId, id);
+        ICompletableFuture<Integer> future = pageStore.submitToKey(sessionId, new PutPageProcessor(id, data, maxPages, maxBytes));
+        future.andThen(new ExecutionCallback<Integer>() {
+            @Override
+            public void onResponse(Integer evicted) {
+                invalidatePrefetched(sessionId, id);
+                evictionStats.onEvicted(evicted);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                invalidatePrefetched(sessionId, id);
+                log.error("Can't write page {} of session {}", id, sessionId, t);
+                evictionStats.onFailedWrite();
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public String addSessionUpdateListener(SessionUpdateListener listener) {
+        return updateListeners.add(listener);
+    }
+
+    @Override
+    public void removeSessionUpdateListener(String registrationId) {
+        updateListeners.remove(registrationId);
+    }
+
+    /**
+     * Called before and after every change of a page. The first call keeps this node from serving the old page
+     * while it is written, the second one drops the old page fetched by a read which ran before the change.
+     */
+    private void invalidatePrefetched(String sessionId, int id) {
+        PrefetchedPages pages = prefetched.get(sessionId);
+        if (pages != null) {
+            pages.remove(id);
         }
-        pageData.putData(id, data);
-        pageStore.put(sessionId, pageData);
     }
 
     @Override
     public void destroy() {
+        prefetched.clear();
+        JmxSupport.unregister(prefetchObjectName);
+        JmxSupport.unregister(objectName);
         try {
             pageStore.clear();
         } catch (Exception ex) {
@@ -75,34 +220,226 @@ public class HazelcastDataStore implements IDataStore {
 
     @Override
     public boolean canBeAsynchronous() {
-        return false;
+        return true;
     }
 
 
-    private static class HazelcastPageData implements Serializable {
+    /**
+     * Pages of one session
+     */
+    public static class HazelcastPageData implements IdentifiedDataSerializable, Serializable {
 
-        private final String sessionId;
-        private final Map<Integer, byte[]> dataMap;
+        private String sessionId;
+        private PageTable pages = new PageTable();
+
+        public HazelcastPageData() {
+        }
 
         public HazelcastPageData(String sessionId) {
             this.sessionId = sessionId;
-            dataMap = new HashMap<>();
+        }
+
+        public HazelcastPageData(String sessionId, PageTable pages) {
+            this.sessionId = sessionId;
+            this.pages = pages;
         }
 
         public String getSessionId() {
             return sessionId;
         }
 
-        public Map<Integer, byte[]> getDataMap() {
-            return dataMap;
+        public PageTable getPages() {
+            return pages;
         }
 
         public void putData(int id, byte[] data) {
-            dataMap.put(id, data);
+            pages.put(id, data);
         }
 
         public void removeData(int id) {
-            dataMap.remove(id);
+            pages.remove(id);
+        }
+
+        @Override
+        public int getFactoryId() {
+            return ClusterSerialization.FACTORY_ID;
+        }
+
+        @Override
+        public int getId() {
+            return ClusterSerialization.PAGE_DATA;
+        }
+
+        @Override
+        public void writeData(ObjectDataOutput out) throws IOException {
+            out.writeUTF(sessionId);
+            pages.writeTo(out);
+        }
+
+        @Override
+        public void readData(ObjectDataInput in) throws IOException {
+            sessionId = in.readUTF();
+            pages = PageTable.readFrom(in);
+        }
+
+        /**
+         * Removes pages with the lowest ids until the session fits into the limits, see {@link PageEviction}.
+         * The page with {@code keepId} (the one just stored) is never removed, nor the base of a delta which is kept.
+         *
+         * @return number of removed pages
+         */
+        public int evictOldest(int keepId, int maxPages, long maxBytes) {
+            return pages.evictOldest(keepId, maxPages, maxBytes);
+        }
+    }
+
+    /**
+     * Adds or replaces one page of the session on the partition owner (and its backups),
+     * so only the page bytes are sent over the network.
+     * Evicts the oldest pages of the session when it exceeds the limits and returns the number of evicted pages.
+     */
+    private static class PutPageProcessor extends AbstractEntryProcessor<String, HazelcastPageData> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+        private final byte[] data;
+        private final int maxPages;
+        private final long maxBytes;
+
+        public PutPageProcessor(int id, byte[] data, int maxPages, long maxBytes) {
+            this.id = id;
+            this.data = data;
+            this.maxPages = maxPages;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, HazelcastPageData> entry) {
+            HazelcastPageData pageData = entry.getValue();
+            if (pageData == null) {
+                pageData = new HazelcastPageData(entry.getKey());
+            }
+            pageData.putData(id, data);
+            int evicted = pageData.evictOldest(id, maxPages, maxBytes);
+            entry.setValue(pageData);
+            return evicted;
+        }
+    }
+
+    /**
+     * Returns one page of the session. Doesn't change the entry, so it runs without a backup operation.
+     */
+    private static class ReadPageProcessor implements EntryProcessor<String, HazelcastPageData>, ReadOnly {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+
+        public ReadPageProcessor(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, HazelcastPageData> entry) {
+            HazelcastPageData pageData = entry.getValue();
+            return pageData != null ? pageData.getPages().get(id) : null;
+        }
+
+        @Override
+        public EntryBackupProcessor<String, HazelcastPageData> getBackupProcessor() {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the requested page and up to {@code older} pages with the next lower ids, which are the previous
+     * versions of the page and the pages the user came from.
+     */
+    private static class ReadPagesProcessor implements EntryProcessor<String, HazelcastPageData>, ReadOnly {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+        private final int older;
+
+        public ReadPagesProcessor(int id, int older) {
+            this.id = id;
+            this.older = older;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, HazelcastPageData> entry) {
+            HazelcastPageData pageData = entry.getValue();
+            return pageData != null ? new HazelcastPageData(entry.getKey(), pageData.getPages().copy(id, older)) : null;
+        }
+
+        @Override
+        public EntryBackupProcessor<String, HazelcastPageData> getBackupProcessor() {
+            return null;
+        }
+    }
+
+    /**
+     * Pages read ahead for one session. Registered empty when the read starts; a change of a page of the session
+     * before the pages are filled in makes the read stale, as it may have fetched the old version.
+     */
+    private static class PrefetchedPages {
+
+        private final long expiresAt;
+        private PageTable pages;
+        private boolean changed;
+
+        private PrefetchedPages(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        synchronized byte[] get(int id) {
+            return pages != null ? pages.get(id) : null;
+        }
+
+        synchronized void remove(int id) {
+            if (pages != null) {
+                pages.remove(id);
+            } else {
+                changed = true;
+            }
+        }
+
+        /**
+         * @return false if a page of the session was changed since the read started, the pages are not kept then
+         */
+        synchronized boolean fill(PageTable fetched) {
+            if (changed) {
+                return false;
+            }
+            pages = fetched;
+            return true;
+        }
+    }
+
+    /**
+     * Removes one page of the session on the partition owner (and its backups).
+     * The session entry is removed together with its last page.
+     */
+    private static class RemovePageProcessor extends AbstractEntryProcessor<String, HazelcastPageData> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+
+        public RemovePageProcessor(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, HazelcastPageData> entry) {
+            HazelcastPageData pageData = entry.getValue();
+            if (pageData != null) {
+                pageData.removeData(id);
+                entry.setValue(pageData.getPages().isEmpty() ? null : pageData);
+            }
+            return null;
         }
     }
 }
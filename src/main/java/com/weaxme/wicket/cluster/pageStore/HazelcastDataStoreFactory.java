@@ -0,0 +1,123 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.hazelcast.core.HazelcastInstance;
+import com.weaxme.wicket.cluster.pageStore.compression.PageCompression;
+import com.weaxme.wicket.cluster.pageStore.compression.PageCompressorType;
+import com.weaxme.wicket.cluster.pageStore.memory.HeapPageMemory;
+import com.weaxme.wicket.cluster.pageStore.memory.IPageMemory;
+import com.weaxme.wicket.cluster.pageStore.memory.OffHeapPageMemory;
+import com.weaxme.wicket.cluster.pageStore.tiered.TieredDataStore;
+import org.apache.wicket.pageStore.IDataStore;
+
+import java.io.File;
+
+/**
+ * Creates the page data store configured by the {@code data-store.*} properties.
+ */
+public class HazelcastDataStoreFactory {
+
+    private final String node;
+    private final DataStoreLayout layout;
+    private final int sessionMaxPages;
+    private final long sessionMaxBytes;
+    private final int prefetchPages;
+    private final long prefetchTtlMillis;
+    private final boolean writeBehind;
+    private final int writeBehindCapacity;
+    private final int writeBehindMaxInFlight;
+    private final boolean nearCache;
+    private final long nearCacheMaxBytes;
+    private final boolean nearCacheOffHeap;
+    private final int nearCacheBlockSize;
+    private final PageCompressorType compression;
+    private final int compressionThreshold;
+    private final boolean delta;
+    private final int deltaSnapshotInterval;
+    private final int deltaMaxSessions;
+    private final boolean tiered;
+    private final int tieredHotPages;
+    private final String tieredDirectory;
+    private final int tieredSegmentSize;
+    private final int tieredMaxSessions;
+    private final double tieredCompactionThreshold;
+
+    @Inject
+    public HazelcastDataStoreFactory(@Named("node.name") String node,
+                                     @Named("data-store.layout") DataStoreLayout layout,
+                                     @Named("data-store.session.max-pages") int sessionMaxPages,
+                                     @Named("data-store.session.max-bytes") long sessionMaxBytes,
+                                     @Named("data-store.prefetch.pages") int prefetchPages,
+                                     @Named("data-store.prefetch.ttl-millis") long prefetchTtlMillis,
+                                     @Named("data-store.write-behind") boolean writeBehind,
+                                     @Named("data-store.write-behind.capacity") int writeBehindCapacity,
+                                     @Named("data-store.write-behind.max-in-flight") int writeBehindMaxInFlight,
+                                     @Named("data-store.near-cache") boolean nearCache,
+                                     @Named("data-store.near-cache.max-bytes") long nearCacheMaxBytes,
+                                     @Named("data-store.near-cache.off-heap") boolean nearCacheOffHeap,
+                                     @Named("data-store.near-cache.off-heap.block-size") int nearCacheBlockSize,
+                                     @Named("data-store.compression") PageCompressorType compression,
+                                     @Named("data-store.compression.threshold") int compressionThreshold,
+                                     @Named("data-store.delta") boolean delta,
+                                     @Named("data-store.delta.snapshot-interval") int deltaSnapshotInterval,
+                                     @Named("data-store.delta.max-sessions") int deltaMaxSessions,
+                                     @Named("data-store.tiered") boolean tiered,
+                                     @Named("data-store.tiered.hot-pages") int tieredHotPages,
+                                     @Named("data-store.tiered.directory") String tieredDirectory,
+                                     @Named("data-store.tiered.segment-size") int tieredSegmentSize,
+                                     @Named("data-store.tiered.max-sessions") int tieredMaxSessions,
+                                     @Named("data-store.tiered.compaction-threshold") double tieredCompactionThreshold) {
+        this.node = node;
+        this.layout = layout;
+        this.sessionMaxPages = sessionMaxPages;
+        this.sessionMaxBytes = sessionMaxBytes;
+        this.prefetchPages = prefetchPages;
+        this.prefetchTtlMillis = prefetchTtlMillis;
+        this.writeBehind = writeBehind;
+        this.writeBehindCapacity = writeBehindCapacity;
+        this.writeBehindMaxInFlight = writeBehindMaxInFlight;
+        this.nearCache = nearCache;
+        this.nearCacheMaxBytes = nearCacheMaxBytes;
+        this.nearCacheOffHeap = nearCacheOffHeap;
+        this.nearCacheBlockSize = nearCacheBlockSize;
+        this.compression = compression;
+        this.compressionThreshold = compressionThreshold;
+        this.delta = delta;
+        this.deltaSnapshotInterval = deltaSnapshotInterval;
+        this.deltaMaxSessions = deltaMaxSessions;
+        this.tiered = tiered;
+        this.tieredHotPages = tieredHotPages;
+        this.tieredDirectory = tieredDirectory;
+        this.tieredSegmentSize = tieredSegmentSize;
+        this.tieredMaxSessions = tieredMaxSessions;
+        this.tieredCompactionThreshold = tieredCompactionThreshold;
+    }
+
+    public IDataStore newDataStore(HazelcastInstance hazelcast) {
+        IHazelcastDataStore clusterStore = layout == DataStoreLayout.PAGE
+                ? new HazelcastPerPageDataStore(hazelcast, sessionMaxPages, sessionMaxBytes)
+                : new HazelcastDataStore(hazelcast, sessionMaxPages, sessionMaxBytes, prefetchPages, prefetchTtlMillis);
+        IDataStore dataStore = clusterStore;
+        if (writeBehind) {
+            dataStore = new WriteBehindDataStore(clusterStore, writeBehindCapacity, writeBehindMaxInFlight);
+        }
+        if (nearCache) {
+            IPageMemory memory = nearCacheOffHeap
+                    ? new OffHeapPageMemory(nearCacheMaxBytes, nearCacheBlockSize)
+                    : new HeapPageMemory();
+            dataStore = new NearCacheDataStore(dataStore, clusterStore, nearCacheMaxBytes, memory);
+        }
+        if (tiered) {
+            dataStore = new TieredDataStore(dataStore, hazelcast, node, new File(tieredDirectory), tieredSegmentSize,
+                    tieredHotPages, sessionMaxPages, sessionMaxBytes, tieredMaxSessions, tieredCompactionThreshold);
+        }
+        if (compression != PageCompressorType.NONE) {
+            dataStore = new CompressingDataStore(dataStore, new PageCompression(compression.newCompressor(), compressionThreshold));
+        }
+        if (delta) {
+            dataStore = new DeltaDataStore(dataStore, deltaSnapshotInterval, deltaMaxSessions);
+        }
+        return dataStore;
+    }
+}
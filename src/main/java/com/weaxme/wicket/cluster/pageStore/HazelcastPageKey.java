@@ -0,0 +1,59 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.hazelcast.core.PartitionAware;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Key of a single page in {@link HazelcastPerPageDataStore}.
+ * All pages of one session are placed in the partition of the session id.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class HazelcastPageKey implements PartitionAware<String>, IdentifiedDataSerializable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String sessionId;
+    private int pageId;
+
+    @Override
+    public String getPartitionKey() {
+        return sessionId;
+    }
+
+    @Override
+    public int getFactoryId() {
+        return ClusterSerialization.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return ClusterSerialization.PAGE_KEY;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(sessionId);
+        out.writeInt(pageId);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        sessionId = in.readUTF();
+        pageId = in.readInt();
+    }
+}
@@ -0,0 +1,280 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.hazelcast.core.ExecutionCallback;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ICompletableFuture;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.query.PartitionPredicate;
+import com.hazelcast.query.Predicate;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.ObjectName;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Data store which keeps every page in its own map entry.
+ * Entries of one session share the partition of the session id, so a single page
+ * can be read or written without touching the other pages of the session.
+ */
+@Slf4j
+public class HazelcastPerPageDataStore implements IHazelcastDataStore {
+
+    public static final String STORE_NAME = "wicket-page-store";
+    public static final String INDEX_NAME = "wicket-page-index";
+
+    /**
+     * Hazelcast distributed map
+     */
+    private final IMap<HazelcastPageKey, byte[]> pageStore;
+
+    /**
+     * Pages of every session, kept only when the sessions are limited
+     */
+    private final IMap<String, SessionPageIndex> index;
+
+    private final SessionUpdateListeners<HazelcastPageKey> updateListeners;
+
+    private final int maxPages;
+    private final long maxBytes;
+
+    private final PageEvictionStats evictionStats;
+    private final ObjectName objectName;
+
+    public HazelcastPerPageDataStore(HazelcastInstance hazelcast) {
+        this(hazelcast, 0, 0);
+    }
+
+    /**
+     * The pages of a limited session are tracked in a {@link SessionPageIndex} entry of the {@value #INDEX_NAME} map,
+     * in the partition of the session. Storing a page updates the index, which returns the evicted pages.
+     *
+     * @param maxPages max number of pages kept for one session, the oldest pages are evicted first. 0 for no limit
+     * @param maxBytes max size of pages kept for one session, the oldest pages are evicted first. 0 for no limit
+     */
+    public HazelcastPerPageDataStore(HazelcastInstance hazelcast, int maxPages, long maxBytes) {
+        this.pageStore = hazelcast.getMap(STORE_NAME);
+        this.index = hazelcast.getMap(INDEX_NAME);
+        this.updateListeners = new SessionUpdateListeners<>(hazelcast, pageStore, HazelcastPageKey::getSessionId);
+        this.maxPages = maxPages;
+        this.maxBytes = maxBytes;
+        this.evictionStats = new PageEvictionStats(maxPages, maxBytes);
+        this.objectName = JmxSupport.register(evictionStats, "DataStore", "session-window");
+    }
+
+    @Override
+    public byte[] getData(String sessionId, int id) {
+        return pageStore.get(new HazelcastPageKey(sessionId, id));
+    }
+
+    @Override
+    public void removeData(String sessionId, int id) {
+        pageStore.delete(new HazelcastPageKey(sessionId, id));
+        if (isLimited()) {
+            index.executeOnKey(sessionId, new UnindexPageProcessor(id));
+        }
+    }
+
+    @Override
+    public void removeData(String sessionId) {
+        Set<HazelcastPageKey> keys = pageStore.keySet(new PartitionPredicate<>(sessionId, new SessionPagesPredicate(sessionId)));
+        if (!keys.isEmpty()) {
+            pageStore.executeOnKeys(keys, new RemovePageProcessor());
+        }
+        if (isLimited()) {
+            index.delete(sessionId);
+        }
+    }
+
+    @Override
+    public void storeData(String sessionId, int id, byte[] data) {
+        pageStore.set(new HazelcastPageKey(sessionId, id), data);
+        if (isLimited()) {
+            removeEvicted(sessionId, (int[]) index.executeOnKey(sessionId, newIndexProcessor(id, data)));
+        }
+    }
+
+    /**
+     * The page is indexed once it is written, like in {@link #storeData(String, int, byte[])}, so a failed write
+     * doesn't leave an index entry without a page
+     */
+    @Override
+    public ICompletableFuture<?> storeDataAsync(String sessionId, int id, byte[] data) {
+        ICompletableFuture<Void> future = pageStore.setAsync(new HazelcastPageKey(sessionId, id), data);
+        future.andThen(new ExecutionCallback<Void>() {
+            @Override
+            public void onResponse(Void response) {
+                if (isLimited()) {
+                    indexAsync(sessionId, id, data);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.error("Can't write page {} of session {}", id, sessionId, t);
+                evictionStats.onFailedWrite();
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public String addSessionUpdateListener(SessionUpdateListener listener) {
+        return updateListeners.add(listener);
+    }
+
+    @Override
+    public void removeSessionUpdateListener(String registrationId) {
+        updateListeners.remove(registrationId);
+    }
+
+    @Override
+    public void destroy() {
+        JmxSupport.unregister(objectName);
+        try {
+            pageStore.clear();
+            index.clear();
+        } catch (Exception ex) {
+            /* Don't handle */
+        }
+    }
+
+    @Override
+    public boolean isReplicated() {
+        return false;
+    }
+
+    @Override
+    public boolean canBeAsynchronous() {
+        return true;
+    }
+
+
+    private boolean isLimited() {
+        return maxPages > 0 || maxBytes > 0;
+    }
+
+    private IndexPageProcessor newIndexProcessor(int id, byte[] data) {
+        return new IndexPageProcessor(id, data.length, DeltaDataStore.baseIdOf(data, 0, data.length), maxPages, maxBytes);
+    }
+
+    private void indexAsync(String sessionId, int id, byte[] data) {
+        index.submitToKey(sessionId, newIndexProcessor(id, data), new ExecutionCallback<Object>() {
+            @Override
+            public void onResponse(Object evicted) {
+                removeEvicted(sessionId, (int[]) evicted);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.warn("Can't index page {} of session {}", id, sessionId, t);
+            }
+        });
+    }
+
+    private void removeEvicted(String sessionId, int[] evicted) {
+        for (int id : evicted) {
+            pageStore.removeAsync(new HazelcastPageKey(sessionId, id)).andThen(new ExecutionCallback<byte[]>() {
+                @Override
+                public void onResponse(byte[] page) {
+                    if (page != null) {
+                        evictionStats.onEvicted(1);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    log.warn("Can't evict page {} of session {}", id, sessionId, t);
+                }
+            });
+        }
+    }
+
+    /**
+     * Matches all pages of one session. Used together with {@link PartitionPredicate},
+     * so only the partition of the session is scanned.
+     */
+    private static class SessionPagesPredicate implements Predicate<HazelcastPageKey, byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String sessionId;
+
+        public SessionPagesPredicate(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        @Override
+        public boolean apply(Map.Entry<HazelcastPageKey, byte[]> entry) {
+            return sessionId.equals(entry.getKey().getSessionId());
+        }
+    }
+
+    private static class RemovePageProcessor extends AbstractEntryProcessor<HazelcastPageKey, byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object process(Map.Entry<HazelcastPageKey, byte[]> entry) {
+            entry.setValue(null);
+            return null;
+        }
+    }
+
+    /**
+     * Adds a page to the index of the session on the partition owner and evicts the oldest pages of the session
+     * from the index when it exceeds the limits. Returns the ids of the evicted pages.
+     */
+    private static class IndexPageProcessor extends AbstractEntryProcessor<String, SessionPageIndex> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+        private final int length;
+        private final int baseId;
+        private final int maxPages;
+        private final long maxBytes;
+
+        public IndexPageProcessor(int id, int length, int baseId, int maxPages, long maxBytes) {
+            this.id = id;
+            this.length = length;
+            this.baseId = baseId;
+            this.maxPages = maxPages;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, SessionPageIndex> entry) {
+            SessionPageIndex pages = entry.getValue();
+            if (pages == null) {
+                pages = new SessionPageIndex();
+            }
+            pages.put(id, length, baseId);
+            int[] evicted = pages.evictOldest(id, maxPages, maxBytes);
+            entry.setValue(pages);
+            return evicted;
+        }
+    }
+
+    private static class UnindexPageProcessor extends AbstractEntryProcessor<String, SessionPageIndex> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+
+        public UnindexPageProcessor(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, SessionPageIndex> entry) {
+            SessionPageIndex pages = entry.getValue();
+            if (pages != null && pages.remove(id)) {
+                entry.setValue(pages.isEmpty() ? null : pages);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.hazelcast.core.ICompletableFuture;
+import org.apache.wicket.pageStore.IDataStore;
+
+/**
+ * Data store which can write a page without blocking the caller.
+ */
+public interface IAsyncDataStore extends IDataStore {
+
+    /**
+     * Stores the page asynchronously
+     *
+     * @return future completed when the page is stored in the cluster
+     */
+    ICompletableFuture<?> storeDataAsync(String sessionId, int id, byte[] data);
+}
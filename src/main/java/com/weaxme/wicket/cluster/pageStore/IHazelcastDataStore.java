@@ -0,0 +1,29 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+/**
+ * Data store backed by a Hazelcast map which can tell about changes made by other cluster members.
+ */
+public interface IHazelcastDataStore extends IAsyncDataStore {
+
+    /**
+     * Registers listener of changes made by other members
+     *
+     * @return registration id
+     */
+    String addSessionUpdateListener(SessionUpdateListener listener);
+
+    void removeSessionUpdateListener(String registrationId);
+
+    interface SessionUpdateListener {
+
+        /**
+         * Pages of the given session were changed or removed by another member
+         */
+        void sessionUpdated(String sessionId);
+
+        /**
+         * Any page may have been changed, e.g. the map was cleared or the cluster membership changed
+         */
+        void allUpdated();
+    }
+}
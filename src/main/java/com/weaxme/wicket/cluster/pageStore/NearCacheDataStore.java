@@ -0,0 +1,288 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import com.weaxme.wicket.cluster.pageStore.memory.CachedPage;
+import com.weaxme.wicket.cluster.pageStore.memory.HeapPageMemory;
+import com.weaxme.wicket.cluster.pageStore.memory.IPageMemory;
+import org.apache.wicket.pageStore.IDataStore;
+
+import javax.management.ObjectName;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps recently stored and read pages on this node in front of the cluster store.
+ * <p>
+ * The cache is bounded by the total size of cached pages and evicts least recently used pages first.
+ * Pages of a session are dropped as soon as another member changes the session, and the whole cache is
+ * dropped when cluster membership changes, so a page rendered on another node after failover is never
+ * replaced by an older local copy.
+ * <p>
+ * Page bytes are kept in {@link IPageMemory}, either on the heap or off-heap.
+ */
+public class NearCacheDataStore implements IDataStore, IHazelcastDataStore.SessionUpdateListener {
+
+    private final IDataStore delegate;
+    private final IHazelcastDataStore clusterStore;
+    private final long maxBytes;
+    private final IPageMemory memory;
+
+    /**
+     * Cached pages in access order, guarded by this
+     */
+    private final LinkedHashMap<HazelcastPageKey, CachedPage> pages = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Cached page ids and invalidation epoch of each session, guarded by this
+     */
+    private final Map<String, SessionPages> sessions = new HashMap<>();
+
+    private long bytes;
+
+    private final String registrationId;
+    private final NearCacheStats stats;
+    private final ObjectName objectName;
+
+    /**
+     * @param delegate     store to read and write pages through
+     * @param clusterStore store which reports changes of other members, usually the last one in the delegate chain
+     * @param maxBytes     max size of cached pages
+     */
+    public NearCacheDataStore(IDataStore delegate, IHazelcastDataStore clusterStore, long maxBytes) {
+        this(delegate, clusterStore, maxBytes, new HeapPageMemory());
+    }
+
+    /**
+     * @param delegate     store to read and write pages through
+     * @param clusterStore store which reports changes of other members, usually the last one in the delegate chain
+     * @param maxBytes     max size of cached pages
+     * @param memory       memory to keep cached pages in
+     */
+    public NearCacheDataStore(IDataStore delegate, IHazelcastDataStore clusterStore, long maxBytes, IPageMemory memory) {
+        this.delegate = delegate;
+        this.clusterStore = clusterStore;
+        this.maxBytes = maxBytes;
+        this.memory = memory;
+        this.stats = new NearCacheStats(this);
+        this.registrationId = clusterStore.addSessionUpdateListener(this);
+        this.objectName = JmxSupport.register(stats, "DataStore", "near-cache");
+    }
+
+    @Override
+    public byte[] getData(String sessionId, int id) {
+        HazelcastPageKey key = new HazelcastPageKey(sessionId, id);
+        SessionPages session;
+        long epoch;
+        synchronized (this) {
+            CachedPage page = pages.get(key);
+            if (page != null) {
+                stats.onHit();
+                return page.read();
+            }
+            session = sessions.computeIfAbsent(sessionId, SessionPages::new);
+            session.readers++;
+            epoch = session.epoch;
+        }
+        stats.onMiss();
+        byte[] data = null;
+        try {
+            data = delegate.getData(sessionId, id);
+        } finally {
+            synchronized (this) {
+                session.readers--;
+                // don't cache the page if the session was changed by another member while it was read
+                if (data != null && session.epoch == epoch && sessions.get(sessionId) == session) {
+                    cache(session, key, data);
+                } else {
+                    removeIfUnused(session);
+                }
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public void removeData(String sessionId, int id) {
+        synchronized (this) {
+            SessionPages session = sessions.get(sessionId);
+            if (session != null) {
+                remove(session, new HazelcastPageKey(sessionId, id));
+                removeIfUnused(session);
+            }
+        }
+        delegate.removeData(sessionId, id);
+    }
+
+    @Override
+    public void removeData(String sessionId) {
+        invalidate(sessionId);
+        delegate.removeData(sessionId);
+    }
+
+    @Override
+    public void storeData(String sessionId, int id, byte[] data) {
+        delegate.storeData(sessionId, id, data);
+        synchronized (this) {
+            cache(sessions.computeIfAbsent(sessionId, SessionPages::new), new HazelcastPageKey(sessionId, id), data);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        clusterStore.removeSessionUpdateListener(registrationId);
+        JmxSupport.unregister(objectName);
+        synchronized (this) {
+            pages.clear();
+            sessions.clear();
+            bytes = 0;
+            memory.destroy();
+        }
+        delegate.destroy();
+    }
+
+    @Override
+    public boolean isReplicated() {
+        return delegate.isReplicated();
+    }
+
+    @Override
+    public boolean canBeAsynchronous() {
+        return delegate.canBeAsynchronous();
+    }
+
+    @Override
+    public void sessionUpdated(String sessionId) {
+        if (invalidate(sessionId)) {
+            stats.onInvalidation();
+        }
+    }
+
+    @Override
+    public synchronized void allUpdated() {
+        Iterator<SessionPages> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            SessionPages session = iterator.next();
+            session.epoch++;
+            session.ids.clear();
+            if (session.readers == 0) {
+                iterator.remove();
+            }
+        }
+        pages.values().forEach(CachedPage::free);
+        pages.clear();
+        bytes = 0;
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized long getMemoryBytes() {
+        return memory.getUsedBytes();
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    synchronized int getPages() {
+        return pages.size();
+    }
+
+    private synchronized boolean invalidate(String sessionId) {
+        SessionPages session = sessions.get(sessionId);
+        if (session == null) {
+            return false;
+        }
+        session.epoch++;
+        for (Integer id : session.ids) {
+            release(pages.remove(new HazelcastPageKey(sessionId, id)));
+        }
+        session.ids.clear();
+        removeIfUnused(session);
+        return true;
+    }
+
+    private void cache(SessionPages session, HazelcastPageKey key, byte[] data) {
+        remove(session, key);
+        if (data.length > maxBytes) {
+            removeIfUnused(session);
+            return;
+        }
+        evict(maxBytes - data.length);
+        CachedPage page = memory.allocate(data);
+        // memory may be taken by allocation overhead, free it until the page fits
+        while (page == null && !pages.isEmpty()) {
+            evict(bytes - 1);
+            page = memory.allocate(data);
+        }
+        if (page == null) {
+            removeIfUnused(session);
+            return;
+        }
+        pages.put(key, page);
+        bytes += data.length;
+        // the session could have been removed by the eviction above
+        sessions.computeIfAbsent(key.getSessionId(), sessionId -> session).ids.add(key.getPageId());
+    }
+
+    private void remove(SessionPages session, HazelcastPageKey key) {
+        release(pages.remove(key));
+        session.ids.remove(key.getPageId());
+    }
+
+    private void release(CachedPage page) {
+        if (page != null) {
+            bytes -= page.length();
+            page.free();
+        }
+    }
+
+    /**
+     * Evicts least recently used pages until cached pages take no more than the given number of bytes
+     */
+    private void evict(long targetBytes) {
+        Iterator<Map.Entry<HazelcastPageKey, CachedPage>> iterator = pages.entrySet().iterator();
+        while (bytes > targetBytes && iterator.hasNext()) {
+            Map.Entry<HazelcastPageKey, CachedPage> eldest = iterator.next();
+            iterator.remove();
+            release(eldest.getValue());
+            SessionPages session = sessions.get(eldest.getKey().getSessionId());
+            if (session != null) {
+                session.ids.remove(eldest.getKey().getPageId());
+                removeIfUnused(session);
+            }
+            stats.onEviction();
+        }
+    }
+
+    private void removeIfUnused(SessionPages session) {
+        if (session.ids.isEmpty() && session.readers == 0) {
+            sessions.remove(session.sessionId, session);
+        }
+    }
+
+    private static class SessionPages {
+
+        private final String sessionId;
+        private final Set<Integer> ids = new HashSet<>();
+
+        /**
+         * Incremented on every invalidation, so a page read before the invalidation isn't cached after it
+         */
+        private long epoch;
+
+        /**
+         * Number of reads from the delegate in progress
+         */
+        private int readers;
+
+        private SessionPages(String sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+}
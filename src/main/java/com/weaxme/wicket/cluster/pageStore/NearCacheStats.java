@@ -0,0 +1,88 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class NearCacheStats implements NearCacheStatsMBean {
+
+    private final NearCacheDataStore store;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    NearCacheStats(NearCacheDataStore store) {
+        this.store = store;
+    }
+
+    void onHit() {
+        hits.increment();
+    }
+
+    void onMiss() {
+        misses.increment();
+    }
+
+    void onEviction() {
+        evictions.increment();
+    }
+
+    void onInvalidation() {
+        invalidations.increment();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getBytes() {
+        return store.getBytes();
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return store.getMaxBytes();
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return store.getMemoryBytes();
+    }
+
+    @Override
+    public int getPages() {
+        return store.getPages();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        invalidations.reset();
+    }
+}
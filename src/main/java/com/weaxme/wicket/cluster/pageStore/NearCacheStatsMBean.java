@@ -0,0 +1,36 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+/**
+ * JMX view of {@link NearCacheDataStore}
+ */
+public interface NearCacheStatsMBean {
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRate();
+
+    /**
+     * @return bytes of page data held by the cache
+     */
+    long getBytes();
+
+    long getMaxBytes();
+
+    /**
+     * @return memory taken by cached pages including allocation overhead, off-heap memory for off-heap cache
+     */
+    long getMemoryBytes();
+
+    int getPages();
+
+    long getEvictions();
+
+    /**
+     * @return number of sessions invalidated because of changes made by other members
+     */
+    long getInvalidations();
+
+    void reset();
+}
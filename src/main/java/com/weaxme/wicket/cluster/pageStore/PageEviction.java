@@ -0,0 +1,58 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+/**
+ * Chooses the pages evicted by the per-session limits of the cluster stores.
+ * <p>
+ * Pages with the lowest ids go first. The page just stored is never evicted, and neither is the base page of a
+ * delta (see {@link DeltaDataStore}) while the delta is kept: the deltas of a base go first, then the base.
+ * The session may stay above the limits when only such pages are left.
+ */
+final class PageEviction {
+
+    private PageEviction() {
+    }
+
+    static boolean exceeds(int pages, long bytes, int maxPages, long maxBytes) {
+        return (maxPages > 0 && pages > maxPages) || (maxBytes > 0 && bytes > maxBytes);
+    }
+
+    /**
+     * @param ids     ids of the pages in ascending order
+     * @param lengths sizes of the pages
+     * @param bases   index of the base page of each delta, -1 for full pages
+     * @param size    number of pages
+     * @param bytes   sum of the sizes of the pages
+     * @return marks of the evicted pages, null if no page is evicted
+     */
+    static boolean[] select(int[] ids, int[] lengths, int[] bases, int size, long bytes,
+                            int keepId, int maxPages, long maxBytes) {
+        if (!exceeds(size, bytes, maxPages, maxBytes)) {
+            return null;
+        }
+        int[] references = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (bases[i] >= 0) {
+                references[bases[i]]++;
+            }
+        }
+        boolean[] evict = null;
+        int pages = size;
+        int index = 0;
+        while (exceeds(pages, bytes, maxPages, maxBytes) && index < size) {
+            if ((evict != null && evict[index]) || ids[index] == keepId || references[index] > 0) {
+                index++;
+                continue;
+            }
+            if (evict == null) {
+                evict = new boolean[size];
+            }
+            evict[index] = true;
+            pages--;
+            bytes -= lengths[index];
+            int base = bases[index];
+            // the base of the evicted delta is older, go back to it once its last delta is gone
+            index = base >= 0 && --references[base] == 0 && base < index ? base : index + 1;
+        }
+        return evict;
+    }
+}
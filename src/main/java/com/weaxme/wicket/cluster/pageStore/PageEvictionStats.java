@@ -0,0 +1,51 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class PageEvictionStats implements PageEvictionStatsMBean {
+
+    private final int maxPages;
+    private final long maxBytes;
+
+    private final LongAdder evictedPages = new LongAdder();
+    private final LongAdder failedWrites = new LongAdder();
+
+    PageEvictionStats(int maxPages, long maxBytes) {
+        this.maxPages = maxPages;
+        this.maxBytes = maxBytes;
+    }
+
+    void onEvicted(int pages) {
+        evictedPages.add(pages);
+    }
+
+    void onFailedWrite() {
+        failedWrites.increment();
+    }
+
+    @Override
+    public long getEvictedPages() {
+        return evictedPages.sum();
+    }
+
+    @Override
+    public long getFailedWrites() {
+        return failedWrites.sum();
+    }
+
+    @Override
+    public int getMaxPagesPerSession() {
+        return maxPages;
+    }
+
+    @Override
+    public long getMaxBytesPerSession() {
+        return maxBytes;
+    }
+
+    @Override
+    public void reset() {
+        evictedPages.reset();
+        failedWrites.reset();
+    }
+}
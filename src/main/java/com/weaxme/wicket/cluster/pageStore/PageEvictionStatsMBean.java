@@ -0,0 +1,21 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+/**
+ * JMX view of pages evicted by the per-session limits of the cluster data stores
+ * and of their asynchronous writes which failed
+ */
+public interface PageEvictionStatsMBean {
+
+    long getEvictedPages();
+
+    /**
+     * @return number of asynchronous page writes which failed
+     */
+    long getFailedWrites();
+
+    int getMaxPagesPerSession();
+
+    long getMaxBytesPerSession();
+
+    void reset();
+}
@@ -0,0 +1,294 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Pages of one session, keyed by page id without boxing.
+ * <p>
+ * Ids are kept sorted in an int array together with the offset and length of every page in one byte buffer.
+ * Pages are appended to the buffer; space of replaced and removed pages is reclaimed when it exceeds the live
+ * bytes. The oldest pages have the lowest ids, so they are always at the start of the arrays.
+ */
+public class PageTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_PAGES = 8;
+
+    private int[] ids = new int[INITIAL_PAGES];
+    private int[] offsets = new int[INITIAL_PAGES];
+    private int[] lengths = new int[INITIAL_PAGES];
+    private int size;
+
+    private byte[] buffer = new byte[0];
+    private int used;
+    private long liveBytes;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return sum of the sizes of the pages
+     */
+    public long getBytes() {
+        return liveBytes;
+    }
+
+    public boolean contains(int id) {
+        return indexOf(id) >= 0;
+    }
+
+    /**
+     * @return copy of the page or null if there is no page with the id
+     */
+    public byte[] get(int id) {
+        int index = indexOf(id);
+        return index >= 0 ? Arrays.copyOfRange(buffer, offsets[index], offsets[index] + lengths[index]) : null;
+    }
+
+    /**
+     * @return id of the oldest page, the table must not be empty
+     */
+    public int getOldestId() {
+        return ids[0];
+    }
+
+    /**
+     * @return new table with the page {@code id} if there is one, and up to {@code older} pages with the next lower ids
+     */
+    public PageTable copy(int id, int older) {
+        int found = indexOf(id);
+        int end = found >= 0 ? found + 1 : -found - 1;
+        int start = Math.max(0, (found >= 0 ? found : end) - older);
+        PageTable copy = new PageTable();
+        copy.ensureCapacity(end - start);
+        int bytes = 0;
+        for (int i = start; i < end; i++) {
+            bytes += lengths[i];
+        }
+        copy.buffer = new byte[bytes];
+        for (int i = start; i < end; i++) {
+            int index = i - start;
+            copy.ids[index] = ids[i];
+            copy.offsets[index] = copy.used;
+            copy.lengths[index] = lengths[i];
+            System.arraycopy(buffer, offsets[i], copy.buffer, copy.used, lengths[i]);
+            copy.used += lengths[i];
+        }
+        copy.size = end - start;
+        copy.liveBytes = copy.used;
+        return copy;
+    }
+
+    public void put(int id, byte[] data) {
+        int index = indexOf(id);
+        if (index >= 0) {
+            liveBytes -= lengths[index];
+            if (lengths[index] >= data.length) {
+                // fits into the place of the old version
+                System.arraycopy(data, 0, buffer, offsets[index], data.length);
+                lengths[index] = data.length;
+                liveBytes += data.length;
+                return;
+            }
+        } else {
+            index = -index - 1;
+            ensureCapacity(size + 1);
+            if (index < size) {
+                System.arraycopy(ids, index, ids, index + 1, size - index);
+                System.arraycopy(offsets, index, offsets, index + 1, size - index);
+                System.arraycopy(lengths, index, lengths, index + 1, size - index);
+            }
+            ids[index] = id;
+            size++;
+        }
+        // the slot has no bytes until the page is appended, the buffer may be compacted meanwhile
+        lengths[index] = 0;
+        offsets[index] = append(data);
+        lengths[index] = data.length;
+        liveBytes += data.length;
+    }
+
+    /**
+     * @return true if the page was removed
+     */
+    public boolean remove(int id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        compactIfSparse();
+        return true;
+    }
+
+    /**
+     * Removes pages with the lowest ids until the table fits into the limits, see {@link PageEviction}.
+     * The page with {@code keepId} (the one just stored) is never removed, nor the base of a delta which is kept.
+     *
+     * @return number of removed pages
+     */
+    public int evictOldest(int keepId, int maxPages, long maxBytes) {
+        if (!PageEviction.exceeds(size, liveBytes, maxPages, maxBytes)) {
+            return 0;
+        }
+        int[] bases = new int[size];
+        for (int i = 0; i < size; i++) {
+            int baseId = DeltaDataStore.baseIdOf(buffer, offsets[i], lengths[i]);
+            bases[i] = baseId != -1 ? Math.max(-1, indexOf(baseId)) : -1;
+        }
+        boolean[] evict = PageEviction.select(ids, lengths, bases, size, liveBytes, keepId, maxPages, maxBytes);
+        if (evict == null) {
+            return 0;
+        }
+        int before = size;
+        removeAll(evict);
+        compactIfSparse();
+        return before - size;
+    }
+
+    /**
+     * Writes the ids and lengths, then the bytes of all pages in id order, as one block when they lie so in the buffer
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        boolean contiguous = true;
+        for (int i = 0; i < size; i++) {
+            out.writeInt(ids[i]);
+            out.writeInt(lengths[i]);
+            contiguous &= i == 0 || offsets[i] == offsets[i - 1] + lengths[i - 1];
+        }
+        if (size == 0) {
+            return;
+        }
+        if (contiguous) {
+            out.write(buffer, offsets[0], (int) liveBytes);
+        } else {
+            for (int i = 0; i < size; i++) {
+                out.write(buffer, offsets[i], lengths[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #writeTo(DataOutput)}, the pages are read with one copy into the buffer
+     */
+    public static PageTable readFrom(DataInput in) throws IOException {
+        PageTable table = new PageTable();
+        int size = in.readInt();
+        table.ensureCapacity(size);
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            table.ids[i] = in.readInt();
+            table.lengths[i] = in.readInt();
+            table.offsets[i] = offset;
+            offset += table.lengths[i];
+        }
+        table.size = size;
+        table.buffer = new byte[offset];
+        in.readFully(table.buffer);
+        table.used = offset;
+        table.liveBytes = offset;
+        return table;
+    }
+
+    private int indexOf(int id) {
+        // new pages have the highest ids, check the end first
+        if (size > 0 && ids[size - 1] == id) {
+            return size - 1;
+        }
+        if (size > 0 && ids[size - 1] < id) {
+            return -size - 1;
+        }
+        return Arrays.binarySearch(ids, 0, size, id);
+    }
+
+    private void removeAt(int index) {
+        liveBytes -= lengths[index];
+        size--;
+        if (index < size) {
+            System.arraycopy(ids, index + 1, ids, index, size - index);
+            System.arraycopy(offsets, index + 1, offsets, index, size - index);
+            System.arraycopy(lengths, index + 1, lengths, index, size - index);
+        }
+        if (size == 0) {
+            buffer = new byte[0];
+            used = 0;
+        }
+    }
+
+    /**
+     * Removes the pages at the marked indexes, keeping the order of the others
+     */
+    private void removeAll(boolean[] marked) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (marked[i]) {
+                liveBytes -= lengths[i];
+            } else {
+                ids[kept] = ids[i];
+                offsets[kept] = offsets[i];
+                lengths[kept] = lengths[i];
+                kept++;
+            }
+        }
+        size = kept;
+        if (size == 0) {
+            buffer = new byte[0];
+            used = 0;
+        }
+    }
+
+    private int append(byte[] data) {
+        if (used + data.length > buffer.length) {
+            if (used - liveBytes > liveBytes) {
+                compact(data.length);
+            } else {
+                buffer = Arrays.copyOf(buffer, Math.max(used + data.length, buffer.length + (buffer.length >> 1)));
+            }
+        }
+        int offset = used;
+        System.arraycopy(data, 0, buffer, offset, data.length);
+        used += data.length;
+        return offset;
+    }
+
+    private void compactIfSparse() {
+        if (used - liveBytes > liveBytes) {
+            compact(0);
+        }
+    }
+
+    /**
+     * Copies the pages in id order into a new buffer with room for {@code extra} more bytes
+     */
+    private void compact(int extra) {
+        byte[] compacted = new byte[(int) liveBytes + extra];
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(buffer, offsets[i], compacted, offset, lengths[i]);
+            offsets[i] = offset;
+            offset += lengths[i];
+        }
+        buffer = compacted;
+        used = offset;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            int length = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, length);
+            offsets = Arrays.copyOf(offsets, length);
+            lengths = Arrays.copyOf(lengths, length);
+        }
+    }
+}
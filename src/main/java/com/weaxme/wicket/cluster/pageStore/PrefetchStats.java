@@ -0,0 +1,59 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class PrefetchStats implements PrefetchStatsMBean {
+
+    private final int depth;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder prefetchedPages = new LongAdder();
+
+    PrefetchStats(int depth) {
+        this.depth = depth;
+    }
+
+    void onHit() {
+        hits.increment();
+    }
+
+    void onMiss(int prefetched) {
+        misses.increment();
+        prefetchedPages.add(prefetched);
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getPrefetchedPages() {
+        return prefetchedPages.sum();
+    }
+
+    @Override
+    public int getPrefetchDepth() {
+        return depth;
+    }
+
+    @Override
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        prefetchedPages.reset();
+    }
+}
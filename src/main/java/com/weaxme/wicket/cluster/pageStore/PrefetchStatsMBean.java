@@ -0,0 +1,28 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+/**
+ * JMX view of the page prefetch of {@link HazelcastDataStore}
+ */
+public interface PrefetchStatsMBean {
+
+    /**
+     * @return number of page reads served from prefetched pages
+     */
+    long getHits();
+
+    /**
+     * @return number of page reads which went to the cluster
+     */
+    long getMisses();
+
+    double getHitRatio();
+
+    /**
+     * @return number of pages fetched together with the requested ones
+     */
+    long getPrefetchedPages();
+
+    int getPrefetchDepth();
+
+    void reset();
+}
@@ -0,0 +1,180 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Ids, sizes and delta bases of the pages of one session in {@link HazelcastPerPageDataStore}, which keeps
+ * the pages themselves in separate entries, and of the cold pages of a session in the tiered store.
+ * Lets the per-session limits be applied without sequential page ids.
+ */
+public class SessionPageIndex implements IdentifiedDataSerializable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_PAGES = 8;
+
+    private int[] ids = new int[INITIAL_PAGES];
+    private int[] lengths = new int[INITIAL_PAGES];
+    private int[] baseIds = new int[INITIAL_PAGES];
+    private int size;
+    private long bytes;
+    private boolean removed;
+
+    /**
+     * @return empty index which marks a removed session, no pages are indexed for it any more
+     */
+    public static SessionPageIndex removed() {
+        SessionPageIndex index = new SessionPageIndex();
+        index.removed = true;
+        return index;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return ids of the indexed pages in ascending order
+     */
+    public int[] getIds() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return sum of the sizes of the pages
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @param baseId id of the page the stored delta is based on, -1 for a full page
+     */
+    public void put(int id, int length, int baseId) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            bytes -= lengths[index];
+        } else {
+            index = -index - 1;
+            ensureCapacity(size + 1);
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            System.arraycopy(lengths, index, lengths, index + 1, size - index);
+            System.arraycopy(baseIds, index, baseIds, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+        lengths[index] = length;
+        baseIds[index] = baseId;
+        bytes += length;
+    }
+
+    public boolean remove(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index < 0) {
+            return false;
+        }
+        bytes -= lengths[index];
+        size--;
+        System.arraycopy(ids, index + 1, ids, index, size - index);
+        System.arraycopy(lengths, index + 1, lengths, index, size - index);
+        System.arraycopy(baseIds, index + 1, baseIds, index, size - index);
+        return true;
+    }
+
+    /**
+     * Removes the oldest pages from the index until the session fits into the limits, see {@link PageEviction}.
+     *
+     * @return ids of the removed pages, to be removed from the page map
+     */
+    public int[] evictOldest(int keepId, int maxPages, long maxBytes) {
+        if (!PageEviction.exceeds(size, bytes, maxPages, maxBytes)) {
+            return new int[0];
+        }
+        int[] bases = new int[size];
+        for (int i = 0; i < size; i++) {
+            bases[i] = baseIds[i] != -1 ? Math.max(-1, Arrays.binarySearch(ids, 0, size, baseIds[i])) : -1;
+        }
+        boolean[] evict = PageEviction.select(ids, lengths, bases, size, bytes, keepId, maxPages, maxBytes);
+        if (evict == null) {
+            return new int[0];
+        }
+        int[] evicted = new int[size];
+        int count = 0;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (evict[i]) {
+                evicted[count++] = ids[i];
+                bytes -= lengths[i];
+            } else {
+                ids[kept] = ids[i];
+                lengths[kept] = lengths[i];
+                baseIds[kept] = baseIds[i];
+                kept++;
+            }
+        }
+        size = kept;
+        return Arrays.copyOf(evicted, count);
+    }
+
+    @Override
+    public int getFactoryId() {
+        return ClusterSerialization.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return ClusterSerialization.PAGE_INDEX;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        // a removed session is written as a negative size
+        out.writeInt(removed ? -1 : size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(ids[i]);
+            out.writeInt(lengths[i]);
+            out.writeInt(baseIds[i]);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        size = in.readInt();
+        removed = size < 0;
+        size = Math.max(size, 0);
+        ids = new int[Math.max(size, INITIAL_PAGES)];
+        lengths = new int[ids.length];
+        baseIds = new int[ids.length];
+        bytes = 0;
+        for (int i = 0; i < size; i++) {
+            ids[i] = in.readInt();
+            lengths[i] = in.readInt();
+            baseIds[i] = in.readInt();
+            bytes += lengths[i];
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            int length = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, length);
+            lengths = Arrays.copyOf(lengths, length);
+            baseIds = Arrays.copyOf(baseIds, length);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.MapEvent;
+import com.hazelcast.core.MembershipAdapter;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
+import com.hazelcast.map.listener.MapEvictedListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Translates entry events of a page map and cluster membership events into
+ * {@link IHazelcastDataStore.SessionUpdateListener} calls.
+ *
+ * @param <K> key type of the page map
+ */
+class SessionUpdateListeners<K> {
+
+    private final HazelcastInstance hazelcast;
+    private final IMap<K, ?> map;
+    private final Function<K, String> sessionIdOf;
+
+    /**
+     * Map listener registration id -> membership listener registration id
+     */
+    private final Map<String, String> registrations = new ConcurrentHashMap<>();
+
+    SessionUpdateListeners(HazelcastInstance hazelcast, IMap<K, ?> map, Function<K, String> sessionIdOf) {
+        this.hazelcast = hazelcast;
+        this.map = map;
+        this.sessionIdOf = sessionIdOf;
+    }
+
+    String add(IHazelcastDataStore.SessionUpdateListener listener) {
+        String mapRegistration = map.addEntryListener(new EntryListener(listener), false);
+        String memberRegistration = hazelcast.getCluster().addMembershipListener(new MembershipAdapter() {
+            @Override
+            public void memberAdded(MembershipEvent event) {
+                listener.allUpdated();
+            }
+
+            @Override
+            public void memberRemoved(MembershipEvent event) {
+                listener.allUpdated();
+            }
+        });
+        registrations.put(mapRegistration, memberRegistration);
+        return mapRegistration;
+    }
+
+    void remove(String registrationId) {
+        String memberRegistration = registrations.remove(registrationId);
+        if (memberRegistration != null) {
+            map.removeEntryListener(registrationId);
+            hazelcast.getCluster().removeMembershipListener(memberRegistration);
+        }
+    }
+
+    private class EntryListener implements EntryAddedListener<K, Object>, EntryUpdatedListener<K, Object>,
+            EntryRemovedListener<K, Object>, EntryEvictedListener<K, Object>, EntryExpiredListener<K, Object>,
+            MapClearedListener, MapEvictedListener {
+
+        private final IHazelcastDataStore.SessionUpdateListener listener;
+
+        private EntryListener(IHazelcastDataStore.SessionUpdateListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void entryAdded(EntryEvent<K, Object> event) {
+            onEntryEvent(event);
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<K, Object> event) {
+            onEntryEvent(event);
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<K, Object> event) {
+            onEntryEvent(event);
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<K, Object> event) {
+            listener.sessionUpdated(sessionIdOf.apply(event.getKey()));
+        }
+
+        @Override
+        public void entryExpired(EntryEvent<K, Object> event) {
+            listener.sessionUpdated(sessionIdOf.apply(event.getKey()));
+        }
+
+        @Override
+        public void mapCleared(MapEvent event) {
+            listener.allUpdated();
+        }
+
+        @Override
+        public void mapEvicted(MapEvent event) {
+            listener.allUpdated();
+        }
+
+        private void onEntryEvent(EntryEvent<K, Object> event) {
+            // own changes are already known to the listener
+            if (event.getMember() == null || !event.getMember().localMember()) {
+                listener.sessionUpdated(sessionIdOf.apply(event.getKey()));
+            }
+        }
+    }
+}
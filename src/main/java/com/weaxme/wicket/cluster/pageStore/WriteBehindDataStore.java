@@ -0,0 +1,335 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.hazelcast.core.ExecutionCallback;
+import com.hazelcast.core.ICompletableFuture;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.wicket.pageStore.IDataStore;
+
+import javax.management.ObjectName;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind wrapper of {@link IAsyncDataStore}.
+ * <p>
+ * Stored pages are put into a bounded queue and sent to the cluster by a background thread with
+ * {@link IAsyncDataStore#storeDataAsync(String, int, byte[])}. Repeated writes of the same page which
+ * are not sent yet are coalesced, so only the last version goes over the network. Until the cluster
+ * confirms a write the page is served from the local overlay, so a request always sees its own writes.
+ * If the queue is full the page is written synchronously.
+ * <p>
+ * A removal waits for the writes of the removed pages which are already sent, so a write confirmed after
+ * the removal can't bring the page back.
+ */
+@Slf4j
+public class WriteBehindDataStore implements IDataStore {
+
+    private static final long POLL_MILLIS = 100;
+    private static final long DESTROY_TIMEOUT_MILLIS = 5000;
+
+    private final IAsyncDataStore delegate;
+
+    /**
+     * Last not yet confirmed version of each page
+     */
+    private final PageMap pending = new PageMap();
+
+    /**
+     * Pages sent to the cluster and not yet confirmed
+     */
+    private final PageMap sending = new PageMap();
+
+    private final BlockingQueue<HazelcastPageKey> queue;
+
+    /**
+     * Limits the number of writes sent to the cluster and not yet confirmed
+     */
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    private final WriteBehindStats stats;
+    private final ObjectName objectName;
+    private final Thread flusher;
+
+    private volatile boolean destroyed;
+
+    public WriteBehindDataStore(IAsyncDataStore delegate, int capacity, int maxInFlight) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.stats = new WriteBehindStats(this);
+        this.objectName = JmxSupport.register(stats, "DataStore", "write-behind");
+        this.flusher = new Thread(this::flushQueue, "wicket-data-store-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public byte[] getData(String sessionId, int id) {
+        PendingPage page = pending.get(new HazelcastPageKey(sessionId, id));
+        if (page != null) {
+            return page.data;
+        }
+        return delegate.getData(sessionId, id);
+    }
+
+    @Override
+    public void removeData(String sessionId, int id) {
+        HazelcastPageKey key = new HazelcastPageKey(sessionId, id);
+        pending.remove(key);
+        awaitSent(sending.get(key));
+        delegate.removeData(sessionId, id);
+    }
+
+    @Override
+    public void removeData(String sessionId) {
+        pending.removeSession(sessionId);
+        for (PendingPage page : sending.getSession(sessionId)) {
+            awaitSent(page);
+        }
+        delegate.removeData(sessionId);
+    }
+
+    @Override
+    public void storeData(String sessionId, int id, byte[] data) {
+        HazelcastPageKey key = new HazelcastPageKey(sessionId, id);
+        PendingPage page = new PendingPage(key, data);
+        if (pending.put(page) != null) {
+            // previous version is not confirmed yet, its sender will pick up this one
+            stats.onCoalesced();
+        } else if (destroyed || !queue.offer(key)) {
+            stats.onWriteThrough();
+            writeThrough(page);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        destroyed = true;
+        try {
+            flusher.join(DESTROY_TIMEOUT_MILLIS);
+            inFlight.tryAcquire(maxInFlight, DESTROY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (!pending.isEmpty()) {
+            log.warn("{} pages weren't written to the cluster before destroy", pending.size());
+        }
+        JmxSupport.unregister(objectName);
+        delegate.destroy();
+    }
+
+    @Override
+    public boolean isReplicated() {
+        return delegate.isReplicated();
+    }
+
+    /**
+     * Pages are already written in background, so there is no need in one more queue in front of this store
+     */
+    @Override
+    public boolean canBeAsynchronous() {
+        return false;
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    int getPendingPages() {
+        return pending.size();
+    }
+
+    int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    private void flushQueue() {
+        while (!destroyed || !queue.isEmpty()) {
+            try {
+                HazelcastPageKey key = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                PendingPage page = key != null ? pending.get(key) : null;
+                if (page != null) {
+                    inFlight.acquire();
+                    flush(page);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception ex) {
+                log.error("Can't flush page", ex);
+            }
+        }
+    }
+
+    /**
+     * Sends the page to the cluster. Must be called holding an in-flight permit,
+     * which is passed to the next version of the page or released when there is none.
+     */
+    private void flush(PendingPage page) {
+        sending.put(page);
+        if (pending.get(page.key) != page) {
+            // removed after it was taken from the queue, a removal which didn't see it in sending
+            // had removed it from pending before this check
+            onWritten(page);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            whenDone(delegate.storeDataAsync(page.key.getSessionId(), page.key.getPageId(), page.data), page, start);
+        } catch (RuntimeException ex) {
+            log.error("Can't write page {} of session {}", page.key.getPageId(), page.key.getSessionId(), ex);
+            stats.onFailed();
+            onWritten(page);
+        }
+    }
+
+    private <V> void whenDone(ICompletableFuture<V> future, PendingPage page, long start) {
+        future.andThen(new ExecutionCallback<V>() {
+            @Override
+            public void onResponse(V response) {
+                stats.onFlushed(System.nanoTime() - start);
+                onWritten(page);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.error("Can't write page {} of session {}", page.key.getPageId(), page.key.getSessionId(), t);
+                stats.onFailed();
+                onWritten(page);
+            }
+        });
+    }
+
+    private void onWritten(PendingPage page) {
+        sending.remove(page);
+        page.sent.countDown();
+        if (pending.remove(page)) {
+            inFlight.release();
+            return;
+        }
+        PendingPage next = pending.get(page.key);
+        if (next != null) {
+            flush(next);
+        } else {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Waits until the cluster confirms or fails the write of the page
+     */
+    private void awaitSent(PendingPage page) {
+        if (page == null) {
+            return;
+        }
+        try {
+            if (!page.sent.await(DESTROY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("Write of page {} of session {} isn't confirmed, it may outlive the removal",
+                        page.key.getPageId(), page.key.getSessionId());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeThrough(PendingPage page) {
+        while (page != null) {
+            delegate.storeData(page.key.getSessionId(), page.key.getPageId(), page.data);
+            if (pending.remove(page)) {
+                break;
+            }
+            page = pending.get(page.key);
+        }
+    }
+
+    /**
+     * Pages by session and page id, so the pages of one session are found without a scan of all pages.
+     * A session is changed only inside {@code compute} of its entry, which drops the entry with its last page.
+     */
+    private static class PageMap {
+
+        private final ConcurrentMap<String, ConcurrentMap<Integer, PendingPage>> sessions = new ConcurrentHashMap<>();
+
+        PendingPage get(HazelcastPageKey key) {
+            ConcurrentMap<Integer, PendingPage> pages = sessions.get(key.getSessionId());
+            return pages != null ? pages.get(key.getPageId()) : null;
+        }
+
+        /**
+         * @return previous version of the page
+         */
+        PendingPage put(PendingPage page) {
+            PendingPage[] previous = new PendingPage[1];
+            sessions.compute(page.key.getSessionId(), (sessionId, pages) -> {
+                if (pages == null) {
+                    pages = new ConcurrentHashMap<>();
+                }
+                previous[0] = pages.put(page.key.getPageId(), page);
+                return pages;
+            });
+            return previous[0];
+        }
+
+        void remove(HazelcastPageKey key) {
+            sessions.computeIfPresent(key.getSessionId(), (sessionId, pages) -> {
+                pages.remove(key.getPageId());
+                return pages.isEmpty() ? null : pages;
+            });
+        }
+
+        /**
+         * @return true if the page was the current version and is removed
+         */
+        boolean remove(PendingPage page) {
+            boolean[] removed = new boolean[1];
+            sessions.computeIfPresent(page.key.getSessionId(), (sessionId, pages) -> {
+                removed[0] = pages.remove(page.key.getPageId(), page);
+                return pages.isEmpty() ? null : pages;
+            });
+            return removed[0];
+        }
+
+        void removeSession(String sessionId) {
+            sessions.remove(sessionId);
+        }
+
+        Collection<PendingPage> getSession(String sessionId) {
+            ConcurrentMap<Integer, PendingPage> pages = sessions.get(sessionId);
+            return pages != null ? pages.values() : Collections.emptyList();
+        }
+
+        boolean isEmpty() {
+            return sessions.isEmpty();
+        }
+
+        int size() {
+            int size = 0;
+            for (ConcurrentMap<Integer, PendingPage> pages : sessions.values()) {
+                size += pages.size();
+            }
+            return size;
+        }
+    }
+
+    private static class PendingPage {
+
+        private final HazelcastPageKey key;
+        private final byte[] data;
+        private final CountDownLatch sent = new CountDownLatch(1);
+
+        private PendingPage(HazelcastPageKey key, byte[] data) {
+            this.key = key;
+            this.data = data;
+        }
+    }
+}
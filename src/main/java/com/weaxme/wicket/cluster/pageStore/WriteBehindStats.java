@@ -0,0 +1,99 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class WriteBehindStats implements WriteBehindStatsMBean {
+
+    private final WriteBehindDataStore store;
+
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder writeThrough = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    WriteBehindStats(WriteBehindDataStore store) {
+        this.store = store;
+    }
+
+    void onFlushed(long nanos) {
+        flushed.increment();
+        flushNanos.add(nanos);
+        maxFlushNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    void onCoalesced() {
+        coalesced.increment();
+    }
+
+    void onWriteThrough() {
+        writeThrough.increment();
+    }
+
+    void onFailed() {
+        failed.increment();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return store.getQueueDepth();
+    }
+
+    @Override
+    public int getPendingPages() {
+        return store.getPendingPages();
+    }
+
+    @Override
+    public int getInFlight() {
+        return store.getInFlight();
+    }
+
+    @Override
+    public long getFlushedPages() {
+        return flushed.sum();
+    }
+
+    @Override
+    public long getCoalescedPages() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public long getWriteThroughPages() {
+        return writeThrough.sum();
+    }
+
+    @Override
+    public long getFailedPages() {
+        return failed.sum();
+    }
+
+    @Override
+    public double getAverageFlushLatencyMillis() {
+        long count = flushed.sum();
+        return count == 0 ? 0 : toMillis(flushNanos.sum()) / count;
+    }
+
+    @Override
+    public double getMaxFlushLatencyMillis() {
+        return toMillis(maxFlushNanos.get());
+    }
+
+    @Override
+    public void reset() {
+        flushed.reset();
+        flushNanos.reset();
+        maxFlushNanos.set(0);
+        coalesced.reset();
+        writeThrough.reset();
+        failed.reset();
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,42 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+/**
+ * JMX view of {@link WriteBehindDataStore}
+ */
+public interface WriteBehindStatsMBean {
+
+    /**
+     * @return number of pages waiting in the queue
+     */
+    int getQueueDepth();
+
+    /**
+     * @return number of pages not yet confirmed by the cluster (queued and in flight)
+     */
+    int getPendingPages();
+
+    /**
+     * @return number of pages sent to the cluster and not yet confirmed
+     */
+    int getInFlight();
+
+    long getFlushedPages();
+
+    /**
+     * @return number of writes replaced by a later write of the same page before they were sent
+     */
+    long getCoalescedPages();
+
+    /**
+     * @return number of writes done synchronously because the queue was full
+     */
+    long getWriteThroughPages();
+
+    long getFailedPages();
+
+    double getAverageFlushLatencyMillis();
+
+    double getMaxFlushLatencyMillis();
+
+    void reset();
+}
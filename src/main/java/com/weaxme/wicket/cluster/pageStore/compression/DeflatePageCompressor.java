@@ -0,0 +1,75 @@
+package com.weaxme.wicket.cluster.pageStore.compression;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Slower compression with a better ratio than {@link Lz4PageCompressor}.
+ */
+public class DeflatePageCompressor implements IPageCompressor {
+
+    public static final byte ID = 2;
+
+    private final int level;
+
+    public DeflatePageCompressor() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level deflate compression level, see {@link Deflater#setLevel(int)}
+     */
+    public DeflatePageCompressor(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            // compressed data is only useful if it is smaller than the original
+            byte[] buffer = new byte[length];
+            int compressedLength = 0;
+            while (!deflater.finished() && compressedLength < buffer.length) {
+                compressedLength += deflater.deflate(buffer, compressedLength, buffer.length - compressedLength);
+            }
+            return deflater.finished() ? Arrays.copyOf(buffer, compressedLength) : null;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length, int originalLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            byte[] result = new byte[originalLength];
+            int decompressedLength = 0;
+            while (decompressedLength < originalLength && !inflater.finished()) {
+                int count = inflater.inflate(result, decompressedLength, originalLength - decompressedLength);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                decompressedLength += count;
+            }
+            if (decompressedLength != originalLength) {
+                throw new IllegalStateException("Corrupted page data: expected " + originalLength + " bytes, got " + decompressedLength);
+            }
+            return result;
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Corrupted page data", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.weaxme.wicket.cluster.pageStore.compression;
+
+/**
+ * Compression algorithm for serialized pages. See {@link PageCompression} for the stored format.
+ */
+public interface IPageCompressor {
+
+    /**
+     * @return id written to the header of compressed pages, must be unique and stable between releases
+     */
+    byte getId();
+
+    /**
+     * Compresses {@code length} bytes of {@code data} starting from {@code offset}
+     *
+     * @return compressed bytes or null if the data can't be compressed
+     */
+    byte[] compress(byte[] data, int offset, int length);
+
+    /**
+     * Decompresses {@code length} bytes of {@code data} starting from {@code offset}
+     *
+     * @param originalLength length of uncompressed data
+     */
+    byte[] decompress(byte[] data, int offset, int length, int originalLength);
+}
@@ -0,0 +1,43 @@
+package com.weaxme.wicket.cluster.pageStore.compression;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.util.Arrays;
+
+/**
+ * Fast compression with a moderate ratio, suitable for every page write.
+ */
+public class Lz4PageCompressor implements IPageCompressor {
+
+    public static final byte ID = 1;
+
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+
+    public Lz4PageCompressor() {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.fastDecompressor();
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) {
+        byte[] buffer = new byte[compressor.maxCompressedLength(length)];
+        int compressedLength = compressor.compress(data, offset, length, buffer, 0, buffer.length);
+        return compressedLength < length ? Arrays.copyOf(buffer, compressedLength) : null;
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length, int originalLength) {
+        byte[] result = new byte[originalLength];
+        decompressor.decompress(data, offset, result, 0, originalLength);
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+package com.weaxme.wicket.cluster.pageStore.compression;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Format of compressed pages.
+ * <p>
+ * Every encoded page starts with a header: two magic bytes, the compressor id ({@link #UNCOMPRESSED}
+ * for pages kept as is) and the length of the uncompressed page. Data without the magic bytes is a page
+ * written before compression was enabled and is returned unchanged, so pages of both formats can be read
+ * during a rolling upgrade. All known compressors are used for reading, whichever is configured for writing.
+ */
+public class PageCompression {
+
+    public static final byte UNCOMPRESSED = 0;
+
+    private static final byte MAGIC_1 = (byte) 0x9E;
+    private static final byte MAGIC_2 = (byte) 0x57;
+
+    public static final int HEADER_LENGTH = 2 + 1 + 4;
+
+    private final IPageCompressor compressor;
+    private final int threshold;
+    private final IPageCompressor[] compressors = new IPageCompressor[Byte.MAX_VALUE + 1];
+
+    /**
+     * @param compressor compressor of written pages, null to write pages uncompressed
+     * @param threshold  pages smaller than this number of bytes are written uncompressed
+     */
+    public PageCompression(IPageCompressor compressor, int threshold) {
+        this.compressor = compressor;
+        this.threshold = threshold;
+        register(new Lz4PageCompressor());
+        register(new DeflatePageCompressor());
+        if (compressor != null) {
+            register(compressor);
+        }
+    }
+
+    public final void register(IPageCompressor compressor) {
+        if (compressor.getId() <= UNCOMPRESSED) {
+            throw new IllegalArgumentException("Compressor id must be positive: " + compressor.getId());
+        }
+        compressors[compressor.getId()] = compressor;
+    }
+
+    public byte[] encode(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (compressor != null && data.length >= threshold) {
+            byte[] compressed = compressor.compress(data, 0, data.length);
+            if (compressed != null && compressed.length < data.length) {
+                return withHeader(compressor.getId(), data.length, compressed);
+            }
+        }
+        return withHeader(UNCOMPRESSED, data.length, data);
+    }
+
+    public byte[] decode(byte[] data) {
+        if (!isEncoded(data)) {
+            return data;
+        }
+        ByteBuffer header = ByteBuffer.wrap(data, 2, HEADER_LENGTH - 2);
+        byte id = header.get();
+        int originalLength = header.getInt();
+        if (id == UNCOMPRESSED) {
+            return Arrays.copyOfRange(data, HEADER_LENGTH, data.length);
+        }
+        IPageCompressor pageCompressor = id > 0 ? compressors[id] : null;
+        if (pageCompressor == null) {
+            throw new IllegalStateException("Unknown page compressor: " + id);
+        }
+        return pageCompressor.decompress(data, HEADER_LENGTH, data.length - HEADER_LENGTH, originalLength);
+    }
+
+    public static boolean isEncoded(byte[] data) {
+        return data != null && data.length >= HEADER_LENGTH && data[0] == MAGIC_1 && data[1] == MAGIC_2;
+    }
+
+    private static byte[] withHeader(byte id, int originalLength, byte[] data) {
+        return ByteBuffer.allocate(HEADER_LENGTH + data.length)
+                .put(MAGIC_1)
+                .put(MAGIC_2)
+                .put(id)
+                .putInt(originalLength)
+                .put(data)
+                .array();
+    }
+}
@@ -0,0 +1,28 @@
+package com.weaxme.wicket.cluster.pageStore.compression;
+
+/**
+ * Compressors which can be selected by the {@code data-store.compression} property.
+ */
+public enum PageCompressorType {
+
+    NONE {
+        @Override
+        public IPageCompressor newCompressor() {
+            return null;
+        }
+    },
+    LZ4 {
+        @Override
+        public IPageCompressor newCompressor() {
+            return new Lz4PageCompressor();
+        }
+    },
+    DEFLATE {
+        @Override
+        public IPageCompressor newCompressor() {
+            return new DeflatePageCompressor();
+        }
+    };
+
+    public abstract IPageCompressor newCompressor();
+}
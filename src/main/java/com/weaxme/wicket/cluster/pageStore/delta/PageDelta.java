@@ -0,0 +1,177 @@
+package com.weaxme.wicket.cluster.pageStore.delta;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Binary diff of two versions of a serialized page.
+ * <p>
+ * A delta is the length of the target followed by a list of operations: copy a range of the base or
+ * insert literal bytes. Common prefix and suffix are copied as a whole, the rest is matched in
+ * {@value #BLOCK} byte blocks of the base, which is enough for page versions differing in a few fields.
+ */
+public final class PageDelta {
+
+    private static final int BLOCK = 16;
+
+    private static final int COPY = 1;
+    private static final int INSERT = 2;
+
+    private PageDelta() {
+    }
+
+    public static byte[] diff(byte[] base, byte[] target) {
+        int maxCommon = Math.min(base.length, target.length);
+        int prefix = 0;
+        while (prefix < maxCommon && base[prefix] == target[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < maxCommon - prefix && base[base.length - suffix - 1] == target[target.length - suffix - 1]) {
+            suffix++;
+        }
+        int baseEnd = base.length - suffix;
+        int targetEnd = target.length - suffix;
+
+        int blocks = (baseEnd - prefix) / BLOCK;
+        int mask = Integer.highestOneBit(Math.max(blocks, 1) * 2 - 1) * 2 - 1;
+        // base offset + 1 of a block with the hash, 0 for none
+        int[] table = new int[mask + 1];
+        for (int i = prefix; i + BLOCK <= baseEnd; i += BLOCK) {
+            table[hash(base, i) & mask] = i + 1;
+        }
+
+        Output output = new Output(target.length / 8 + 16);
+        output.writeVarInt(target.length);
+        if (prefix > 0) {
+            output.writeCopy(0, prefix);
+        }
+        int literalStart = prefix;
+        int i = prefix;
+        while (i + BLOCK <= targetEnd) {
+            int candidate = table[hash(target, i) & mask] - 1;
+            if (candidate >= 0 && matches(base, candidate, target, i)) {
+                int start = i;
+                int baseStart = candidate;
+                while (start > literalStart && baseStart > 0 && target[start - 1] == base[baseStart - 1]) {
+                    start--;
+                    baseStart--;
+                }
+                int end = i + BLOCK;
+                int baseMatchEnd = candidate + BLOCK;
+                while (end < targetEnd && baseMatchEnd < base.length && target[end] == base[baseMatchEnd]) {
+                    end++;
+                    baseMatchEnd++;
+                }
+                output.writeInsert(target, literalStart, start - literalStart);
+                output.writeCopy(baseStart, end - start);
+                i = end;
+                literalStart = end;
+            } else {
+                i++;
+            }
+        }
+        output.writeInsert(target, literalStart, targetEnd - literalStart);
+        if (suffix > 0) {
+            output.writeCopy(base.length - suffix, suffix);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Rebuilds the target from the base and the delta starting at {@code offset}
+     */
+    public static byte[] apply(byte[] base, byte[] delta, int offset) {
+        Input input = new Input(delta, offset);
+        byte[] target = new byte[input.readVarInt()];
+        int position = 0;
+        while (input.position < delta.length) {
+            int operation = delta[input.position++];
+            if (operation == COPY) {
+                int from = input.readVarInt();
+                int length = input.readVarInt();
+                System.arraycopy(base, from, target, position, length);
+                position += length;
+            } else if (operation == INSERT) {
+                int length = input.readVarInt();
+                System.arraycopy(delta, input.position, target, position, length);
+                input.position += length;
+                position += length;
+            } else {
+                throw new IllegalStateException("Corrupted page delta, unknown operation " + operation);
+            }
+        }
+        if (position != target.length) {
+            throw new IllegalStateException("Corrupted page delta, expected " + target.length + " bytes, got " + position);
+        }
+        return target;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int hash = 0;
+        for (int i = offset; i < offset + BLOCK; i++) {
+            hash = hash * 31 + data[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(byte[] base, int baseOffset, byte[] target, int targetOffset) {
+        for (int i = 0; i < BLOCK; i++) {
+            if (base[baseOffset + i] != target[targetOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+
+        private Output(int size) {
+            super(size);
+        }
+
+        private void writeCopy(int from, int length) {
+            write(COPY);
+            writeVarInt(from);
+            writeVarInt(length);
+        }
+
+        private void writeInsert(byte[] data, int from, int length) {
+            if (length > 0) {
+                write(INSERT);
+                writeVarInt(length);
+                write(data, from, length);
+            }
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+    }
+
+    private static class Input {
+
+        private final byte[] data;
+        private int position;
+
+        private Input(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Corrupted page delta, malformed length");
+        }
+    }
+}
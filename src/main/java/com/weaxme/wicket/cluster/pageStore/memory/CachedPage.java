@@ -0,0 +1,22 @@
+package com.weaxme.wicket.cluster.pageStore.memory;
+
+/**
+ * Page copy held by {@link IPageMemory}
+ */
+public interface CachedPage {
+
+    /**
+     * @return page length in bytes
+     */
+    int length();
+
+    /**
+     * @return new array with the page bytes
+     */
+    byte[] read();
+
+    /**
+     * Returns memory of the page to its {@link IPageMemory}. The page can't be read after it.
+     */
+    void free();
+}
@@ -0,0 +1,57 @@
+package com.weaxme.wicket.cluster.pageStore.memory;
+
+/**
+ * Keeps cached pages as arrays on the Java heap.
+ */
+public class HeapPageMemory implements IPageMemory {
+
+    private long usedBytes;
+
+    @Override
+    public CachedPage allocate(byte[] data) {
+        usedBytes += data.length;
+        return new HeapPage(data);
+    }
+
+    @Override
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    @Override
+    public long getCapacity() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public void destroy() {
+        usedBytes = 0;
+    }
+
+    private class HeapPage implements CachedPage {
+
+        private final byte[] data;
+
+        private HeapPage(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int length() {
+            return data.length;
+        }
+
+        /**
+         * Pages passed to the data store are not changed by Wicket, so the same array is returned
+         */
+        @Override
+        public byte[] read() {
+            return data;
+        }
+
+        @Override
+        public void free() {
+            usedBytes -= data.length;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.weaxme.wicket.cluster.pageStore.memory;
+
+/**
+ * Memory which holds copies of pages cached on this node.
+ * Implementations need no synchronization of their own, the cache calls them under its lock.
+ */
+public interface IPageMemory {
+
+    /**
+     * Copies the page into this memory
+     *
+     * @return the copy or null if there is no free space for it
+     */
+    CachedPage allocate(byte[] data);
+
+    /**
+     * @return bytes taken by allocated pages including the allocation overhead
+     */
+    long getUsedBytes();
+
+    /**
+     * @return max bytes which can be allocated or {@link Long#MAX_VALUE} if the memory is not limited by itself
+     */
+    long getCapacity();
+
+    /**
+     * Releases all memory. Pages allocated before can't be used anymore.
+     */
+    void destroy();
+}
@@ -0,0 +1,145 @@
+package com.weaxme.wicket.cluster.pageStore.memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps cached pages outside of the Java heap, so they are not scanned by the garbage collector.
+ * <p>
+ * Memory is allocated up front as direct buffers (slabs) split into blocks of the same size.
+ * A page takes as many blocks as it needs, the blocks don't have to be adjacent, so freed memory
+ * never gets fragmented. Reading a page allocates only the returned array.
+ * <p>
+ * Not thread-safe: the free block stack is shared by all pages, so allocating, reading and freeing pages
+ * must happen under one lock held by the caller, as {@link IPageMemory} requires.
+ */
+public class OffHeapPageMemory implements IPageMemory {
+
+    private static final int MAX_SLAB_SIZE = 64 * 1024 * 1024;
+
+    private final int blockSize;
+    private final int blocksPerSlab;
+    private final ByteBuffer[] slabs;
+
+    /**
+     * Stack of free block numbers
+     */
+    private final int[] freeBlocks;
+    private int freeCount;
+    private boolean destroyed;
+
+    /**
+     * @param capacity  max bytes of memory, rounded up to whole blocks
+     * @param blockSize bytes in one block, the last block of a page is wasted partially
+     */
+    public OffHeapPageMemory(long capacity, int blockSize) {
+        long blocks = (capacity + blockSize - 1) / blockSize;
+        if (blocks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many blocks, increase block size: " + blocks);
+        }
+        this.blockSize = blockSize;
+        this.blocksPerSlab = Math.max(1, MAX_SLAB_SIZE / blockSize);
+        int slabCount = (int) ((blocks + blocksPerSlab - 1) / blocksPerSlab);
+        this.slabs = new ByteBuffer[slabCount];
+        for (int i = 0; i < slabCount; i++) {
+            long slabBlocks = Math.min(blocksPerSlab, blocks - (long) i * blocksPerSlab);
+            slabs[i] = ByteBuffer.allocateDirect((int) slabBlocks * blockSize);
+        }
+        this.freeBlocks = new int[(int) blocks];
+        for (int i = 0; i < freeBlocks.length; i++) {
+            freeBlocks[i] = freeBlocks.length - 1 - i;
+        }
+        this.freeCount = freeBlocks.length;
+    }
+
+    @Override
+    public CachedPage allocate(byte[] data) {
+        checkNotDestroyed();
+        int count = Math.max(1, (data.length + blockSize - 1) / blockSize);
+        if (count > freeCount) {
+            return null;
+        }
+        int[] blocks = new int[count];
+        for (int i = 0; i < count; i++) {
+            int block = freeBlocks[--freeCount];
+            blocks[i] = block;
+            int offset = i * blockSize;
+            buffer(block).put(data, offset, Math.min(blockSize, data.length - offset));
+        }
+        return new OffHeapPage(data.length, blocks);
+    }
+
+    @Override
+    public long getUsedBytes() {
+        return (long) (freeBlocks.length - freeCount) * blockSize;
+    }
+
+    @Override
+    public long getCapacity() {
+        return (long) freeBlocks.length * blockSize;
+    }
+
+    /**
+     * Direct buffers are released by the garbage collector once slabs aren't referenced.
+     * Pages can't be allocated or read after it, freeing them does nothing.
+     */
+    @Override
+    public void destroy() {
+        destroyed = true;
+        freeCount = freeBlocks.length;
+        for (int i = 0; i < slabs.length; i++) {
+            slabs[i] = null;
+        }
+    }
+
+    private void checkNotDestroyed() {
+        if (destroyed) {
+            throw new IllegalStateException("Off-heap page memory is destroyed");
+        }
+    }
+
+    /**
+     * @return view of the block positioned at its start
+     */
+    private ByteBuffer buffer(int block) {
+        ByteBuffer slab = slabs[block / blocksPerSlab].duplicate();
+        slab.position((block % blocksPerSlab) * blockSize);
+        return slab;
+    }
+
+    private class OffHeapPage implements CachedPage {
+
+        private final int length;
+        private final int[] blocks;
+
+        private OffHeapPage(int length, int[] blocks) {
+            this.length = length;
+            this.blocks = blocks;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public byte[] read() {
+            checkNotDestroyed();
+            byte[] data = new byte[length];
+            for (int i = 0; i < blocks.length; i++) {
+                int offset = i * blockSize;
+                buffer(blocks[i]).get(data, offset, Math.min(blockSize, length - offset));
+            }
+            return data;
+        }
+
+        @Override
+        public void free() {
+            if (destroyed) {
+                return;
+            }
+            for (int block : blocks) {
+                freeBlocks[freeCount++] = block;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.weaxme.wicket.cluster.pageStore.tiered;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Place of a page demoted to a segment file: the node which owns the file, the segment and the record offset.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class PageLocation implements IdentifiedDataSerializable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String node;
+    private int segment;
+    private int offset;
+    private int length;
+
+    @Override
+    public int getFactoryId() {
+        return ClusterSerialization.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return ClusterSerialization.PAGE_LOCATION;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(node);
+        out.writeInt(segment);
+        out.writeInt(offset);
+        out.writeInt(length);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        node = in.readUTF();
+        segment = in.readInt();
+        offset = in.readInt();
+        length = in.readInt();
+    }
+}
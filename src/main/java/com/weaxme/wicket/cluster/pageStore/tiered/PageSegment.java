@@ -0,0 +1,170 @@
+package com.weaxme.wicket.cluster.pageStore.tiered;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of page records mapped into memory.
+ * <p>
+ * The file has a fixed size and is filled with records one after another:
+ * magic, body length, CRC32 of the body, then the body - session id, page id and page bytes.
+ * When a segment is opened, records are checked from the start and the segment is continued after the
+ * last valid one, so a record torn by a crash is overwritten by the next append.
+ */
+class PageSegment {
+
+    private static final int MAGIC = 0x57504753;
+    private static final int RECORD_HEADER = 4 + 4 + 4;
+
+    private final int id;
+    private final File file;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * End of the last valid record, guarded by this
+     */
+    private int writePosition;
+
+    private PageSegment(int id, File file, MappedByteBuffer buffer) {
+        this.id = id;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens existing or creates new segment file
+     */
+    static PageSegment open(File file, int id, int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            PageSegment segment = new PageSegment(id, file, buffer);
+            segment.writePosition = segment.scan(null);
+            return segment;
+        }
+    }
+
+    int getId() {
+        return id;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    synchronized int getWritePosition() {
+        return writePosition;
+    }
+
+    /**
+     * @return record offset or -1 if the record doesn't fit into the segment
+     */
+    synchronized int append(String sessionId, int pageId, byte[] data) {
+        byte[] session = sessionId.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 2 + session.length + 4 + 4 + data.length;
+        if (writePosition + RECORD_HEADER + bodyLength > buffer.capacity()) {
+            return -1;
+        }
+        ByteBuffer body = ByteBuffer.allocate(bodyLength)
+                .putShort((short) session.length)
+                .put(session)
+                .putInt(pageId)
+                .putInt(data.length)
+                .put(data);
+        ByteBuffer target = buffer.duplicate();
+        target.position(writePosition);
+        target.putInt(MAGIC).putInt(bodyLength).putInt(checksum(body.array(), 0, bodyLength)).put(body.array());
+        int offset = writePosition;
+        writePosition += RECORD_HEADER + bodyLength;
+        return offset;
+    }
+
+    /**
+     * @return page bytes of the record at the offset or null if there is no valid record
+     */
+    byte[] read(int offset) {
+        Record record = readRecord(offset);
+        return record != null ? record.data : null;
+    }
+
+    /**
+     * Calls the visitor for every valid record
+     *
+     * @return end of the last valid record
+     */
+    int scan(RecordVisitor visitor) {
+        int position = 0;
+        Record record;
+        while ((record = readRecord(position)) != null) {
+            if (visitor != null) {
+                visitor.visit(record.sessionId, record.pageId, position, record.data);
+            }
+            position = record.end;
+        }
+        return position;
+    }
+
+    void flush() {
+        buffer.force();
+    }
+
+    private Record readRecord(int offset) {
+        if (offset < 0 || offset + RECORD_HEADER > buffer.capacity()) {
+            return null;
+        }
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        int magic = source.getInt();
+        int bodyLength = source.getInt();
+        int checksum = source.getInt();
+        if (magic != MAGIC || bodyLength < 10 || bodyLength > source.remaining()) {
+            return null;
+        }
+        byte[] body = new byte[bodyLength];
+        source.get(body);
+        if (checksum(body, 0, bodyLength) != checksum) {
+            return null;
+        }
+        ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+        byte[] session = new byte[bodyBuffer.getShort()];
+        bodyBuffer.get(session);
+        int pageId = bodyBuffer.getInt();
+        byte[] data = new byte[bodyBuffer.getInt()];
+        bodyBuffer.get(data);
+        return new Record(new String(session, StandardCharsets.UTF_8), pageId, data, offset + RECORD_HEADER + bodyLength);
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    interface RecordVisitor {
+        void visit(String sessionId, int pageId, int offset, byte[] data);
+    }
+
+    private static class Record {
+
+        private final String sessionId;
+        private final int pageId;
+        private final byte[] data;
+        private final int end;
+
+        private Record(String sessionId, int pageId, byte[] data, int end) {
+            this.sessionId = sessionId;
+            this.pageId = pageId;
+            this.data = data;
+            this.end = end;
+        }
+    }
+}
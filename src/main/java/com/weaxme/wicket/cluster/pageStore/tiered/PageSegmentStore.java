@@ -0,0 +1,153 @@
+package com.weaxme.wicket.cluster.pageStore.tiered;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Node-local set of {@link PageSegment}s in one directory.
+ * Pages are appended to the active segment, a new segment is started when the active one is full.
+ */
+@Slf4j
+public class PageSegmentStore {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+
+    private final String node;
+    private final File directory;
+    private final int segmentSize;
+    private final Map<Integer, PageSegment> segments = new ConcurrentHashMap<>();
+
+    private volatile PageSegment active;
+
+    public PageSegmentStore(String node, File directory, int segmentSize) {
+        this.node = node;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Can't create page segment directory " + directory);
+        }
+        open();
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * @return location of the appended page
+     */
+    public synchronized PageLocation append(String sessionId, int pageId, byte[] data) {
+        int offset = active.append(sessionId, pageId, data);
+        if (offset < 0) {
+            roll(data.length);
+            offset = active.append(sessionId, pageId, data);
+        }
+        return new PageLocation(node, active.getId(), offset, data.length);
+    }
+
+    /**
+     * @return page bytes or null if the segment is gone or has no valid record at the location
+     */
+    public byte[] read(PageLocation location) {
+        PageSegment segment = segments.get(location.getSegment());
+        if (segment == null) {
+            return null;
+        }
+        byte[] data = segment.read(location.getOffset());
+        return data != null && data.length == location.getLength() ? data : null;
+    }
+
+    public List<Integer> getSegmentIds() {
+        List<Integer> ids = new ArrayList<>(segments.keySet());
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * @return ids of the full segments, the active segment is never included
+     */
+    public List<Integer> getSealedSegments() {
+        List<Integer> ids = new ArrayList<>(segments.keySet());
+        ids.remove(Integer.valueOf(active.getId()));
+        return ids;
+    }
+
+    public void scan(int segmentId, PageSegment.RecordVisitor visitor) {
+        PageSegment segment = segments.get(segmentId);
+        if (segment != null) {
+            segment.scan(visitor);
+        }
+    }
+
+    public long getSegmentBytes(int segmentId) {
+        PageSegment segment = segments.get(segmentId);
+        return segment != null ? segment.getWritePosition() : 0;
+    }
+
+    public void delete(int segmentId) {
+        PageSegment segment = segments.remove(segmentId);
+        if (segment != null && !segment.getFile().delete()) {
+            log.warn("Can't delete page segment {}", segment.getFile());
+        }
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public void flush() {
+        for (PageSegment segment : segments.values()) {
+            segment.flush();
+        }
+    }
+
+    private void open() {
+        File[] files = directory.listFiles();
+        int last = -1;
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    int id = Integer.parseInt(matcher.group(1));
+                    segments.put(id, openSegment(file, id, segmentSize));
+                    last = Math.max(last, id);
+                }
+            }
+        }
+        if (last < 0) {
+            roll(0);
+        } else {
+            active = segments.get(last);
+            log.info("Opened {} page segments in {}", segments.size(), directory);
+        }
+    }
+
+    private synchronized void roll(int recordSize) {
+        int id = active != null ? active.getId() + 1 : 0;
+        // a page larger than the segment size gets a segment of its own
+        int size = Math.max(segmentSize, recordSize + 1024);
+        PageSegment segment = openSegment(new File(directory, "segment-" + id + ".dat"), id, size);
+        segments.put(id, segment);
+        if (active != null) {
+            active.flush();
+        }
+        active = segment;
+    }
+
+    private static PageSegment openSegment(File file, int id, int size) {
+        try {
+            return PageSegment.open(file, id, size);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't open page segment " + file, e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.weaxme.wicket.cluster.pageStore.tiered;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads a demoted page on the node which owns its segment file
+ */
+class ReadSegmentTask implements Callable<byte[]>, Serializable, HazelcastInstanceAware {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PageLocation location;
+
+    private transient HazelcastInstance hazelcast;
+
+    ReadSegmentTask(PageLocation location) {
+        this.location = location;
+    }
+
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcast) {
+        this.hazelcast = hazelcast;
+    }
+
+    @Override
+    public byte[] call() {
+        PageSegmentStore segments = (PageSegmentStore) hazelcast.getUserContext().get(TieredDataStore.SEGMENTS_CONTEXT_KEY);
+        if (segments == null || !segments.getNode().equals(location.getNode())) {
+            return null;
+        }
+        return segments.read(location);
+    }
+}
@@ -0,0 +1,471 @@
+package com.weaxme.wicket.cluster.pageStore.tiered;
+
+import com.hazelcast.aggregation.Aggregators;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.Member;
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import com.weaxme.wicket.cluster.pageStore.DeltaDataStore;
+import com.weaxme.wicket.cluster.pageStore.HazelcastPageKey;
+import com.weaxme.wicket.cluster.pageStore.SessionPageIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.wicket.pageStore.IDataStore;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps only the last pages of each session in the cluster map and moves older pages to segment files
+ * of the node which stored them.
+ * <p>
+ * When a session gets more than {@code hotPages} pages, the oldest one is appended to the local
+ * {@link PageSegmentStore}, its {@link PageLocation} is put into the {@value #LOCATION_STORE_NAME} map and
+ * the page is removed from the delegate. Location is published before the page is removed, so the page can
+ * always be found in one of the tiers. The ids of the cold pages of a session are kept in the
+ * {@value #COLD_INDEX_NAME} map, which applies the per-session limits through {@link SessionPageIndex} and lists
+ * the locations to remove with the session. Locations don't expire on their own, they live until their page or
+ * session is removed. Cold pages of other nodes are read on their owner through the
+ * {@value #EXECUTOR_NAME} executor, pages of a node which left the cluster are lost like any other
+ * node-local state.
+ * <p>
+ * A background thread compacts full segments with a small share of live records, which also reclaims the records
+ * of evicted and removed pages, and, after a restart of the
+ * whole cluster, registers the pages found in the local segments again.
+ */
+@Slf4j
+public class TieredDataStore implements IDataStore {
+
+    public static final String LOCATION_STORE_NAME = "wicket-page-locations";
+    public static final String COLD_INDEX_NAME = "wicket-page-cold-index";
+    public static final String EXECUTOR_NAME = "wicket-page-segments";
+    public static final String MEMBER_NODE_ATTRIBUTE = "wicket.node";
+
+    static final String SEGMENTS_CONTEXT_KEY = PageSegmentStore.class.getName();
+
+    private static final long REMOTE_READ_TIMEOUT_SECONDS = 5;
+    private static final long COMPACTION_PERIOD_SECONDS = 60;
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * How long a removed session keeps rejecting the demotions which were running during its removal
+     */
+    private static final long REMOVED_SESSION_TTL_SECONDS = 60;
+
+    private final IDataStore delegate;
+    private final HazelcastInstance hazelcast;
+    private final IMap<HazelcastPageKey, PageLocation> locations;
+    private final IMap<String, SessionPageIndex> coldIndex;
+    private final PageSegmentStore segments;
+    private final int hotPages;
+    private final int maxColdPages;
+    private final long maxColdBytes;
+    private final double compactionThreshold;
+
+    /**
+     * Ids of the pages stored in the delegate, from the oldest to the newest, for the sessions used on this node
+     */
+    private final Map<String, LinkedHashSet<Integer>> hot;
+
+    /**
+     * Held by the sessions hashed to them while a page is marked hot and while a demoted page is checked and
+     * removed from the delegate, so a page stored again during its demotion is never removed
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final ScheduledExecutorService worker;
+    private final TieredStats stats;
+    private final ObjectName objectName;
+
+    /**
+     * @param hotPages            number of last pages of a session kept in the delegate
+     * @param maxPages            max number of pages kept for one session in both tiers, 0 for no limit.
+     *                            The oldest cold pages are dropped above it, the hot pages always stay
+     * @param maxBytes            max size of the cold pages of one session, 0 for no limit
+     * @param maxSessions         max number of sessions tracked on this node, pages of the sessions which
+     *                            are not tracked stay in the delegate
+     * @param compactionThreshold full segment is rewritten when less than this share of its bytes is live
+     */
+    public TieredDataStore(IDataStore delegate, HazelcastInstance hazelcast, String node, File directory,
+                           int segmentSize, int hotPages, int maxPages, long maxBytes, int maxSessions,
+                           double compactionThreshold) {
+        this.delegate = delegate;
+        this.hazelcast = hazelcast;
+        this.locations = hazelcast.getMap(LOCATION_STORE_NAME);
+        this.coldIndex = hazelcast.getMap(COLD_INDEX_NAME);
+        this.segments = new PageSegmentStore(node, new File(directory, node), segmentSize);
+        this.hotPages = hotPages;
+        this.maxColdPages = maxPages > 0 ? Math.max(1, maxPages - hotPages) : 0;
+        this.maxColdBytes = maxBytes;
+        this.compactionThreshold = compactionThreshold;
+        this.hot = new LinkedHashMap<String, LinkedHashSet<Integer>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LinkedHashSet<Integer>> eldest) {
+                return size() > maxSessions;
+            }
+        };
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wicket-data-store-tiered");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.stats = new TieredStats(segments);
+        this.objectName = JmxSupport.register(stats, "DataStore", "tiered");
+        hazelcast.getUserContext().put(SEGMENTS_CONTEXT_KEY, segments);
+        worker.execute(this::recover);
+        worker.scheduleWithFixedDelay(this::compact, COMPACTION_PERIOD_SECONDS, COMPACTION_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public byte[] getData(String sessionId, int id) {
+        byte[] data = delegate.getData(sessionId, id);
+        if (data != null) {
+            return data;
+        }
+        HazelcastPageKey key = new HazelcastPageKey(sessionId, id);
+        PageLocation location = locations.get(key);
+        if (location == null) {
+            return null;
+        }
+        data = readCold(location);
+        if (data == null) {
+            // the segment may have been compacted after the location was read
+            PageLocation moved = locations.get(key);
+            if (moved != null && !moved.equals(location)) {
+                data = readCold(moved);
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public void removeData(String sessionId, int id) {
+        synchronized (hot) {
+            Set<Integer> ids = hot.get(sessionId);
+            if (ids != null) {
+                ids.remove(id);
+            }
+        }
+        delegate.removeData(sessionId, id);
+        if (locations.remove(new HazelcastPageKey(sessionId, id)) != null) {
+            coldIndex.executeOnKey(sessionId, new UnindexColdPageProcessor(id));
+        }
+    }
+
+    @Override
+    public void removeData(String sessionId) {
+        synchronized (hot) {
+            hot.remove(sessionId);
+        }
+        delegate.removeData(sessionId);
+        // a demotion which indexes its page after the mark removes the location itself
+        SessionPageIndex cold = coldIndex.put(sessionId, SessionPageIndex.removed(), REMOVED_SESSION_TTL_SECONDS, TimeUnit.SECONDS);
+        if (cold != null) {
+            removeLocations(sessionId, cold.getIds());
+        }
+    }
+
+    @Override
+    public void storeData(String sessionId, int id, byte[] data) {
+        Integer cold = null;
+        // marked before it is written, a demotion which doesn't see the mark has removed the old version already
+        synchronized (lockOf(sessionId)) {
+            synchronized (hot) {
+                LinkedHashSet<Integer> ids = hot.computeIfAbsent(sessionId, s -> new LinkedHashSet<>());
+                ids.remove(id);
+                ids.add(id);
+                if (ids.size() > hotPages) {
+                    Iterator<Integer> iterator = ids.iterator();
+                    cold = iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+        delegate.storeData(sessionId, id, data);
+        if (cold != null) {
+            int coldId = cold;
+            worker.execute(() -> demote(sessionId, coldId));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        worker.shutdown();
+        try {
+            worker.awaitTermination(REMOTE_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        segments.flush();
+        hazelcast.getUserContext().remove(SEGMENTS_CONTEXT_KEY, segments);
+        JmxSupport.unregister(objectName);
+        delegate.destroy();
+    }
+
+    @Override
+    public boolean isReplicated() {
+        return delegate.isReplicated();
+    }
+
+    @Override
+    public boolean canBeAsynchronous() {
+        return delegate.canBeAsynchronous();
+    }
+
+    private void demote(String sessionId, int id) {
+        try {
+            byte[] data = delegate.getData(sessionId, id);
+            if (data == null) {
+                return;
+            }
+            HazelcastPageKey key = new HazelcastPageKey(sessionId, id);
+            // published before it is indexed, so every indexed page has a location to remove
+            locations.set(key, segments.append(sessionId, id, data));
+            int[] evicted = (int[]) coldIndex.executeOnKey(sessionId, new IndexColdPageProcessor(
+                    id, data.length, DeltaDataStore.baseIdOf(data, 0, data.length), maxColdPages, maxColdBytes));
+            if (evicted == null) {
+                // the session was removed while its page was demoted
+                locations.delete(key);
+                return;
+            }
+            removeLocations(sessionId, evicted);
+            stats.onColdEvicted(evicted.length);
+            synchronized (lockOf(sessionId)) {
+                if (isHot(sessionId, id)) {
+                    // stored again while it was demoted
+                    locations.delete(key);
+                    coldIndex.executeOnKey(sessionId, new UnindexColdPageProcessor(id));
+                    return;
+                }
+                delegate.removeData(sessionId, id);
+            }
+            stats.onDemoted();
+        } catch (RuntimeException ex) {
+            log.error("Can't demote page {} of session {}", id, sessionId, ex);
+        }
+    }
+
+    /**
+     * Removes locations of the cold pages which left the index, their segment records are reclaimed by compaction
+     */
+    private void removeLocations(String sessionId, int[] ids) {
+        if (ids.length == 0) {
+            return;
+        }
+        Set<HazelcastPageKey> keys = new LinkedHashSet<>();
+        for (int id : ids) {
+            keys.add(new HazelcastPageKey(sessionId, id));
+        }
+        locations.executeOnKeys(keys, new RemoveLocationProcessor());
+    }
+
+    private Object lockOf(String sessionId) {
+        return locks[(sessionId.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    private boolean isHot(String sessionId, int id) {
+        synchronized (hot) {
+            Set<Integer> ids = hot.get(sessionId);
+            return ids != null && ids.contains(id);
+        }
+    }
+
+    private byte[] readCold(PageLocation location) {
+        byte[] data;
+        boolean remote = !location.getNode().equals(segments.getNode());
+        if (!remote) {
+            data = segments.read(location);
+        } else {
+            data = readRemote(location);
+        }
+        stats.onColdRead(remote, data != null);
+        return data;
+    }
+
+    private byte[] readRemote(PageLocation location) {
+        Member owner = null;
+        for (Member member : hazelcast.getCluster().getMembers()) {
+            if (location.getNode().equals(member.getStringAttribute(MEMBER_NODE_ATTRIBUTE))) {
+                owner = member;
+                break;
+            }
+        }
+        if (owner == null) {
+            return null;
+        }
+        try {
+            return hazelcast.getExecutorService(EXECUTOR_NAME)
+                    .submitToMember(new ReadSegmentTask(location), owner)
+                    .get(REMOTE_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            log.warn("Can't read page segment {} from node {}", location.getSegment(), location.getNode(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Rewrites live records of the sparse full segments into the active segment.
+     * A record is live while the location map points to it.
+     */
+    private void compact() {
+        try {
+            for (int segmentId : segments.getSealedSegments()) {
+                Map<HazelcastPageKey, PageLocation> records = new HashMap<>();
+                segments.scan(segmentId, (sessionId, pageId, offset, data) -> records.put(
+                        new HazelcastPageKey(sessionId, pageId), new PageLocation(segments.getNode(), segmentId, offset, data.length)));
+                Map<HazelcastPageKey, PageLocation> current = records.isEmpty()
+                        ? new HashMap<>()
+                        : locations.getAll(records.keySet());
+                long liveBytes = 0;
+                for (Map.Entry<HazelcastPageKey, PageLocation> entry : records.entrySet()) {
+                    if (entry.getValue().equals(current.get(entry.getKey()))) {
+                        liveBytes += entry.getValue().getLength();
+                    } else {
+                        current.remove(entry.getKey());
+                    }
+                }
+                if (liveBytes >= segments.getSegmentBytes(segmentId) * compactionThreshold) {
+                    continue;
+                }
+                for (Map.Entry<HazelcastPageKey, PageLocation> entry : current.entrySet()) {
+                    HazelcastPageKey key = entry.getKey();
+                    byte[] data = segments.read(entry.getValue());
+                    if (data != null) {
+                        // the page may be removed meanwhile, then the moved record is garbage of the active segment
+                        locations.replace(key, entry.getValue(), segments.append(key.getSessionId(), key.getPageId(), data));
+                    }
+                }
+                segments.flush();
+                segments.delete(segmentId);
+                stats.onCompacted();
+                log.info("Compacted page segment {}, moved {} live pages", segmentId, current.size());
+            }
+        } catch (RuntimeException ex) {
+            log.error("Can't compact page segments", ex);
+        }
+    }
+
+    /**
+     * Registers pages of the local segments if the cluster has no locations of this node,
+     * which happens when the whole cluster was restarted. If only this node was restarted,
+     * the locations survived in the cluster and still point to the reopened segments.
+     */
+    private void recover() {
+        try {
+            Predicate<HazelcastPageKey, PageLocation> ownLocations = Predicates.equal("node", segments.getNode());
+            if (locations.aggregate(Aggregators.<Map.Entry<HazelcastPageKey, PageLocation>>count(), ownLocations) > 0) {
+                return;
+            }
+            Map<HazelcastPageKey, PageLocation> records = new HashMap<>();
+            Map<HazelcastPageKey, Integer> baseIds = new HashMap<>();
+            for (int segmentId : segments.getSegmentIds()) {
+                // later records of a page replace earlier ones
+                segments.scan(segmentId, (sessionId, pageId, offset, data) -> {
+                    HazelcastPageKey key = new HazelcastPageKey(sessionId, pageId);
+                    records.put(key, new PageLocation(segments.getNode(), segmentId, offset, data.length));
+                    baseIds.put(key, DeltaDataStore.baseIdOf(data, 0, data.length));
+                });
+            }
+            for (Map.Entry<HazelcastPageKey, PageLocation> entry : records.entrySet()) {
+                HazelcastPageKey key = entry.getKey();
+                if (locations.putIfAbsent(key, entry.getValue()) != null) {
+                    continue;
+                }
+                int[] evicted = (int[]) coldIndex.executeOnKey(key.getSessionId(), new IndexColdPageProcessor(
+                        key.getPageId(), entry.getValue().getLength(), baseIds.get(key), maxColdPages, maxColdBytes));
+                if (evicted == null) {
+                    locations.delete(key);
+                } else {
+                    removeLocations(key.getSessionId(), evicted);
+                }
+            }
+            if (!records.isEmpty()) {
+                log.info("Recovered locations of {} pages from page segments", records.size());
+            }
+        } catch (RuntimeException ex) {
+            log.error("Can't recover page locations", ex);
+        }
+    }
+
+    private static class RemoveLocationProcessor extends AbstractEntryProcessor<HazelcastPageKey, PageLocation> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object process(Map.Entry<HazelcastPageKey, PageLocation> entry) {
+            entry.setValue(null);
+            return null;
+        }
+    }
+
+    /**
+     * Adds a cold page to the index of its session and drops the oldest cold pages above the limits.
+     * Returns the ids of the dropped pages, or null if the session was removed and the page isn't indexed.
+     */
+    private static class IndexColdPageProcessor extends AbstractEntryProcessor<String, SessionPageIndex> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+        private final int length;
+        private final int baseId;
+        private final int maxPages;
+        private final long maxBytes;
+
+        public IndexColdPageProcessor(int id, int length, int baseId, int maxPages, long maxBytes) {
+            this.id = id;
+            this.length = length;
+            this.baseId = baseId;
+            this.maxPages = maxPages;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, SessionPageIndex> entry) {
+            SessionPageIndex pages = entry.getValue();
+            if (pages == null) {
+                pages = new SessionPageIndex();
+            } else if (pages.isRemoved()) {
+                return null;
+            }
+            pages.put(id, length, baseId);
+            int[] evicted = pages.evictOldest(id, maxPages, maxBytes);
+            entry.setValue(pages);
+            return evicted;
+        }
+    }
+
+    private static class UnindexColdPageProcessor extends AbstractEntryProcessor<String, SessionPageIndex> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+
+        public UnindexColdPageProcessor(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, SessionPageIndex> entry) {
+            SessionPageIndex pages = entry.getValue();
+            if (pages != null && !pages.isRemoved() && pages.remove(id)) {
+                entry.setValue(pages.isEmpty() ? null : pages);
+            }
+            return null;
+        }
+    }
+}
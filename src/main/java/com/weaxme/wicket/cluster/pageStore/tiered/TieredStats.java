@@ -0,0 +1,86 @@
+package com.weaxme.wicket.cluster.pageStore.tiered;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class TieredStats implements TieredStatsMBean {
+
+    private final PageSegmentStore segments;
+
+    private final LongAdder demoted = new LongAdder();
+    private final LongAdder coldEvicted = new LongAdder();
+    private final LongAdder coldReads = new LongAdder();
+    private final LongAdder remoteReads = new LongAdder();
+    private final LongAdder missedReads = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    TieredStats(PageSegmentStore segments) {
+        this.segments = segments;
+    }
+
+    void onDemoted() {
+        demoted.increment();
+    }
+
+    void onColdEvicted(int pages) {
+        coldEvicted.add(pages);
+    }
+
+    void onColdRead(boolean remote, boolean found) {
+        coldReads.increment();
+        if (remote) {
+            remoteReads.increment();
+        }
+        if (!found) {
+            missedReads.increment();
+        }
+    }
+
+    void onCompacted() {
+        compactions.increment();
+    }
+
+    @Override
+    public long getDemotedPages() {
+        return demoted.sum();
+    }
+
+    @Override
+    public long getEvictedColdPages() {
+        return coldEvicted.sum();
+    }
+
+    @Override
+    public long getColdReads() {
+        return coldReads.sum();
+    }
+
+    @Override
+    public long getRemoteReads() {
+        return remoteReads.sum();
+    }
+
+    @Override
+    public long getMissedReads() {
+        return missedReads.sum();
+    }
+
+    @Override
+    public long getCompactions() {
+        return compactions.sum();
+    }
+
+    @Override
+    public int getSegments() {
+        return segments.getSegmentCount();
+    }
+
+    @Override
+    public void reset() {
+        demoted.reset();
+        coldEvicted.reset();
+        coldReads.reset();
+        remoteReads.reset();
+        missedReads.reset();
+        compactions.reset();
+    }
+}
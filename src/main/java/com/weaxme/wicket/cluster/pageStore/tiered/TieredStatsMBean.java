@@ -0,0 +1,35 @@
+package com.weaxme.wicket.cluster.pageStore.tiered;
+
+/**
+ * JMX view of {@link TieredDataStore}
+ */
+public interface TieredStatsMBean {
+
+    /**
+     * @return number of pages moved from the cluster map to segment files
+     */
+    long getDemotedPages();
+
+    /**
+     * @return number of cold pages dropped by the per-session limits
+     */
+    long getEvictedColdPages();
+
+    long getColdReads();
+
+    /**
+     * @return number of cold reads served by another node
+     */
+    long getRemoteReads();
+
+    /**
+     * @return number of cold reads which didn't find the page
+     */
+    long getMissedReads();
+
+    long getCompactions();
+
+    int getSegments();
+
+    void reset();
+}
@@ -0,0 +1,212 @@
+package com.weaxme.wicket.cluster.persistence;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.MapLoaderLifecycleSupport;
+import com.hazelcast.core.MapStore;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Map store which keeps every entry of a map in its own file on the local disk.
+ * <p>
+ * The file name is a SHA-1 hash of the serialized key, the file holds the key and the value serialized
+ * with Java serialization. Files are replaced atomically, so a crash leaves either the old or the new
+ * version of an entry. Batching and coalescing of writes are done by the write-behind queue of Hazelcast.
+ * <p>
+ * {@link #loadAllKeys()} returns null, so nothing is loaded when the map is created, every entry is
+ * loaded by its partition owner on the first access. Entries older than {@code maxAgeMillis} are treated
+ * as expired, they are skipped by {@link #load(Object)} and deleted in background after start.
+ * <p>
+ * Hazelcast doesn't delete the stored entry when the entry expires in memory. Registered as a local
+ * {@link EntryExpiredListener} of the map, the store deletes the file of an expired entry on the owner.
+ * An expired entry may be loaded on access before the event comes, so the max idle time of the map is a max
+ * age as well: an entry expires in memory only if it wasn't written for that time.
+ */
+@Slf4j
+public class FileMapStore implements MapStore<Object, Object>, MapLoaderLifecycleSupport, EntryExpiredListener<Object, Object> {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Temp files younger than this may belong to writes in progress, only older ones are left by a crash
+     */
+    private static final long TEMP_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final File root;
+    private final long maxAgeMillis;
+
+    private File directory;
+
+    /**
+     * @param root         directory of all persisted maps, every map gets a subdirectory named after it
+     * @param maxAgeMillis max age of an entry since its last write, 0 for no limit
+     */
+    public FileMapStore(File root, long maxAgeMillis) {
+        this.root = root;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    @Override
+    public void init(HazelcastInstance hazelcast, Properties properties, String mapName) {
+        directory = new File(root, mapName);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Can't create map store directory " + directory);
+        }
+        Thread cleaner = new Thread(this::deleteExpired, "wicket-map-store-cleaner-" + mapName);
+        cleaner.setDaemon(true);
+        cleaner.start();
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void store(Object key, Object value) {
+        File file = file(key);
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(temp.toPath(), serialize(key, value));
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't store entry in " + file, ex);
+        }
+    }
+
+    @Override
+    public void storeAll(Map<Object, Object> entries) {
+        entries.forEach(this::store);
+    }
+
+    @Override
+    public void delete(Object key) {
+        try {
+            Files.deleteIfExists(file(key).toPath());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't delete entry " + key, ex);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<Object> keys) {
+        keys.forEach(this::delete);
+    }
+
+    @Override
+    public Object load(Object key) {
+        File file = file(key);
+        if (!file.isFile() || isExpired(file)) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            // files are named by a hash, so check that the file belongs to this key
+            return Objects.equals(key, in.readObject()) ? in.readObject() : null;
+        } catch (IOException | ClassNotFoundException ex) {
+            log.warn("Can't load entry {} from {}", key, file, ex);
+            return null;
+        }
+    }
+
+    @Override
+    public void entryExpired(EntryEvent<Object, Object> event) {
+        try {
+            delete(event.getKey());
+        } catch (UncheckedIOException ex) {
+            log.warn("Can't delete expired entry {}", event.getKey(), ex);
+        }
+    }
+
+    @Override
+    public Map<Object, Object> loadAll(Collection<Object> keys) {
+        Map<Object, Object> entries = new HashMap<>();
+        for (Object key : keys) {
+            Object value = load(key);
+            if (value != null) {
+                entries.put(key, value);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Entries are loaded lazily one by one
+     */
+    @Override
+    public Set<Object> loadAllKeys() {
+        return null;
+    }
+
+    private File file(Object key) {
+        String hash = hash(serialize(key));
+        return new File(new File(directory, hash.substring(0, 2)), hash);
+    }
+
+    private static boolean isStaleTemp(File file) {
+        return file.getName().endsWith(TEMP_SUFFIX) && System.currentTimeMillis() - file.lastModified() > TEMP_MAX_AGE_MILLIS;
+    }
+
+    private boolean isExpired(File file) {
+        return maxAgeMillis > 0 && System.currentTimeMillis() - file.lastModified() > maxAgeMillis;
+    }
+
+    private void deleteExpired() {
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            long deleted = files.map(Path::toFile)
+                    .filter(file -> file.isFile() && (isStaleTemp(file) || isExpired(file)))
+                    .filter(File::delete)
+                    .count();
+            if (deleted > 0) {
+                log.info("Deleted {} expired entries from {}", deleted, directory);
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            log.warn("Can't delete expired entries from {}", directory, ex);
+        }
+    }
+
+    private static byte[] serialize(Object... objects) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            for (Object object : objects) {
+                out.writeObject(object);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't serialize map entry", ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(data)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.weaxme.wicket.cluster.persistence;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.EntryListenerConfig;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MapStoreConfig;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attaches {@link FileMapStore} to the maps which should survive a restart of the whole cluster.
+ * <p>
+ * An entry is written and loaded by the owner of its partition, and partitions are assigned again after a
+ * restart, so all nodes should use the same directory, e.g. a shared volume. With a directory per node only
+ * the entries whose partitions return to the same node are found.
+ * <p>
+ * Maps with a max idle time should get it before they are configured here, entries which expire in memory are
+ * deleted from the disk and not loaded again. A live entry which was only read for the max idle time isn't
+ * loaded again either once it is evicted from memory, so such entries have to be written again from time to
+ * time, as the session store does for sessions which are only read.
+ */
+public final class MapPersistence {
+
+    private MapPersistence() {
+    }
+
+    /**
+     * @param writeDelaySeconds delay of the write-behind queue, the request thread never waits for the disk
+     * @param writeBatchSize    max number of entries written in one batch
+     * @param maxAgeSeconds     entries not written for this time are not loaded anymore, 0 for no limit.
+     *                          The max idle time of a map, less the write delay, limits the age as well
+     */
+    public static void configure(Config config, File directory, int writeDelaySeconds, int writeBatchSize,
+                                 long maxAgeSeconds, String... mapNames) {
+        for (String mapName : mapNames) {
+            MapConfig mapConfig = config.getMapConfig(mapName);
+            long maxAge = maxAgeSeconds;
+            if (mapConfig.getMaxIdleSeconds() > 0) {
+                // the file is written up to the write delay after the entry, so it looks younger by that much
+                long maxIdle = Math.max(1, mapConfig.getMaxIdleSeconds() - writeDelaySeconds);
+                maxAge = maxAge > 0 ? Math.min(maxAge, maxIdle) : maxIdle;
+            }
+            FileMapStore store = new FileMapStore(directory, TimeUnit.SECONDS.toMillis(maxAge));
+            MapStoreConfig storeConfig = new MapStoreConfig()
+                    .setEnabled(true)
+                    .setImplementation(store)
+                    .setWriteDelaySeconds(writeDelaySeconds)
+                    .setWriteBatchSize(writeBatchSize)
+                    .setWriteCoalescing(true)
+                    .setInitialLoadMode(MapStoreConfig.InitialLoadMode.LAZY);
+            mapConfig.setMapStoreConfig(storeConfig);
+            mapConfig.addEntryListenerConfig(new EntryListenerConfig(store, true, false));
+        }
+    }
+}
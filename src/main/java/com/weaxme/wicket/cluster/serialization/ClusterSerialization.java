@@ -0,0 +1,57 @@
+package com.weaxme.wicket.cluster.serialization;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.nio.serialization.DataSerializableFactory;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import com.weaxme.wicket.cluster.pageStore.HazelcastDataStore;
+import com.weaxme.wicket.cluster.pageStore.HazelcastPageKey;
+import com.weaxme.wicket.cluster.pageStore.SessionPageIndex;
+import com.weaxme.wicket.cluster.pageStore.tiered.PageLocation;
+import com.weaxme.wicket.cluster.session.SessionAttributes;
+import com.weaxme.wicket.cluster.session.SessionGraph;
+
+/**
+ * Ids of the records kept in the cluster maps. They are written as {@link IdentifiedDataSerializable}, so an entry
+ * carries two ints instead of Java class descriptors. Vertices and edges are written by their {@link SessionGraph}.
+ * <p>
+ * The records stay {@link java.io.Serializable} for the file map store.
+ */
+public final class ClusterSerialization implements DataSerializableFactory {
+
+    public static final int FACTORY_ID = 1001;
+
+    public static final int PAGE_DATA = 1;
+    public static final int PAGE_KEY = 2;
+    public static final int PAGE_LOCATION = 3;
+    public static final int SESSION_ATTRIBUTES = 4;
+    public static final int SESSION_GRAPH = 5;
+    public static final int PAGE_INDEX = 6;
+
+    /**
+     * Registers the factory of the records, every member and client of the cluster needs it
+     */
+    public static Config configure(Config config) {
+        config.getSerializationConfig().addDataSerializableFactory(FACTORY_ID, new ClusterSerialization());
+        return config;
+    }
+
+    @Override
+    public IdentifiedDataSerializable create(int typeId) {
+        switch (typeId) {
+            case PAGE_DATA:
+                return new HazelcastDataStore.HazelcastPageData();
+            case PAGE_KEY:
+                return new HazelcastPageKey();
+            case PAGE_LOCATION:
+                return new PageLocation();
+            case SESSION_ATTRIBUTES:
+                return new SessionAttributes();
+            case SESSION_GRAPH:
+                return new SessionGraph();
+            case PAGE_INDEX:
+                return new SessionPageIndex();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.weaxme.wicket.cluster.serialization;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.wicket.serialize.ISerializer;
+import org.nustaq.serialization.FSTConfiguration;
+
+/**
+ * Serializes pages and session attributes with FST. It writes short class references instead of Java class
+ * descriptors and avoids the reflection of {@link java.io.ObjectOutputStream}, so pages are smaller and faster
+ * to write. Objects still need to be {@link java.io.Serializable}, custom {@code writeObject}/{@code readObject}
+ * methods are honored.
+ * <p>
+ * All nodes of the cluster must use the same serializer.
+ */
+@Slf4j
+public class FstSerializer implements ISerializer {
+
+    private final FSTConfiguration configuration;
+
+    /**
+     * @param classLoader loader of the application classes
+     */
+    public FstSerializer(ClassLoader classLoader) {
+        this.configuration = FSTConfiguration.createDefaultConfiguration();
+        configuration.setClassLoader(classLoader);
+    }
+
+    @Override
+    public byte[] serialize(Object object) {
+        try {
+            return configuration.asByteArray(object);
+        } catch (Exception ex) {
+            log.error("Error serializing object {}", object.getClass(), ex);
+            return null;
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] data) {
+        try {
+            return configuration.asObject(data);
+        } catch (Exception ex) {
+            log.error("Error deserializing object", ex);
+            return null;
+        }
+    }
+}
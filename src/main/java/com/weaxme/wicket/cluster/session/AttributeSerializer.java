@@ -0,0 +1,92 @@
+package com.weaxme.wicket.cluster.session;
+
+import org.apache.wicket.serialize.ISerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+
+/**
+ * Serialization of session attribute values, Java serialization or the serializer of the application
+ */
+final class AttributeSerializer {
+
+    private AttributeSerializer() {
+    }
+
+    static byte[] serialize(Serializable value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Can't serialize session attribute " + value.getClass(), ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Serializable deserialize(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try (ObjectInputStream in = new ContextClassLoaderInputStream(data)) {
+            return (Serializable) in.readObject();
+        } catch (IOException | ClassNotFoundException ex) {
+            throw new IllegalStateException("Can't deserialize session attribute", ex);
+        }
+    }
+
+    /**
+     * @param serializer serializer of the application, null for Java serialization
+     */
+    static byte[] serialize(Serializable value, ISerializer serializer) {
+        if (serializer == null) {
+            return serialize(value);
+        }
+        byte[] data = serializer.serialize(value);
+        if (data == null) {
+            throw new IllegalArgumentException("Can't serialize session attribute " + value.getClass());
+        }
+        return data;
+    }
+
+    /**
+     * @param serializer serializer of the application, null for Java serialization
+     */
+    static Serializable deserialize(byte[] data, ISerializer serializer) {
+        if (serializer == null || data == null) {
+            return deserialize(data);
+        }
+        Object value = serializer.deserialize(data);
+        if (value == null) {
+            throw new IllegalStateException("Can't deserialize session attribute");
+        }
+        return (Serializable) value;
+    }
+
+    /**
+     * Resolves classes of the web application, which are not visible to the class loader of the map
+     */
+    private static class ContextClassLoaderInputStream extends ObjectInputStream {
+
+        private ContextClassLoaderInputStream(byte[] data) throws IOException {
+            super(new ByteArrayInputStream(data));
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader != null) {
+                try {
+                    return Class.forName(description.getName(), false, classLoader);
+                } catch (ClassNotFoundException ex) {
+                    // fall back to the default resolution
+                }
+            }
+            return super.resolveClass(description);
+        }
+    }
+}
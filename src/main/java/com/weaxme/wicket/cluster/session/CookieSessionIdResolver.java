@@ -0,0 +1,31 @@
+package com.weaxme.wicket.cluster.session;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Reads the session id from a cookie
+ */
+public class CookieSessionIdResolver implements SessionIdResolver {
+
+    private final String name;
+
+    public CookieSessionIdResolver(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String resolve(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            String value = cookie.getValue();
+            if (value != null && name.equals(cookie.getName())) {
+                return SessionIdResolver.stripRoute(value, 0, value.length());
+            }
+        }
+        return null;
+    }
+}
@@ -2,20 +2,26 @@ package com.weaxme.wicket.cluster.session;
 
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
-import lombok.Value;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.wicket.Application;
 import org.apache.wicket.Session;
+import org.apache.wicket.pageStore.IDataStore;
 import org.apache.wicket.protocol.http.IRequestLogger;
 import org.apache.wicket.request.Request;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.serialize.ISerializer;
+import org.apache.wicket.serialize.java.JavaSerializer;
 import org.apache.wicket.session.ISessionStore;
 
+import javax.management.ObjectName;
 import javax.servlet.http.*;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class HazelcastSessionStore2 implements ISessionStore {
@@ -26,20 +32,79 @@ public class HazelcastSessionStore2 implements ISessionStore {
 
     public static final String JSESSIONID = "JSESSIONID";
 
-    public static final String GRAPH = "session-graph";
+    /**
+     * Default session timeout of the servlet specification
+     */
+    public static final int DEFAULT_TIMEOUT_SECONDS = 1800;
 
     private final Set<UnboundListener> unboundListeners = new CopyOnWriteArraySet<UnboundListener>();
     private final Set<BindListener> bindListeners = new CopyOnWriteArraySet<BindListener>();
 
 
     private final IMap<String, Serializable> store;
+    private final SessionAliases aliases;
     private final String node;
+    private final SessionStoreStats stats;
+    private final ObjectName objectName;
+    private final ObjectName diagnosticsName;
+    private final int timeoutSeconds;
+    private final ScheduledExecutorService sweeper;
+    private final SessionIdResolver idResolver;
+    private final RoutingHints routingHints;
+    private final ISerializer serializer;
+    private final IDataStore dataStore;
 
 
     public HazelcastSessionStore2(HazelcastInstance hazelcast, String node) {
+        this(hazelcast, node, DEFAULT_TIMEOUT_SECONDS, 10, 500);
+    }
+
+    /**
+     * @param timeoutSeconds       idle timeout of the http sessions created by the store, should be the same as
+     *                             the max idle time of the session map
+     * @param sweepIntervalSeconds interval between the runs of the sweeper of expired session groups
+     * @param sweepBatchSize       max number of session groups checked by one run of the sweeper
+     */
+    public HazelcastSessionStore2(HazelcastInstance hazelcast, String node, int timeoutSeconds,
+                                  int sweepIntervalSeconds, int sweepBatchSize) {
+        this(hazelcast, node, timeoutSeconds, sweepIntervalSeconds, sweepBatchSize, SessionIdResolver.standard(), null);
+    }
+
+    /**
+     * @param idResolver   reads the session id of requests which have no http session on this node
+     * @param routingHints adds the route of this node to the session cookie, null to keep the cookie of the container
+     */
+    public HazelcastSessionStore2(HazelcastInstance hazelcast, String node, int timeoutSeconds,
+                                  int sweepIntervalSeconds, int sweepBatchSize, SessionIdResolver idResolver,
+                                  RoutingHints routingHints) {
+        this(hazelcast, node, timeoutSeconds, sweepIntervalSeconds, sweepBatchSize, idResolver, routingHints, null);
+    }
+
+    /**
+     * @param dataStore page store of the application, the pages of every session of a removed group are removed
+     *                  from it, null if the pages are removed by the page manager
+     */
+    public HazelcastSessionStore2(HazelcastInstance hazelcast, String node, int timeoutSeconds,
+                                  int sweepIntervalSeconds, int sweepBatchSize, SessionIdResolver idResolver,
+                                  RoutingHints routingHints, IDataStore dataStore) {
+        this.idResolver = idResolver;
+        this.dataStore = dataStore;
+        this.routingHints = routingHints;
+        this.serializer = getApplicationSerializer();
         this.store = hazelcast.getMap(STORE_NAME);
+        this.stats = new SessionStoreStats();
+        this.aliases = new SessionAliases(hazelcast, store, stats);
         this.node = node;
-        store.put(GRAPH, new Graph());
+        this.timeoutSeconds = timeoutSeconds;
+        this.objectName = JmxSupport.register(stats, "SessionStore", "session-store");
+        this.diagnosticsName = JmxSupport.register(new SessionDiagnostics(this, aliases), "SessionStore", "session-diagnostics");
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wicket-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(new SessionSweeper(aliases, store, masterId -> removeGroup(masterId, null),
+                TimeUnit.SECONDS.toMillis(timeoutSeconds), sweepBatchSize), sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
     }
 
 
@@ -78,116 +143,144 @@ public class HazelcastSessionStore2 implements ISessionStore {
 
     @Override
     public void destroy() {
+        sweeper.shutdownNow();
+        JmxSupport.unregister(objectName);
+        JmxSupport.unregister(diagnosticsName);
     }
 
     @Override
     public Serializable getAttribute(Request request, String name) {
-        String key = getKey(request, name);
-        Serializable value = null;
-
-        if (key != null) {
-            value = store.get(key);
+        SessionRequestScope scope = SessionRequestScope.get(request, stats);
+        String masterId = getMasterId(request, scope);
+        if (masterId == null) {
+            return null;
         }
-        return value;
+        if (scope == null) {
+            SessionAttributes attributes = readAttributes(masterId);
+            return attributes != null ? AttributeSerializer.deserialize(attributes.get(name), serializer) : null;
+        }
+        if (scope.getStored() != null) {
+            stats.onScopeHit();
+        } else {
+            scope.setStored(readAttributes(masterId));
+        }
+        return scope.getValue(name, serializer);
     }
 
 
     @Override
     public List<String> getAttributeNames(Request request) {
-        List<String> attributeNames = store.keySet().stream()
-                .map(key -> key.substring(key.indexOf("-") + 1))
-                .collect(Collectors.toList());
-        log.info("Attribute names: {}", attributeNames);
-        return attributeNames;
+        SessionRequestScope scope = SessionRequestScope.get(request, stats);
+        String masterId = getMasterId(request, scope);
+        if (masterId == null) {
+            return Collections.emptyList();
+        }
+        if (scope != null && scope.getStored() != null) {
+            stats.onScopeHit();
+            return new ArrayList<>(scope.getStored().getValues().keySet());
+        }
+        return getAttributeNames(masterId);
+    }
+
+    /**
+     * @return names of the attributes of the session with the given master id
+     */
+    List<String> getAttributeNames(String masterId) {
+        SessionAttributes attributes = readAttributes(masterId);
+        return attributes != null ? new ArrayList<>(attributes.getValues().keySet()) : Collections.emptyList();
     }
 
     @Override
     public String getSessionId(Request request, boolean create) {
+        SessionRequestScope scope = SessionRequestScope.get(request, stats);
+        if (scope != null && scope.getSessionId() != null) {
+            stats.onScopeHit();
+            return scope.getSessionId();
+        }
         HttpSession httpSession = getHttpSession(request, false);
         String id = null;
+        String masterId = null;
         if (httpSession != null) {
             id = httpSession.getId();
         }
         if (id == null) {
             String jsessionid = getJsessionId(request);
 
-            if (jsessionid != null && store.containsKey(ID_PREFIX + jsessionid)) {
-                Graph graph = (Graph) store.get(GRAPH);
-                SessionVertex vertex = findVertex(jsessionid, node, graph);
-                log.info("Vertex");
-                printVertex(vertex);
-                log.info("Graph before update");
-                printGraph(graph);
+            masterId = jsessionid != null ? aliases.getMasterId(jsessionid) : null;
 
+            if (masterId != null) {
+                SessionGraph graph = aliases.getGraph(masterId);
+                SessionVertex vertex = graph != null ? graph.findVertex(jsessionid, node) : null;
 
                 if (vertex != null) {
-                    id = vertex.id;
+                    id = vertex.getId();
                 } else {
-                    httpSession = getHttpSession(request, true);
+                    httpSession = createHttpSession(request);
                     id = httpSession.getId();
 
+                    log.debug("New http session {} on node {} for jsessionid {}", id, node, jsessionid);
+                    SessionVertex from = graph != null ? graph.getVertex(jsessionid) : null;
+                    stats.onHop(from != null ? from.getNode() : "");
 
-                    log.info("New Http id {} for jsessionid {}", id, jsessionid);
-
-                    createVertex(id, jsessionid, node, graph);
-
-                    log.info("Graph after update");
-                    printGraph(graph);
-
-                    store.put(ID_PREFIX + id, store.get(ID_PREFIX + jsessionid));
-                    store.put(GRAPH, graph);
-                    log.info("Store state after update {}", ID_PREFIX + id);
-                    printStore();
+                    String alias = aliases.addAlias(masterId, jsessionid, id, node);
+                    if (!alias.equals(id)) {
+                        // a concurrent request created the alias first, this session keeps its own id
+                        // for the pages of this browser, shares the attributes through the master id
+                        // and is a vertex of the graph, so it is removed with the group
+                        log.debug("Session {} of node {} is already registered as {}", id, node, alias);
+                    }
                 }
             } else if (create) {
-                httpSession = getHttpSession(request, true);
+                httpSession = createHttpSession(request);
                 id = httpSession.getId();
 
-                log.info("New SessionId: " + id);
+                log.debug("New session {} on node {}", id, node);
                 IRequestLogger logger = Application.get().getRequestLogger();
                 if (logger != null) {
                     logger.sessionCreated(id);
                 }
-                Graph graph = (Graph) store.get(GRAPH);
-                createVertex(id, id, node, graph);
-                store.put(ID_PREFIX + id, id);
-                store.put(GRAPH, graph);
-                log.info("Store state after update {}", ID_PREFIX + id);
-                printGraph(graph);
-                printStore();
+                aliases.createRoot(id, node);
+                masterId = id;
+            }
+        }
+        RequestCycle cycle = RequestCycle.get();
+        if (id != null && routingHints != null && cycle != null) {
+            Object response = cycle.getResponse().getContainerResponse();
+            if (response instanceof HttpServletResponse
+                    && routingHints.apply(getHttpServletRequest(request), (HttpServletResponse) response, id)) {
+                stats.onRoutingHint();
+            }
+        }
+        if (id != null && scope != null) {
+            scope.setSessionId(id);
+            if (masterId != null) {
+                // already resolved for the jsessionid, no need to read the pointer of the new id
+                scope.setMasterId(masterId);
             }
         }
-
-
         return id;
     }
 
     private String getJsessionId(Request request) {
-        String jsessionid = null;
-        HttpServletRequest servletRequest = getHttpServletRequest(request);
-        Cookie[] cookies = servletRequest.getCookies();
-        if (cookies != null && cookies.length > 0) {
-            jsessionid = Stream.of(cookies)
-                    .filter(c -> c.getName().equals(JSESSIONID))
-                    .map(Cookie::getValue)
-                    .filter(Objects::nonNull)
-                    .map(value -> value.split("\\.")[0])
-                    .findFirst()
-                    .orElse(null);
-            if (jsessionid != null) log.info("jsessionid from cookies {}", jsessionid);
-        }
-        if (jsessionid == null) {
-            String[] split = servletRequest.getRequestURI().split(";");
-            if (split.length > 1 && split[1].contains("jsessionid=")) {
-                //session exists, first check if it's already mapped:
-                jsessionid = split[1].replace("jsessionid=", "");
-                if (jsessionid.contains(".")) {
-                    jsessionid = jsessionid.split("\\.")[0];
-                }
-                if (jsessionid != null) log.info("jsessionid from url {}", jsessionid);
-            }
+        return idResolver.resolve(getHttpServletRequest(request));
+    }
+
+    /**
+     * @return serializer of the application for the attributes, null to use plain Java serialization
+     *         when the application has the default one
+     */
+    private static ISerializer getApplicationSerializer() {
+        if (!Application.exists()) {
+            return null;
         }
-        return jsessionid;
+        ISerializer serializer = Application.get().getFrameworkSettings().getSerializer();
+        return serializer instanceof JavaSerializer ? null : serializer;
+    }
+
+    private HttpSession createHttpSession(Request request) {
+        HttpSession httpSession = getHttpSession(request, true);
+        httpSession.setMaxInactiveInterval(timeoutSeconds);
+        return httpSession;
     }
 
     final HttpSession getHttpSession(final Request request, final boolean create) {
@@ -204,11 +297,29 @@ public class HazelcastSessionStore2 implements ISessionStore {
 
     @Override
     public void invalidate(Request request) {
+        SessionRequestScope scope = SessionRequestScope.get(request, stats);
         HttpSession httpSession = getHttpSession(request, false);
+        // a user without a session on this node is invalidated through the session it came with,
+        // nothing is created for a session which is about to go
+        String sessionId = httpSession != null ? httpSession.getId() : getJsessionId(request);
+        String masterId = scope != null && sessionId != null && sessionId.equals(scope.getSessionId())
+                ? scope.getMasterId() : null;
+        if (masterId == null && sessionId != null) {
+            masterId = aliases.getMasterId(sessionId);
+        }
+        if (masterId != null) {
+            // the sessions of the user on the other nodes are invalidated together with this one
+            removeGroup(masterId, sessionId);
+        } else if (sessionId != null) {
+            removePages(sessionId);
+        }
         if (httpSession != null) {
             // tell the app server the session is no longer valid
             httpSession.invalidate();
         }
+        if (scope != null) {
+            scope.clear();
+        }
     }
 
     @Override
@@ -228,10 +339,7 @@ public class HazelcastSessionStore2 implements ISessionStore {
 
     @Override
     public void removeAttribute(Request request, String name) {
-        String key = getKey(request, name);
-        if(key != null) {
-            store.remove(key);
-        }
+        writeAttribute(request, name, null);
     }
 
     @Override
@@ -242,14 +350,7 @@ public class HazelcastSessionStore2 implements ISessionStore {
 
     @Override
     public void setAttribute(Request request, String name, Serializable value) {
-        String key = getKey(request, name);
-        if(key != null) {
-            store.put(key, value);
-            log.info("Store state after set attribute {}", key);
-            printStore();
-        } else {
-            log.info("Key {} doesn't exists. name = {}, value = {}, jsessionId = {}", key, name, value, getJsessionId(request));
-        }
+        writeAttribute(request, name, value);
     }
 
     @Override
@@ -286,169 +387,118 @@ public class HazelcastSessionStore2 implements ISessionStore {
         }
         else
         {
+            // written only if the serialized session differs from the one read in this request
             setAttribute(request, Session.SESSION_ATTRIBUTE_NAME, session);
         }
     }
 
-    private String getKey(Request request, String name) {
+    private String getMasterId(Request request, SessionRequestScope scope) {
         String sessionId = getSessionId(request, false);
 
         if (sessionId != null) {
-            String masterId = (String) store.get(ID_PREFIX + sessionId);
-            return masterId + "-" + name;
+            String masterId = scope != null ? scope.getMasterId() : null;
+            if (masterId != null) {
+                stats.onScopeHit();
+            } else {
+                masterId = aliases.getMasterId(sessionId);
+                if (masterId == null) {
+                    // the group of the session expired or was invalidated on another node,
+                    // the http session on this node starts a new one
+                    aliases.createRoot(sessionId, node);
+                    masterId = sessionId;
+                }
+                if (scope != null) {
+                    scope.setMasterId(masterId);
+                }
+            }
+            return masterId;
         }
         return null;
     }
 
-    private void printStore() {
-        log.info("");
-        store.forEach((k, v) -> log.info("{} -> {}", k, v));
-        log.info("");
-    }
-
-    private void printGraph(Graph graph) {
-        graph.getVertices().forEach(this::printVertex);
-    }
-
-    private void printVertex(SessionVertex vertex) {
-        if (vertex == null) {
-            log.info("Given vertex is null");
+    /**
+     * Writes one attribute, null value removes it. The write is skipped if the cluster already has
+     * the same serialized value, so the session of a request which didn't change it isn't written at all.
+     */
+    private void writeAttribute(Request request, String name, Serializable value) {
+        SessionRequestScope scope = SessionRequestScope.get(request, stats);
+        String masterId = getMasterId(request, scope);
+        if (masterId == null) {
+            log.debug("Attribute {} of request without session isn't stored, jsessionId = {}", name, getJsessionId(request));
             return;
         }
-        String outEdges = vertex.getEdges()
-                .stream()
-                .filter(edge -> edge.out.equals(vertex.id))
-                .map(edge -> edge.out + " -> " + edge.in)
-                .reduce((acc, edge) -> acc + ", " + edge)
-                .orElse(null);
-        String inEdges = vertex.getEdges()
-                .stream()
-                .filter(edge -> !edge.out.equals(vertex.id) || (edge.out.equals(vertex.id) && edge.in.equals(vertex.id)))
-                .map(edge -> edge.in + " <- " + edge.out)
-                .reduce((acc, edge) -> acc + ", " + edge)
-                .orElse(null);
-
-        log.info("id = {}, node = {}, in edges = {}, out edges = {}", vertex.getId(), vertex.getNode(), inEdges, outEdges);
-    }
-
-    private SessionVertex createVertex(String id, String creatorId, String node, Graph graph) {
-        SessionEdge edge = new SessionEdge(creatorId, id);
-        SessionVertex vertex = new SessionVertex(id, node, Collections.emptyList());
-        graph.addVertex(vertex);
-        graph.addEdge(edge);
-        return vertex;
-    }
-
-    private SessionVertex findVertex(String inputId, String currentNode, Graph graph) {
-        Set<SessionVertex> vertices = graph.getVertices();
-
-        SessionVertex vertex = vertices.stream()
-                .filter(v -> v.id.equals(inputId))
-                .findFirst().orElse(null);
-
-        SessionVertex result = null;
-
-        if (vertex != null && vertex.getId().equals(inputId) && vertex.getNode().equals(currentNode)) {
-            result = vertex;
+        byte[] serialized = value != null ? AttributeSerializer.serialize(value, serializer) : null;
+        if (scope != null && scope.isStored(name, serialized)) {
+            stats.onSkippedWrite();
+            scope.written(name, value, serialized);
+            return;
         }
-
-        if (vertex != null && result == null) {
-            Set<SessionVertex> visited = new HashSet<>();
-            List<SessionVertex> queue = new LinkedList<>(convertToVerticles(vertex.getEdges(), graph));
-
-            log.info("");
-
-            while (queue.size() > 0) {
-                SessionVertex v = queue.remove(0);
-                if (!visited.contains(v)) {
-                    if (v.node.equals(currentNode)) {
-                        result = v;
-                        break;
-                    }
-                    visited.add(v);
-                    queue.addAll(convertToVerticles(v.getEdges(), graph));
-                }
-            }
+        stats.onRemoteCall();
+        store.executeOnKey(masterId, new SessionAttributes.SetProcessor(name, serialized));
+        if (scope != null) {
+            scope.written(name, value, serialized);
         }
-        return result;
-    }
-
-    private List<SessionVertex> convertToVerticles(List<SessionEdge> edges, Graph graph) {
-        return edges.stream()
-                .flatMap(edge -> Stream.of(graph.getVertex(edge.in), graph.getVertex(edge.out)))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
     }
 
-    @Value
-    private static class Graph implements Serializable {
-        private Set<SessionVertex> vertices;
-
-        public Graph() {
-            this.vertices = new HashSet<>();
-        }
-
-        public synchronized void addEdge(SessionEdge edge) {
-            SessionVertex in = getVertexById(edge.in).orElse(null);
-            SessionVertex out = getVertexById(edge.out).orElse(null);
-
-            if (in != null && out != null) {
-                removeVertex(in);
-                removeVertex(out);
-
-                List<SessionEdge> edges = new LinkedList<>(in.getEdges());
-                edges.add(edge);
-                addVertex(new SessionVertex(in.id, in.node, edges));
-
-                edges = new LinkedList<>(out.getEdges());
-                edges.add(edge);
-
-                addVertex(new SessionVertex(out.id, out.node, edges));
+    /**
+     * Removes attributes, aliases and pages of all sessions of the user
+     *
+     * @param exceptId session whose unbound listeners are not notified, because its http session
+     *                 is going to be invalidated and notifies them itself
+     */
+    private void removeGroup(String masterId, String exceptId) {
+        Collection<String> ids = aliases.removeGroup(masterId);
+        stats.onRemoteCall();
+        store.delete(masterId);
+        for (String id : ids) {
+            removePages(id);
+            if (!id.equals(exceptId)) {
+                for (UnboundListener listener : getUnboundListener()) {
+                    listener.sessionUnbound(id);
+                }
             }
         }
+    }
 
-        public Optional<SessionVertex> getVertexById(String id) {
-            return vertices.stream()
-                    .filter(v -> v.getId().equals(id))
-                    .findFirst();
-        }
-
-        public SessionVertex getVertex(String id) {
-            return getVertexById(id).orElse(null);
-        }
-
-        public Set<SessionVertex> getVertices() {
-            return Collections.unmodifiableSet(vertices);
-        }
-
-        public synchronized void addVertex(SessionVertex vertex) {
-            vertices.add(vertex);
-        }
-
-        public synchronized void removeVertex(SessionVertex vertex) {
-            vertices.remove(vertex);
-        }
-
-        public synchronized void clear() {
-            vertices.clear();
+    /**
+     * The pages of a session are removed by the page manager only when its attributes are kept in the http session,
+     * here they are in the cluster
+     */
+    private void removePages(String sessionId) {
+        if (dataStore != null) {
+            dataStore.removeData(sessionId);
         }
     }
 
-    @Value
-    private static class SessionVertex implements Serializable {
-        private String id;
-        private String node;
-        private List<SessionEdge> edges;
-
-        public List<SessionEdge> getEdges() {
-            return Collections.unmodifiableList(edges);
+    /**
+     * Called when the http session on this node is unbound. Removes the pages of the session and the session
+     * from the group of the user, and the attributes too if it was the last session of the group.
+     */
+    void sessionUnbound(String sessionId) {
+        removePages(sessionId);
+        String masterId = aliases.getMasterId(sessionId);
+        if (masterId != null && aliases.removeAlias(masterId, sessionId)) {
+            stats.onRemoteCall();
+            store.delete(masterId);
         }
     }
 
-    @Value
-    private static class SessionEdge implements Serializable {
-        private String out;
-        private String in;
+    /**
+     * Touches a record not written for half of the timeout, and the graph of the user with it. Writes of unchanged
+     * attributes are skipped, so otherwise the stored copy of a session which is only read would look expired
+     * after a restart.
+     */
+    private SessionAttributes readAttributes(String masterId) {
+        stats.onRemoteCall();
+        SessionAttributes attributes = (SessionAttributes) store.get(masterId);
+        long now = System.currentTimeMillis();
+        if (attributes != null && now - attributes.getWrittenAt() > TimeUnit.SECONDS.toMillis(timeoutSeconds) / 2) {
+            stats.onRemoteCall();
+            store.executeOnKey(masterId, new SessionAttributes.TouchProcessor());
+            aliases.touch(masterId);
+            attributes.setWrittenAt(now);
+        }
+        return attributes;
     }
 
     /**
@@ -531,6 +581,7 @@ public class HazelcastSessionStore2 implements ISessionStore {
             {
                 if (sessionStore instanceof HazelcastSessionStore2)
                 {
+                    ((HazelcastSessionStore2) sessionStore).sessionUnbound(sessionId);
                     ((HazelcastSessionStore2) sessionStore).onUnbind(sessionId);
                 }
 
@@ -0,0 +1,21 @@
+package com.weaxme.wicket.cluster.session;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Reads the session id from a request header, for clients which don't keep cookies
+ */
+public class HeaderSessionIdResolver implements SessionIdResolver {
+
+    private final String name;
+
+    public HeaderSessionIdResolver(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String resolve(HttpServletRequest request) {
+        String value = request.getHeader(name);
+        return value != null ? SessionIdResolver.stripRoute(value, 0, value.length()) : null;
+    }
+}
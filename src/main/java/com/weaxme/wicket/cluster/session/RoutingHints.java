@@ -0,0 +1,72 @@
+package com.weaxme.wicket.cluster.session;
+
+import javax.servlet.SessionCookieConfig;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Adds the node name to the session cookie as {@code JSESSIONID=id.node}, like the jvmRoute of Tomcat, so a
+ * sticky balancer sends the next requests of the user to the same node.
+ * <p>
+ * The servlet containers and {@link SessionIdResolver} cut the suffix, so the session id stays the same.
+ * The cookie is written only when the route of the request differs from the node, that is for new sessions
+ * and after a failover.
+ */
+public class RoutingHints {
+
+    private final String node;
+
+    public RoutingHints(String node) {
+        this.node = node;
+    }
+
+    /**
+     * @return true if the cookie with the route of this node was added to the response
+     */
+    public boolean apply(HttpServletRequest request, HttpServletResponse response, String sessionId) {
+        SessionCookieConfig config = request.getServletContext().getSessionCookieConfig();
+        String name = config.getName() != null ? config.getName() : HazelcastSessionStore2.JSESSIONID;
+        if (isRouted(request.getCookies(), name, sessionId)) {
+            return false;
+        }
+        Cookie cookie = new Cookie(name, sessionId + '.' + node);
+        String path = config.getPath();
+        if (path == null) {
+            path = request.getContextPath().isEmpty() ? "/" : request.getContextPath();
+        }
+        cookie.setPath(path);
+        if (config.getDomain() != null) {
+            cookie.setDomain(config.getDomain());
+        }
+        cookie.setHttpOnly(config.isHttpOnly());
+        cookie.setSecure(config.isSecure());
+        response.addCookie(cookie);
+        return true;
+    }
+
+    private boolean isRouted(Cookie[] cookies, String name, String sessionId) {
+        if (cookies == null) {
+            return false;
+        }
+        for (Cookie cookie : cookies) {
+            String value = cookie.getValue();
+            if (value != null && name.equals(cookie.getName())) {
+                int length = sessionId.length();
+                return value.length() == length + 1 + node.length()
+                        && value.startsWith(sessionId)
+                        && value.charAt(length) == '.'
+                        && value.endsWith(node);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return node name from the route suffix of the session id or null if it has no route
+     */
+    public static String getRoute(String value) {
+        int dot = value.lastIndexOf('.');
+        return dot >= 0 && dot < value.length() - 1 ? value.substring(dot + 1) : null;
+    }
+}
@@ -0,0 +1,202 @@
+package com.weaxme.wicket.cluster.session;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.weaxme.wicket.cluster.session.HazelcastSessionStore2.ID_PREFIX;
+
+/**
+ * Maps http session ids of a user on different nodes to one master id.
+ * <p>
+ * Every session id has a pointer {@code ID_PREFIX + id -> masterId} in the session map, and every user has
+ * a {@link SessionGraph} of its sessions in the {@value #GRAPH_STORE_NAME} map under the master id.
+ * Resolving a session touches only the entries of this user, so the cost doesn't depend on the number of
+ * sessions in the cluster.
+ */
+public class SessionAliases {
+
+    public static final String GRAPH_STORE_NAME = "wicket-session-graphs";
+
+    private final IMap<String, Serializable> store;
+    private final IMap<String, SessionGraph> graphs;
+    private final SessionStoreStats stats;
+
+    public SessionAliases(HazelcastInstance hazelcast, IMap<String, Serializable> store, SessionStoreStats stats) {
+        this.store = store;
+        this.graphs = hazelcast.getMap(GRAPH_STORE_NAME);
+        this.stats = stats;
+    }
+
+    /**
+     * @return master id of the session or null if the session is unknown
+     */
+    public String getMasterId(String id) {
+        stats.onRemoteCall();
+        return (String) store.get(ID_PREFIX + id);
+    }
+
+    public SessionGraph getGraph(String masterId) {
+        stats.onRemoteCall();
+        return graphs.get(masterId);
+    }
+
+    /**
+     * Registers the first session of a user
+     */
+    public void createRoot(String id, String node) {
+        SessionGraph graph = new SessionGraph(id);
+        graph.addVertex(new SessionVertex(id, node));
+        graph.addEdge(new SessionEdge(id, id));
+        graphs.set(id, graph);
+        store.set(ID_PREFIX + id, id);
+        stats.onRemoteCall();
+        stats.onRemoteCall();
+    }
+
+    /**
+     * Registers session {@code id} created on the node for a request which came with session {@code jsessionid}.
+     * <p>
+     * The graph is changed by an entry processor on the owner of the graph, so concurrent requests can't
+     * overwrite each other's aliases. If another request registered a session of the user on this node first,
+     * that one stays the session of the user on the node. {@code id} is added to the graph as well, so it is
+     * removed with the group and checked by the sweeper like the others.
+     *
+     * @return id of the session of the user on the node in the graph
+     */
+    public String addAlias(String masterId, String jsessionid, String id, String node) {
+        stats.onRemoteCall();
+        stats.onRemoteCall();
+        store.set(ID_PREFIX + id, masterId);
+        return (String) graphs.executeOnKey(masterId, new AddAliasProcessor(masterId, jsessionid, id, node));
+    }
+
+    /**
+     * Removes the session of the user on one node
+     *
+     * @return true if it was the last session of the user, then the graph is removed too
+     */
+    public boolean removeAlias(String masterId, String id) {
+        stats.onRemoteCall();
+        stats.onRemoteCall();
+        store.delete(ID_PREFIX + id);
+        return Boolean.TRUE.equals(graphs.executeOnKey(masterId, new RemoveVertexProcessor(id)));
+    }
+
+    /**
+     * Removes the graph and the pointers of all sessions of the user
+     *
+     * @return ids of the removed sessions
+     */
+    public Collection<String> removeGroup(String masterId) {
+        stats.onRemoteCall();
+        SessionGraph graph = graphs.remove(masterId);
+        if (graph == null) {
+            return Collections.singleton(masterId);
+        }
+        List<String> ids = new ArrayList<>();
+        for (SessionVertex vertex : graph.getVertices()) {
+            ids.add(vertex.getId());
+            stats.onRemoteCall();
+            store.delete(ID_PREFIX + vertex.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Writes the graph of the user again, together with the touch of its attributes. The graph is read only
+     * when a session is resolved on a new node, so it would otherwise expire or look too old to the map store
+     * while the sessions are used.
+     */
+    public void touch(String masterId) {
+        stats.onRemoteCall();
+        graphs.executeOnKey(masterId, new TouchProcessor());
+    }
+
+    /**
+     * @return master ids of the graphs owned by this node
+     */
+    Set<String> getLocalMasterIds() {
+        return graphs.localKeySet();
+    }
+
+    private static class AddAliasProcessor extends AbstractEntryProcessor<String, SessionGraph> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String masterId;
+        private final String jsessionid;
+        private final String id;
+        private final String node;
+
+        private AddAliasProcessor(String masterId, String jsessionid, String id, String node) {
+            this.masterId = masterId;
+            this.jsessionid = jsessionid;
+            this.id = id;
+            this.node = node;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, SessionGraph> entry) {
+            SessionGraph graph = entry.getValue();
+            if (graph == null) {
+                // graph was lost, start a new one from the known session
+                graph = new SessionGraph(masterId);
+                graph.addVertex(new SessionVertex(jsessionid, ""));
+            }
+            SessionVertex existing = graph.findVertex(jsessionid, node);
+            // a later session of the node doesn't replace the first one in its component
+            graph.addVertex(new SessionVertex(id, node));
+            graph.addEdge(new SessionEdge(jsessionid, id));
+            entry.setValue(graph);
+            return existing != null ? existing.getId() : id;
+        }
+    }
+
+    private static class RemoveVertexProcessor extends AbstractEntryProcessor<String, SessionGraph> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+
+        private RemoveVertexProcessor(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, SessionGraph> entry) {
+            SessionGraph graph = entry.getValue();
+            if (graph == null) {
+                return false;
+            }
+            SessionVertex vertex = graph.getVertex(id);
+            if (vertex != null) {
+                graph.removeVertex(vertex);
+            }
+            entry.setValue(graph.isEmpty() ? null : graph);
+            return graph.isEmpty();
+        }
+    }
+
+    private static class TouchProcessor extends AbstractEntryProcessor<String, SessionGraph> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object process(Map.Entry<String, SessionGraph> entry) {
+            SessionGraph graph = entry.getValue();
+            if (graph != null) {
+                entry.setValue(graph);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.weaxme.wicket.cluster.session;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * All attributes of one session, stored under the master id of the session.
+ * Values are kept serialized, so one attribute can be changed in the cluster without touching the others.
+ */
+public class SessionAttributes implements IdentifiedDataSerializable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HashMap<String, byte[]> values = new HashMap<>();
+
+    private long writtenAt;
+
+    public Map<String, byte[]> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    public byte[] get(String name) {
+        return values.get(name);
+    }
+
+    /**
+     * @param value serialized value, null to remove the attribute
+     */
+    public void set(String name, byte[] value) {
+        if (value != null) {
+            values.put(name, value);
+        } else {
+            values.remove(name);
+        }
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /**
+     * @return time of the last write of the record in the cluster, in millis
+     */
+    public long getWrittenAt() {
+        return writtenAt;
+    }
+
+    void setWrittenAt(long writtenAt) {
+        this.writtenAt = writtenAt;
+    }
+
+    @Override
+    public int getFactoryId() {
+        return ClusterSerialization.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return ClusterSerialization.SESSION_ATTRIBUTES;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeInt(values.size());
+        for (Map.Entry<String, byte[]> value : values.entrySet()) {
+            out.writeUTF(value.getKey());
+            out.writeByteArray(value.getValue());
+        }
+        out.writeLong(writtenAt);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            values.put(in.readUTF(), in.readByteArray());
+        }
+        writtenAt = in.readLong();
+    }
+
+    /**
+     * Sets one attribute in the stored record. Runs on the partition owner and its backups,
+     * so only the changed attribute goes over the network.
+     */
+    static class SetProcessor extends AbstractEntryProcessor<String, Serializable> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final byte[] value;
+
+        SetProcessor(String name, byte[] value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, Serializable> entry) {
+            SessionAttributes attributes = (SessionAttributes) entry.getValue();
+            if (attributes == null) {
+                if (value == null) {
+                    return null;
+                }
+                attributes = new SessionAttributes();
+            }
+            attributes.set(name, value);
+            attributes.setWrittenAt(System.currentTimeMillis());
+            entry.setValue(attributes.isEmpty() ? null : attributes);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the record again without a change, so a session which is only read isn't taken for an expired one
+     * by the map store, which knows only the time of the last write
+     */
+    static class TouchProcessor extends AbstractEntryProcessor<String, Serializable> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object process(Map.Entry<String, Serializable> entry) {
+            SessionAttributes attributes = (SessionAttributes) entry.getValue();
+            if (attributes != null) {
+                attributes.setWrittenAt(System.currentTimeMillis());
+                entry.setValue(attributes);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.weaxme.wicket.cluster.session;
+
+import java.util.stream.Collectors;
+
+public class SessionDiagnostics implements SessionDiagnosticsMBean {
+
+    private final HazelcastSessionStore2 sessionStore;
+    private final SessionAliases aliases;
+
+    SessionDiagnostics(HazelcastSessionStore2 sessionStore, SessionAliases aliases) {
+        this.sessionStore = sessionStore;
+        this.aliases = aliases;
+    }
+
+    @Override
+    public String dumpSession(String sessionId) {
+        String masterId = aliases.getMasterId(sessionId);
+        if (masterId == null) {
+            return "Session " + sessionId + " is unknown";
+        }
+        StringBuilder dump = new StringBuilder()
+                .append("session = ").append(sessionId)
+                .append(", master id = ").append(masterId).append('\n')
+                .append("attributes = ").append(sessionStore.getAttributeNames(masterId)).append('\n');
+        SessionGraph graph = aliases.getGraph(masterId);
+        if (graph == null) {
+            return dump.append("no session graph").toString();
+        }
+        for (SessionVertex vertex : graph.getVertices()) {
+            String outEdges = graph.getEdges(vertex.getId()).stream()
+                    .filter(edge -> edge.getOut().equals(vertex.getId()))
+                    .map(SessionEdge::getIn)
+                    .collect(Collectors.joining(", "));
+            String inEdges = graph.getEdges(vertex.getId()).stream()
+                    .filter(edge -> edge.getIn().equals(vertex.getId()))
+                    .map(SessionEdge::getOut)
+                    .collect(Collectors.joining(", "));
+            dump.append("id = ").append(vertex.getId())
+                    .append(", node = ").append(vertex.getNode())
+                    .append(", in = [").append(inEdges)
+                    .append("], out = [").append(outEdges).append("]\n");
+        }
+        return dump.toString();
+    }
+}
@@ -0,0 +1,13 @@
+package com.weaxme.wicket.cluster.session;
+
+/**
+ * On demand diagnostics of one session, reads only the entries of this session
+ */
+public interface SessionDiagnosticsMBean {
+
+    /**
+     * @param sessionId any http session id of the user
+     * @return master id, attribute names and the session graph of the user
+     */
+    String dumpSession(String sessionId);
+}
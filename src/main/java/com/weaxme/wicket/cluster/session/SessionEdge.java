@@ -0,0 +1,17 @@
+package com.weaxme.wicket.cluster.session;
+
+import lombok.Value;
+
+import java.io.Serializable;
+
+/**
+ * Alias {@code in} was created for a request which came with session id {@code out}
+ */
+@Value
+public class SessionEdge implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String out;
+    private String in;
+}
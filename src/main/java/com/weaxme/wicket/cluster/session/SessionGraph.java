@@ -0,0 +1,338 @@
+package com.weaxme.wicket.cluster.session;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Http sessions of one user on the nodes of the cluster. The first session of the user is the root,
+ * its id is the master id of all sessions in the graph.
+ * <p>
+ * Vertices and their edges are indexed by id. Connected sessions are joined in a union-find structure
+ * and every component keeps the id of its session on each node, so {@link #findVertex(String, String)}
+ * is a direct lookup instead of a traversal.
+ * <p>
+ * In the cluster every id and node name of the graph is written once, the records refer to them by index.
+ */
+public class SessionGraph implements IdentifiedDataSerializable, Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    private String rootId;
+    private long createdAt = System.currentTimeMillis();
+    private final Map<String, SessionVertex> vertices = new HashMap<>();
+    private final Map<String, List<SessionEdge>> adjacency = new HashMap<>();
+
+    /**
+     * Union-find parent of every session id in the graph. A removed session leaves its component joined,
+     * the sessions which pointed to it point to the root of the component instead.
+     */
+    private final Map<String, String> parents = new HashMap<>();
+
+    /**
+     * Component root -> node -> id of the first session of the component on the node
+     */
+    private final Map<String, Map<String, String>> components = new HashMap<>();
+
+    public SessionGraph() {
+    }
+
+    public SessionGraph(String rootId) {
+        this.rootId = rootId;
+    }
+
+    public String getRootId() {
+        return rootId;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public boolean isEmpty() {
+        return vertices.isEmpty();
+    }
+
+    public void addVertex(SessionVertex vertex) {
+        vertices.put(vertex.getId(), vertex);
+        parents.putIfAbsent(vertex.getId(), vertex.getId());
+        components.computeIfAbsent(find(vertex.getId()), root -> new HashMap<>())
+                .putIfAbsent(vertex.getNode(), vertex.getId());
+    }
+
+    public void removeVertex(SessionVertex vertex) {
+        String id = vertex.getId();
+        if (vertices.remove(id) == null) {
+            return;
+        }
+        String root = find(id);
+        Map<String, String> nodes = components.get(root);
+        if (nodes != null) {
+            nodes.remove(vertex.getNode(), id);
+            // another session of the component on the same node takes its place
+            for (SessionVertex other : vertices.values()) {
+                if (other.getNode().equals(vertex.getNode()) && find(other.getId()).equals(root)) {
+                    nodes.putIfAbsent(other.getNode(), other.getId());
+                    break;
+                }
+            }
+        }
+        removeEdges(id);
+        removeParent(id, root);
+    }
+
+    public void addEdge(SessionEdge edge) {
+        if (!vertices.containsKey(edge.getIn()) || !vertices.containsKey(edge.getOut())) {
+            return;
+        }
+        adjacency.computeIfAbsent(edge.getOut(), id -> new ArrayList<>()).add(edge);
+        if (!edge.getIn().equals(edge.getOut())) {
+            adjacency.computeIfAbsent(edge.getIn(), id -> new ArrayList<>()).add(edge);
+        }
+        union(edge.getOut(), edge.getIn());
+    }
+
+    public Optional<SessionVertex> getVertexById(String id) {
+        return Optional.ofNullable(vertices.get(id));
+    }
+
+    public SessionVertex getVertex(String id) {
+        return vertices.get(id);
+    }
+
+    public Collection<SessionVertex> getVertices() {
+        return Collections.unmodifiableCollection(vertices.values());
+    }
+
+    public List<SessionEdge> getEdges(String id) {
+        return Collections.unmodifiableList(adjacency.getOrDefault(id, Collections.emptyList()));
+    }
+
+    /**
+     * @return session of the user on the given node which is connected with the session {@code inputId}
+     */
+    public SessionVertex findVertex(String inputId, String currentNode) {
+        SessionVertex vertex = vertices.get(inputId);
+        if (vertex == null || vertex.getNode().equals(currentNode)) {
+            return vertex;
+        }
+        Map<String, String> nodes = components.get(find(inputId));
+        String id = nodes != null ? nodes.get(currentNode) : null;
+        return id != null ? vertices.get(id) : null;
+    }
+
+    @Override
+    public int getFactoryId() {
+        return ClusterSerialization.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return ClusterSerialization.SESSION_GRAPH;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        index(strings, rootId);
+        for (SessionVertex vertex : vertices.values()) {
+            index(strings, vertex.getId());
+            index(strings, vertex.getNode());
+        }
+        List<SessionEdge> edges = new ArrayList<>();
+        adjacency.forEach((id, list) -> {
+            for (SessionEdge edge : list) {
+                // every edge is in the list of its out vertex
+                if (edge.getOut().equals(id)) {
+                    edges.add(edge);
+                }
+            }
+        });
+        for (SessionEdge edge : edges) {
+            index(strings, edge.getOut());
+            index(strings, edge.getIn());
+        }
+        parents.forEach((id, parent) -> {
+            index(strings, id);
+            index(strings, parent);
+        });
+        components.forEach((root, nodes) -> {
+            index(strings, root);
+            nodes.forEach((node, id) -> {
+                index(strings, node);
+                index(strings, id);
+            });
+        });
+        out.writeInt(strings.size());
+        for (String string : strings.keySet()) {
+            out.writeUTF(string);
+        }
+
+        out.writeInt(strings.get(rootId));
+        out.writeLong(createdAt);
+        out.writeInt(vertices.size());
+        for (SessionVertex vertex : vertices.values()) {
+            out.writeInt(strings.get(vertex.getId()));
+            out.writeInt(strings.get(vertex.getNode()));
+        }
+        out.writeInt(edges.size());
+        for (SessionEdge edge : edges) {
+            out.writeInt(strings.get(edge.getOut()));
+            out.writeInt(strings.get(edge.getIn()));
+        }
+        out.writeInt(parents.size());
+        for (Map.Entry<String, String> parent : parents.entrySet()) {
+            out.writeInt(strings.get(parent.getKey()));
+            out.writeInt(strings.get(parent.getValue()));
+        }
+        out.writeInt(components.size());
+        for (Map.Entry<String, Map<String, String>> component : components.entrySet()) {
+            out.writeInt(strings.get(component.getKey()));
+            out.writeInt(component.getValue().size());
+            for (Map.Entry<String, String> node : component.getValue().entrySet()) {
+                out.writeInt(strings.get(node.getKey()));
+                out.writeInt(strings.get(node.getValue()));
+            }
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+
+        rootId = strings[in.readInt()];
+        createdAt = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String id = strings[in.readInt()];
+            vertices.put(id, new SessionVertex(id, strings[in.readInt()]));
+        }
+        size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            SessionEdge edge = new SessionEdge(strings[in.readInt()], strings[in.readInt()]);
+            adjacency.computeIfAbsent(edge.getOut(), id -> new ArrayList<>()).add(edge);
+            if (!edge.getIn().equals(edge.getOut())) {
+                adjacency.computeIfAbsent(edge.getIn(), id -> new ArrayList<>()).add(edge);
+            }
+        }
+        size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            parents.put(strings[in.readInt()], strings[in.readInt()]);
+        }
+        size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String root = strings[in.readInt()];
+            int count = in.readInt();
+            Map<String, String> nodes = new HashMap<>();
+            for (int j = 0; j < count; j++) {
+                nodes.put(strings[in.readInt()], strings[in.readInt()]);
+            }
+            components.put(root, nodes);
+        }
+    }
+
+    private static void index(Map<String, Integer> strings, String string) {
+        strings.putIfAbsent(string, strings.size());
+    }
+
+    /**
+     * Removes the edges of a removed session from the lists of both their ends
+     */
+    private void removeEdges(String id) {
+        List<SessionEdge> edges = adjacency.remove(id);
+        if (edges == null) {
+            return;
+        }
+        for (SessionEdge edge : edges) {
+            String other = edge.getOut().equals(id) ? edge.getIn() : edge.getOut();
+            List<SessionEdge> otherEdges = adjacency.get(other);
+            if (otherEdges != null) {
+                otherEdges.remove(edge);
+                if (otherEdges.isEmpty()) {
+                    adjacency.remove(other);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a removed session out of the union-find structure. A removed root hands its component over
+     * to one of the sessions which pointed to it.
+     */
+    private void removeParent(String id, String root) {
+        parents.remove(id);
+        String newRoot = root;
+        if (id.equals(root)) {
+            newRoot = null;
+            for (Map.Entry<String, String> parent : parents.entrySet()) {
+                if (parent.getValue().equals(id)) {
+                    newRoot = parent.getKey();
+                    break;
+                }
+            }
+            Map<String, String> nodes = components.remove(id);
+            if (newRoot == null) {
+                return;
+            }
+            if (nodes != null) {
+                components.put(newRoot, nodes);
+            }
+        }
+        for (Map.Entry<String, String> parent : parents.entrySet()) {
+            if (parent.getValue().equals(id)) {
+                parent.setValue(newRoot);
+            }
+        }
+    }
+
+    private String find(String id) {
+        String root = id;
+        String parent;
+        while ((parent = parents.get(root)) != null && !parent.equals(root)) {
+            root = parent;
+        }
+        // path compression
+        while (!id.equals(root)) {
+            String next = parents.put(id, root);
+            id = next;
+        }
+        return root;
+    }
+
+    private void union(String first, String second) {
+        String firstRoot = find(first);
+        String secondRoot = find(second);
+        if (firstRoot.equals(secondRoot)) {
+            return;
+        }
+        Map<String, String> firstNodes = components.getOrDefault(firstRoot, Collections.emptyMap());
+        Map<String, String> secondNodes = components.getOrDefault(secondRoot, Collections.emptyMap());
+        // the smaller component joins the larger one, sessions of the larger one win on every node
+        if (firstNodes.size() < secondNodes.size()) {
+            String root = firstRoot;
+            firstRoot = secondRoot;
+            secondRoot = root;
+        }
+        parents.put(secondRoot, firstRoot);
+        Map<String, String> joined = components.remove(secondRoot);
+        if (joined != null) {
+            Map<String, String> nodes = components.computeIfAbsent(firstRoot, root -> new HashMap<>());
+            joined.forEach(nodes::putIfAbsent);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.weaxme.wicket.cluster.session;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Reads the session id, which the client sent with the request, when the request has no http session on this node.
+ * <p>
+ * Runs on every such request, so implementations shouldn't allocate more than the returned id.
+ */
+public interface SessionIdResolver {
+
+    /**
+     * @return session id without the route suffix or null if the request has no session id
+     */
+    String resolve(HttpServletRequest request);
+
+    /**
+     * Cookie {@value HazelcastSessionStore2#JSESSIONID} first, then {@code ;jsessionid=} path parameter
+     */
+    static SessionIdResolver standard() {
+        return chain(new CookieSessionIdResolver(HazelcastSessionStore2.JSESSIONID), new UrlSessionIdResolver());
+    }
+
+    /**
+     * @return resolver which returns the first id found by the given resolvers
+     */
+    static SessionIdResolver chain(SessionIdResolver... resolvers) {
+        return request -> {
+            for (SessionIdResolver resolver : resolvers) {
+                String id = resolver.resolve(request);
+                if (id != null) {
+                    return id;
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Cuts the {@code .jvmRoute} suffix of {@code value} from {@code begin} to {@code end}.
+     * The route follows the last dot, the session id itself may contain dots.
+     *
+     * @return session id or null if it is empty
+     */
+    static String stripRoute(String value, int begin, int end) {
+        int dot = value.lastIndexOf('.', end - 1);
+        if (dot >= begin) {
+            end = dot;
+        }
+        return end > begin ? value.substring(begin, end) : null;
+    }
+}
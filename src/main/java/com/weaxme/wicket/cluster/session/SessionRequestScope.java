@@ -0,0 +1,119 @@
+package com.weaxme.wicket.cluster.session;
+
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.serialize.ISerializer;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Session id, master id and attributes resolved during one request.
+ * Kept in the meta data of the {@link RequestCycle}, so every value is read from the cluster at most once per request.
+ */
+class SessionRequestScope {
+
+    private static final MetaDataKey<SessionRequestScope> KEY = new MetaDataKey<SessionRequestScope>() {
+        private static final long serialVersionUID = 1L;
+    };
+
+    private String sessionId;
+    private String masterId;
+
+    /**
+     * Serialized attributes as they are stored in the cluster, null until the attributes are read
+     */
+    private SessionAttributes stored;
+
+    /**
+     * Deserialized attributes, the same instance is returned for every read of an attribute in the request
+     */
+    private final Map<String, Serializable> values = new HashMap<>();
+
+    /**
+     * @return scope of the request or null if the request isn't processed by the current request cycle
+     */
+    static SessionRequestScope get(Request request, SessionStoreStats stats) {
+        RequestCycle cycle = RequestCycle.get();
+        if (cycle == null || cycle.getRequest() == null
+                || cycle.getRequest().getContainerRequest() != request.getContainerRequest()) {
+            return null;
+        }
+        SessionRequestScope scope = cycle.getMetaData(KEY);
+        if (scope == null) {
+            scope = new SessionRequestScope();
+            cycle.setMetaData(KEY, scope);
+            stats.onRequest();
+        }
+        return scope;
+    }
+
+    String getSessionId() {
+        return sessionId;
+    }
+
+    void setSessionId(String sessionId) {
+        if (!sessionId.equals(this.sessionId)) {
+            this.sessionId = sessionId;
+            this.masterId = null;
+            stored = null;
+            values.clear();
+        }
+    }
+
+    String getMasterId() {
+        return masterId;
+    }
+
+    void setMasterId(String masterId) {
+        this.masterId = masterId;
+    }
+
+    SessionAttributes getStored() {
+        return stored;
+    }
+
+    /**
+     * @param attributes attributes read from the cluster, null if the session has none
+     */
+    void setStored(SessionAttributes attributes) {
+        this.stored = attributes != null ? attributes : new SessionAttributes();
+        values.clear();
+    }
+
+    Serializable getValue(String name, ISerializer serializer) {
+        if (!values.containsKey(name)) {
+            values.put(name, AttributeSerializer.deserialize(stored.get(name), serializer));
+        }
+        return values.get(name);
+    }
+
+    /**
+     * @return true if the cluster has the attribute with the given serialized value
+     */
+    boolean isStored(String name, byte[] serialized) {
+        return stored != null && Arrays.equals(stored.get(name), serialized);
+    }
+
+    /**
+     * Remembers the attribute written to the cluster
+     *
+     * @param serialized serialized value, null for a removed attribute
+     */
+    void written(String name, Serializable value, byte[] serialized) {
+        if (stored != null) {
+            stored.set(name, serialized);
+            values.put(name, value);
+        }
+    }
+
+    void clear() {
+        sessionId = null;
+        masterId = null;
+        stored = null;
+        values.clear();
+    }
+}
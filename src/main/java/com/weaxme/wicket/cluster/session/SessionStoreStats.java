@@ -0,0 +1,101 @@
+package com.weaxme.wicket.cluster.session;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SessionStoreStats implements SessionStoreStatsMBean {
+
+    private final LongAdder remoteCalls = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder scopeHits = new LongAdder();
+    private final LongAdder skippedWrites = new LongAdder();
+    private final LongAdder routingHints = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> hops = new ConcurrentHashMap<>();
+
+    public void onRemoteCall() {
+        remoteCalls.increment();
+    }
+
+    void onRequest() {
+        requests.increment();
+    }
+
+    void onScopeHit() {
+        scopeHits.increment();
+    }
+
+    void onSkippedWrite() {
+        skippedWrites.increment();
+    }
+
+    void onRoutingHint() {
+        routingHints.increment();
+    }
+
+    /**
+     * @param from node of the session the request came with
+     */
+    void onHop(String from) {
+        hops.computeIfAbsent(from, key -> new LongAdder()).increment();
+    }
+
+    @Override
+    public long getRemoteCalls() {
+        return remoteCalls.sum();
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    @Override
+    public double getRemoteCallsPerRequest() {
+        long count = requests.sum();
+        return count == 0 ? 0 : (double) remoteCalls.sum() / count;
+    }
+
+    @Override
+    public long getScopeHits() {
+        return scopeHits.sum();
+    }
+
+    @Override
+    public long getSkippedWrites() {
+        return skippedWrites.sum();
+    }
+
+    @Override
+    public long getRoutingHints() {
+        return routingHints.sum();
+    }
+
+    @Override
+    public long getHops() {
+        long sum = 0;
+        for (LongAdder count : hops.values()) {
+            sum += count.sum();
+        }
+        return sum;
+    }
+
+    @Override
+    public Map<String, Long> getHopsByNode() {
+        Map<String, Long> result = new TreeMap<>();
+        hops.forEach((node, count) -> result.put(node, count.sum()));
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        remoteCalls.reset();
+        requests.reset();
+        scopeHits.reset();
+        skippedWrites.reset();
+        routingHints.reset();
+        hops.clear();
+    }
+}
@@ -0,0 +1,48 @@
+package com.weaxme.wicket.cluster.session;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link HazelcastSessionStore2}
+ */
+public interface SessionStoreStatsMBean {
+
+    /**
+     * @return number of operations on the session maps which may go to another node
+     */
+    long getRemoteCalls();
+
+    /**
+     * @return number of requests which used the session store
+     */
+    long getRequests();
+
+    double getRemoteCallsPerRequest();
+
+    /**
+     * @return number of session ids, master ids and attributes served from the request scope
+     */
+    long getScopeHits();
+
+    /**
+     * @return number of attribute writes skipped because the serialized value wasn't changed
+     */
+    long getSkippedWrites();
+
+    /**
+     * @return number of session cookies rewritten with the route of this node
+     */
+    long getRoutingHints();
+
+    /**
+     * @return number of sessions created on this node for users which came from another node
+     */
+    long getHops();
+
+    /**
+     * @return hops to this node by the node the user came from
+     */
+    Map<String, Long> getHopsByNode();
+
+    void reset();
+}
@@ -0,0 +1,64 @@
+package com.weaxme.wicket.cluster.session;
+
+import com.hazelcast.core.IMap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Removes the session groups whose attributes expired.
+ * <p>
+ * Attribute records expire by the max idle time of the session map. Every run checks the next batch of
+ * session graphs owned by this node; a graph older than the session timeout without an attribute record
+ * is removed with all sessions of the group. The attribute record has the same key as the graph,
+ * so the check stays in the local partition.
+ */
+@Slf4j
+class SessionSweeper implements Runnable {
+
+    private final SessionAliases aliases;
+    private final IMap<String, Serializable> store;
+    private final Consumer<String> groupRemover;
+    private final long timeoutMillis;
+    private final int batchSize;
+
+    private Iterator<String> masterIds;
+
+    SessionSweeper(SessionAliases aliases, IMap<String, Serializable> store, Consumer<String> groupRemover,
+                   long timeoutMillis, int batchSize) {
+        this.aliases = aliases;
+        this.store = store;
+        this.groupRemover = groupRemover;
+        this.timeoutMillis = timeoutMillis;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (masterIds == null || !masterIds.hasNext()) {
+                masterIds = aliases.getLocalMasterIds().iterator();
+            }
+            int removed = 0;
+            for (int i = 0; i < batchSize && masterIds.hasNext(); i++) {
+                String masterId = masterIds.next();
+                if (!store.containsKey(masterId) && isExpired(masterId)) {
+                    groupRemover.accept(masterId);
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                log.debug("Removed {} expired session groups", removed);
+            }
+        } catch (RuntimeException ex) {
+            log.error("Can't sweep expired sessions", ex);
+        }
+    }
+
+    private boolean isExpired(String masterId) {
+        SessionGraph graph = aliases.getGraph(masterId);
+        return graph != null && System.currentTimeMillis() - graph.getCreatedAt() > timeoutMillis;
+    }
+}
@@ -0,0 +1,17 @@
+package com.weaxme.wicket.cluster.session;
+
+import lombok.Value;
+
+import java.io.Serializable;
+
+/**
+ * Http session of a user on one node
+ */
+@Value
+public class SessionVertex implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    private String id;
+    private String node;
+}
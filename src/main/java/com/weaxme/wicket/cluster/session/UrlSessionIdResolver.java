@@ -0,0 +1,26 @@
+package com.weaxme.wicket.cluster.session;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Reads the session id from the {@code ;jsessionid=} path parameter of the request uri
+ */
+public class UrlSessionIdResolver implements SessionIdResolver {
+
+    private static final String PARAMETER = ";jsessionid=";
+
+    @Override
+    public String resolve(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        if (uri == null) {
+            return null;
+        }
+        int index = uri.indexOf(PARAMETER);
+        if (index < 0) {
+            return null;
+        }
+        int begin = index + PARAMETER.length();
+        int end = uri.indexOf(';', begin);
+        return SessionIdResolver.stripRoute(uri, begin, end < 0 ? uri.length() : end);
+    }
+}
@@ -0,0 +1,117 @@
+package com.weaxme.wicket.cluster.benchmark;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IAtomicLong;
+import com.weaxme.wicket.cluster.counter.ClusterCounter;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Increments per second of the counter of {@link com.weaxme.wicket.cluster.component.CounterPanel} in clusters
+ * of 1, 3 and 5 members started in this JVM. The threads are spread over the members like requests behind
+ * a balancer.
+ * <p>
+ * {@code alter} is the former {@link IAtomicLong#alter} with a lambda, {@code striped} is {@link ClusterCounter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@Threads(8)
+public class ClusterCounterBenchmark {
+
+    private static final String NAME = "benchmark-counter";
+
+    @Param({"1", "3", "5"})
+    public int nodes;
+
+    @Param({"500"})
+    public long maxStalenessMillis;
+
+    private HazelcastInstance[] members;
+    private ClusterCounter[] counters;
+    private IAtomicLong[] atomicLongs;
+
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    @Setup
+    public void setup() {
+        members = new HazelcastInstance[nodes];
+        counters = new ClusterCounter[nodes];
+        atomicLongs = new IAtomicLong[nodes];
+        for (int i = 0; i < nodes; i++) {
+            Config config = ClusterSerialization.configure(new Config());
+            JoinConfig join = config.getNetworkConfig().getJoin();
+            join.getMulticastConfig().setEnabled(false);
+            join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+            members[i] = Hazelcast.newHazelcastInstance(config);
+        }
+        for (int i = 0; i < nodes; i++) {
+            counters[i] = new ClusterCounter(members[i], NAME, maxStalenessMillis);
+            atomicLongs[i] = members[i].getAtomicLong(NAME);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (int i = 0; i < nodes; i++) {
+            counters[i].destroy();
+            members[i].shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Node {
+
+        private int index;
+
+        @Setup
+        public void setup(ClusterCounterBenchmark benchmark) {
+            index = benchmark.nextThread.getAndIncrement() % benchmark.nodes;
+        }
+    }
+
+    @Benchmark
+    public void alter(Node node) {
+        atomicLongs[node.index].alter(l -> l + 1);
+    }
+
+    @Benchmark
+    public void striped(Node node) {
+        counters[node.index].increment();
+    }
+
+    @Benchmark
+    public long stripedRead(Node node) {
+        return counters[node.index].get();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ClusterCounterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
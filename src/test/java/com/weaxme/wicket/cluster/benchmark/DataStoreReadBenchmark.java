@@ -0,0 +1,115 @@
+package com.weaxme.wicket.cluster.benchmark;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.weaxme.wicket.cluster.pageStore.HazelcastDataStore;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading one page of a session with many pages: the page alone against the whole session record,
+ * and runs of reads through the recent pages with and without prefetch.
+ * <p>
+ * Runs with the GC profiler, {@code gc.alloc.rate.norm} is the number of bytes allocated per read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class DataStoreReadBenchmark {
+
+    private static final int SESSIONS = 100;
+
+    @Param({"10", "50"})
+    public int pages;
+
+    @Param({"20000"})
+    public int pageSize;
+
+    @Param({"0", "3"})
+    public int prefetch;
+
+    private HazelcastInstance hazelcast;
+    private HazelcastDataStore store;
+    private IMap<String, HazelcastDataStore.HazelcastPageData> map;
+
+    @Setup
+    public void setup() {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+        store = new HazelcastDataStore(hazelcast, 0, 0, prefetch, 2000);
+        map = hazelcast.getMap(HazelcastDataStore.STORE_NAME);
+        byte[] page = new byte[pageSize];
+        ThreadLocalRandom.current().nextBytes(page);
+        for (int i = 0; i < SESSIONS; i++) {
+            for (int id = 0; id < pages; id++) {
+                store.storeData("session" + i, id, page);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.destroy();
+        hazelcast.shutdown();
+    }
+
+    @Benchmark
+    public byte[] readPage() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return store.getData("session" + random.nextInt(SESSIONS), random.nextInt(pages));
+    }
+
+    /**
+     * Goes back through the last pages of a session, as the back button does
+     */
+    @Benchmark
+    public int backButton() {
+        String sessionId = "session" + ThreadLocalRandom.current().nextInt(SESSIONS);
+        int length = 0;
+        for (int id = pages - 1; id >= pages - 4; id--) {
+            length += store.getData(sessionId, id).length;
+        }
+        return length;
+    }
+
+    /**
+     * The read before the entry processor: the whole record is deserialized for one page
+     */
+    @Benchmark
+    public byte[] readSession() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        HazelcastDataStore.HazelcastPageData pageData = map.get("session" + random.nextInt(SESSIONS));
+        return pageData != null ? pageData.getPages().get(random.nextInt(pages)) : null;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DataStoreReadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
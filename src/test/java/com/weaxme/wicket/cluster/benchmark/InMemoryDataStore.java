@@ -0,0 +1,65 @@
+package com.weaxme.wicket.cluster.benchmark;
+
+import com.hazelcast.core.ICompletableFuture;
+import com.weaxme.wicket.cluster.pageStore.HazelcastPageKey;
+import com.weaxme.wicket.cluster.pageStore.IHazelcastDataStore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cluster store stand-in for benchmarks of the local data store layers.
+ */
+public class InMemoryDataStore implements IHazelcastDataStore {
+
+    private final Map<HazelcastPageKey, byte[]> pages = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] getData(String sessionId, int id) {
+        return pages.get(new HazelcastPageKey(sessionId, id));
+    }
+
+    @Override
+    public void removeData(String sessionId, int id) {
+        pages.remove(new HazelcastPageKey(sessionId, id));
+    }
+
+    @Override
+    public void removeData(String sessionId) {
+        pages.keySet().removeIf(key -> key.getSessionId().equals(sessionId));
+    }
+
+    @Override
+    public void storeData(String sessionId, int id, byte[] data) {
+        pages.put(new HazelcastPageKey(sessionId, id), data);
+    }
+
+    @Override
+    public ICompletableFuture<?> storeDataAsync(String sessionId, int id, byte[] data) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String addSessionUpdateListener(SessionUpdateListener listener) {
+        return "";
+    }
+
+    @Override
+    public void removeSessionUpdateListener(String registrationId) {
+    }
+
+    @Override
+    public void destroy() {
+        pages.clear();
+    }
+
+    @Override
+    public boolean isReplicated() {
+        return false;
+    }
+
+    @Override
+    public boolean canBeAsynchronous() {
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+package com.weaxme.wicket.cluster.benchmark;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.weaxme.wicket.cluster.pageStore.HazelcastDataStore;
+import com.weaxme.wicket.cluster.persistence.MapPersistence;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import com.weaxme.wicket.cluster.session.HazelcastSessionStore2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Page store of a single node with the maps in memory only against the maps persisted by {@link MapPersistence}.
+ * <p>
+ * Writes to the disk are done by the write-behind queue. The write delay is short to keep the disk busy
+ * during the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class MapPersistenceBenchmark {
+
+    private static final int SESSIONS = 1000;
+
+    @Param({"memory", "file"})
+    public String persistence;
+
+    @Param({"20000"})
+    public int pageSize;
+
+    private HazelcastInstance hazelcast;
+    private HazelcastDataStore store;
+    private byte[] page;
+
+    @Setup
+    public void setup() throws IOException {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        if ("file".equals(persistence)) {
+            File directory = Files.createTempDirectory("wicket-map-store").toFile();
+            MapPersistence.configure(config, directory, 1, 500, 0,
+                    HazelcastDataStore.STORE_NAME, HazelcastSessionStore2.STORE_NAME);
+        }
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+        store = new HazelcastDataStore(hazelcast);
+        page = new byte[pageSize];
+        ThreadLocalRandom.current().nextBytes(page);
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.destroy();
+        hazelcast.shutdown();
+    }
+
+    /**
+     * Stores a page, as Wicket does after every request, and reads a recent one
+     */
+    @Benchmark
+    public byte[] storeAndRead() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String sessionId = "session" + random.nextInt(SESSIONS);
+        store.storeData(sessionId, random.nextInt(20), page);
+        return store.getData(sessionId, random.nextInt(20));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MapPersistenceBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
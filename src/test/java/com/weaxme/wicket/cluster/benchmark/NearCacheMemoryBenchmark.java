@@ -0,0 +1,102 @@
+package com.weaxme.wicket.cluster.benchmark;
+
+import com.weaxme.wicket.cluster.pageStore.NearCacheDataStore;
+import com.weaxme.wicket.cluster.pageStore.memory.HeapPageMemory;
+import com.weaxme.wicket.cluster.pageStore.memory.IPageMemory;
+import com.weaxme.wicket.cluster.pageStore.memory.OffHeapPageMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Near cache on the heap against off-heap with a full cache and a steady stream of stored pages.
+ * <p>
+ * Runs with the GC profiler, compare {@code gc.time} and {@code gc.count} of both memory types.
+ * The fork has a fixed heap, so the heap cache holds a large part of it, like on a loaded node.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g", "-XX:MaxDirectMemorySize=1g"})
+@Threads(4)
+public class NearCacheMemoryBenchmark {
+
+    private static final long CACHE_BYTES = 512L * 1024 * 1024;
+    private static final int SESSIONS = 10000;
+
+    @Param({"heap", "off-heap"})
+    public String memory;
+
+    @Param({"20000"})
+    public int pageSize;
+
+    private NearCacheDataStore store;
+    private byte[] page;
+
+    @Setup
+    public void setup() {
+        IPageMemory pageMemory = "off-heap".equals(memory)
+                ? new OffHeapPageMemory(CACHE_BYTES, 4096)
+                : new HeapPageMemory();
+        InMemoryDataStore clusterStore = new DiscardingDataStore();
+        store = new NearCacheDataStore(clusterStore, clusterStore, CACHE_BYTES, pageMemory);
+        page = new byte[pageSize];
+        ThreadLocalRandom.current().nextBytes(page);
+        for (int i = 0; CACHE_BYTES / pageSize > i; i++) {
+            store.storeData("session" + i % SESSIONS, i / SESSIONS, page);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.destroy();
+    }
+
+    /**
+     * Stores a new copy of a page, as Wicket does after every request, and reads a recent one
+     */
+    @Benchmark
+    public byte[] storeAndRead() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String sessionId = "session" + random.nextInt(SESSIONS);
+        int id = random.nextInt(100);
+        store.storeData(sessionId, id, page.clone());
+        return store.getData(sessionId, random.nextInt(100));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(NearCacheMemoryBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    /**
+     * Doesn't keep pages, so only the near cache holds them
+     */
+    private static class DiscardingDataStore extends InMemoryDataStore {
+
+        @Override
+        public void storeData(String sessionId, int id, byte[] data) {
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.weaxme.wicket.cluster.benchmark;
+
+import com.weaxme.wicket.cluster.pageStore.compression.PageCompression;
+import com.weaxme.wicket.cluster.pageStore.compression.PageCompressorType;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of page compression and the size of pages kept in the cluster.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.weaxme.wicket.cluster.benchmark.PageCompressionBenchmark}.
+ * Setup logs raw and compressed sizes of the page and the bytes held by the cluster with
+ * the 6 copies configured for {@code wicket-data-store}.
+ */
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageCompressionBenchmark {
+
+    private static final int COPIES = 6;
+
+    @Param({"NONE", "LZ4", "DEFLATE"})
+    public PageCompressorType compressor;
+
+    @Param({"20", "200"})
+    public int rows;
+
+    private PageCompression compression;
+    private byte[] page;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        compression = new PageCompression(compressor.newCompressor(), 1024);
+        page = SamplePages.serialize(rows, 0);
+        encoded = compression.encode(page);
+        log.info("{} rows, {}: page {} bytes, stored {} bytes ({}%), cluster holds {} bytes per page",
+                rows, compressor, page.length, encoded.length, encoded.length * 100 / page.length, encoded.length * COPIES);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return compression.encode(page);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return compression.decode(encoded);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PageCompressionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
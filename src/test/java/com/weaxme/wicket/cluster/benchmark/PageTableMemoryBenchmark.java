@@ -0,0 +1,154 @@
+package com.weaxme.wicket.cluster.benchmark;
+
+import com.weaxme.wicket.cluster.pageStore.PageTable;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pages of a session in a {@link PageTable} against the {@code HashMap<Integer, byte[]>} it replaced.
+ * <p>
+ * Setup logs the heap overhead per session above the page bytes and the serialized size, for
+ * {@value #SESSIONS} sessions with small pages, so the index structure dominates. The benchmarks measure
+ * storing a new page with eviction of the oldest one, as the data store does on every request.
+ * The parallel collector gives stable heap numbers after {@link System#gc()}.
+ */
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms3g", "-Xmx3g", "-XX:+UseParallelGC"})
+public class PageTableMemoryBenchmark {
+
+    private static final int SESSIONS = 10000;
+    private static final int PAGE_SIZE = 64;
+
+    @Param({"10", "50", "200"})
+    public int pages;
+
+    private byte[] page;
+    private PageTable table;
+    private Map<Integer, byte[]> map;
+    private int nextId;
+
+    @Setup
+    public void setup() throws IOException {
+        page = new byte[PAGE_SIZE];
+
+        long pageBytes = (long) pages * PAGE_SIZE;
+        long before = usedHeap();
+        List<PageTable> tables = new ArrayList<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            PageTable session = new PageTable();
+            for (int id = 0; id < pages; id++) {
+                session.put(id, page);
+            }
+            tables.add(session);
+        }
+        long tableHeap = (usedHeap() - before) / SESSIONS - pageBytes;
+
+        before = usedHeap();
+        List<Map<Integer, byte[]>> maps = new ArrayList<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            Map<Integer, byte[]> session = new HashMap<>();
+            for (int id = 0; id < pages; id++) {
+                session.put(id, page.clone());
+            }
+            maps.add(session);
+        }
+        long mapHeap = (usedHeap() - before) / SESSIONS - pageBytes;
+
+        ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+        tables.get(0).writeTo(new DataOutputStream(tableBytes));
+        ByteArrayOutputStream mapBytes = new ByteArrayOutputStream();
+        writeMap(maps.get(0), new DataOutputStream(mapBytes));
+
+        log.info("{} pages: heap overhead per session table {}, map {} bytes; serialized overhead table {}, map {} bytes",
+                pages, tableHeap, mapHeap, tableBytes.size() - pageBytes, mapBytes.size() - pageBytes);
+
+        table = tables.get(0);
+        map = maps.get(0);
+        nextId = pages;
+    }
+
+    @Benchmark
+    public int storeTable() {
+        int id = nextId++;
+        table.put(id, page);
+        return table.evictOldest(id, pages, 0);
+    }
+
+    @Benchmark
+    public int storeMap() {
+        int id = nextId++;
+        map.put(id, page);
+        // the old code sorted the boxed ids on every eviction
+        List<Integer> ids = new ArrayList<>(map.keySet());
+        Collections.sort(ids);
+        int evicted = 0;
+        for (int i = 0; map.size() > pages && i < ids.size(); i++) {
+            if (ids.get(i) != id) {
+                map.remove(ids.get(i));
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * The map as it was written by the record before the page table: id and length prefixed array per page
+     */
+    private static void writeMap(Map<Integer, byte[]> map, DataOutputStream out) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<Integer, byte[]> page : map.entrySet()) {
+            out.writeInt(page.getKey());
+            out.writeInt(page.getValue().length);
+            out.write(page.getValue());
+        }
+    }
+
+    private static long usedHeap() {
+        long used = Long.MAX_VALUE;
+        // repeat until a collection frees nothing more
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long current = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            if (current >= used) {
+                return current;
+            }
+            used = current;
+        }
+        return used;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PageTableMemoryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
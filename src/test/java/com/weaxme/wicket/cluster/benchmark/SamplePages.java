@@ -0,0 +1,49 @@
+package com.weaxme.wicket.cluster.benchmark;
+
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.html.form.Form;
+import org.apache.wicket.markup.html.form.TextField;
+import org.apache.wicket.markup.repeater.RepeatingView;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.serialize.java.JavaSerializer;
+import org.apache.wicket.util.tester.WicketTester;
+
+/**
+ * Serialized Wicket pages used as benchmark input.
+ */
+public final class SamplePages {
+
+    private SamplePages() {
+    }
+
+    /**
+     * @param rows    number of rows of the page, every row has a label and a text field
+     * @param version changes the value of one text field, so versions of a page differ a bit
+     * @return page serialized the same way as Wicket does it before writing into the data store
+     */
+    public static byte[] serialize(int rows, int version) {
+        WicketTester tester = new WicketTester();
+        try {
+            return new JavaSerializer(tester.getApplication().getApplicationKey())
+                    .serialize(new SamplePage(rows, version));
+        } finally {
+            tester.destroy();
+        }
+    }
+
+    public static class SamplePage extends WebPage {
+
+        public SamplePage(int rows, int version) {
+            Form<Void> form = new Form<>("form");
+            RepeatingView repeater = new RepeatingView("rows");
+            for (int i = 0; i < rows; i++) {
+                repeater.add(new Label(repeater.newChildId(), Model.of("Row label number " + i)));
+                String value = i == rows / 2 ? "changed value " + version : "value of the field " + i;
+                repeater.add(new TextField<>(repeater.newChildId(), Model.of(value)));
+            }
+            form.add(repeater);
+            add(form);
+        }
+    }
+}
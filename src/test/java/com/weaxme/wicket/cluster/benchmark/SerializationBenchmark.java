@@ -0,0 +1,180 @@
+package com.weaxme.wicket.cluster.benchmark;
+
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import com.hazelcast.nio.serialization.Data;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import com.weaxme.wicket.cluster.serialization.FstSerializer;
+import com.weaxme.wicket.cluster.session.SessionAttributes;
+import com.weaxme.wicket.cluster.session.SessionEdge;
+import com.weaxme.wicket.cluster.session.SessionGraph;
+import com.weaxme.wicket.cluster.session.SessionVertex;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.wicket.serialize.ISerializer;
+import org.apache.wicket.serialize.java.JavaSerializer;
+import org.apache.wicket.util.tester.WicketTester;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the records of the cluster maps and of Wicket pages with Java serialization against the compact formats.
+ * Sizes of the serialized forms (bytes/op) are logged at setup, the benchmarks measure ns/op.
+ */
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"3", "20"})
+    public int size;
+
+    private InternalSerializationService serializationService;
+    private WicketTester tester;
+    private ISerializer javaSerializer;
+    private ISerializer fstSerializer;
+
+    private SessionGraph graph;
+    private SessionAttributes attributes;
+    private SamplePages.SamplePage page;
+
+    private byte[] graphJava;
+    private Data graphData;
+    private byte[] attributesJava;
+    private Data attributesData;
+    private byte[] pageJava;
+    private byte[] pageFst;
+
+    @Setup
+    public void setup() {
+        serializationService = new DefaultSerializationServiceBuilder()
+                .addDataSerializableFactory(ClusterSerialization.FACTORY_ID, new ClusterSerialization())
+                .build();
+        tester = new WicketTester();
+        javaSerializer = new JavaSerializer(tester.getApplication().getApplicationKey());
+        fstSerializer = new FstSerializer(getClass().getClassLoader());
+
+        // a user who went through several nodes
+        graph = new SessionGraph("8F3C2A9D51B04E6FA7C1D2E3F4A5B600");
+        graph.addVertex(new SessionVertex(graph.getRootId(), "node0"));
+        graph.addEdge(new SessionEdge(graph.getRootId(), graph.getRootId()));
+        String previous = graph.getRootId();
+        for (int i = 1; i < size; i++) {
+            String id = String.format("8F3C2A9D51B04E6FA7C1D2E3F4A5B6%02d", i);
+            graph.addVertex(new SessionVertex(id, "node" + i));
+            graph.addEdge(new SessionEdge(previous, id));
+            previous = id;
+        }
+        attributes = new SessionAttributes();
+        for (int i = 0; i < size; i++) {
+            attributes.set("attribute" + i, new byte[64]);
+        }
+        page = new SamplePages.SamplePage(size * 5, 1);
+
+        graphJava = java(graph);
+        graphData = serializationService.toData(graph);
+        attributesJava = java(attributes);
+        attributesData = serializationService.toData(attributes);
+        pageJava = javaSerializer.serialize(page);
+        pageFst = fstSerializer.serialize(page);
+
+        log.info("bytes/op: graph java {}, identified {}; attributes java {}, identified {}; page java {}, fst {}",
+                graphJava.length, graphData.totalSize(), attributesJava.length,
+                attributesData.totalSize(), pageJava.length, pageFst.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        serializationService.dispose();
+        tester.destroy();
+    }
+
+    @Benchmark
+    public byte[] graphWriteJava() {
+        return java(graph);
+    }
+
+    @Benchmark
+    public Data graphWriteIdentified() {
+        return serializationService.toData(graph);
+    }
+
+    @Benchmark
+    public Object graphReadIdentified() {
+        return serializationService.toObject(graphData);
+    }
+
+    @Benchmark
+    public byte[] attributesWriteJava() {
+        return java(attributes);
+    }
+
+    @Benchmark
+    public Data attributesWriteIdentified() {
+        return serializationService.toData(attributes);
+    }
+
+    @Benchmark
+    public Object attributesReadIdentified() {
+        return serializationService.toObject(attributesData);
+    }
+
+    @Benchmark
+    public byte[] pageWriteJava() {
+        return javaSerializer.serialize(page);
+    }
+
+    @Benchmark
+    public byte[] pageWriteFst() {
+        return fstSerializer.serialize(page);
+    }
+
+    @Benchmark
+    public Object pageReadJava() {
+        return javaSerializer.deserialize(pageJava);
+    }
+
+    @Benchmark
+    public Object pageReadFst() {
+        return fstSerializer.deserialize(pageFst);
+    }
+
+    private static byte[] java(Serializable value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SerializationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
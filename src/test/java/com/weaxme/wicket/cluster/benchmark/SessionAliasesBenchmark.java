@@ -0,0 +1,101 @@
+package com.weaxme.wicket.cluster.benchmark;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import com.weaxme.wicket.cluster.session.HazelcastSessionStore2;
+import com.weaxme.wicket.cluster.session.SessionAliases;
+import com.weaxme.wicket.cluster.session.SessionGraph;
+import com.weaxme.wicket.cluster.session.SessionStoreStats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.Serializable;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session resolution with many live sessions in the cluster.
+ * <p>
+ * Every user has its own graph record, so the time of a lookup and of a node hop should stay
+ * the same for any number of sessions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Threads(4)
+public class SessionAliasesBenchmark {
+
+    private static final String[] NODES = {"node1", "node2", "node3"};
+
+    @Param({"1000", "100000"})
+    public int sessions;
+
+    private HazelcastInstance hazelcast;
+    private SessionAliases aliases;
+
+    @Setup
+    public void setup() {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+        IMap<String, Serializable> store = hazelcast.getMap(HazelcastSessionStore2.STORE_NAME);
+        aliases = new SessionAliases(hazelcast, store, new SessionStoreStats());
+        for (int i = 0; i < sessions; i++) {
+            aliases.createRoot("session" + i, NODES[i % NODES.length]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        hazelcast.shutdown();
+    }
+
+    /**
+     * Resolves the session of a user on another node, as for every request which came through a different node
+     */
+    @Benchmark
+    public Object lookup() {
+        String jsessionid = "session" + ThreadLocalRandom.current().nextInt(sessions);
+        String masterId = aliases.getMasterId(jsessionid);
+        SessionGraph graph = aliases.getGraph(masterId);
+        return graph.findVertex(jsessionid, NODES[ThreadLocalRandom.current().nextInt(NODES.length)]);
+    }
+
+    /**
+     * Registers an alias of a session on another node. After the first hop of a user the graph already has
+     * the alias, so this is the path of the concurrent first requests which lost the race.
+     */
+    @Benchmark
+    public Object hop() {
+        String jsessionid = "session" + ThreadLocalRandom.current().nextInt(sessions);
+        String masterId = aliases.getMasterId(jsessionid);
+        return aliases.addAlias(masterId, jsessionid, UUID.randomUUID().toString(), "node4");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SessionAliasesBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,103 @@
+package com.weaxme.wicket.cluster.benchmark;
+
+import com.weaxme.wicket.cluster.session.HazelcastSessionStore2;
+import com.weaxme.wicket.cluster.session.SessionIdResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Proxy;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Reading of the session id of a request without http session on the node, {@link SessionIdResolver} against
+ * the stream and regex based code it replaced. Run with {@code -prof gc} to compare the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionIdResolverBenchmark {
+
+    @Param({"cookie", "url"})
+    public String source;
+
+    private HttpServletRequest request;
+    private SessionIdResolver resolver;
+
+    @Setup
+    public void setup() {
+        Cookie[] cookies = source.equals("cookie")
+                ? new Cookie[]{new Cookie("_ga", "GA1.2.123456789.1234567890"), new Cookie("lang", "en"),
+                new Cookie(HazelcastSessionStore2.JSESSIONID, "8F3C2A9D51B04E6FA7C1D2E3F4A5B6C7.node1")}
+                : null;
+        String uri = source.equals("url")
+                ? "/wicket/page;jsessionid=8F3C2A9D51B04E6FA7C1D2E3F4A5B6C7.node1"
+                : "/wicket/page";
+        request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getCookies":
+                            return cookies;
+                        case "getRequestURI":
+                            return uri;
+                        default:
+                            return null;
+                    }
+                });
+        resolver = SessionIdResolver.standard();
+    }
+
+    @Benchmark
+    public String resolver() {
+        return resolver.resolve(request);
+    }
+
+    @Benchmark
+    public String streams() {
+        String jsessionid = null;
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null && cookies.length > 0) {
+            jsessionid = Stream.of(cookies)
+                    .filter(c -> c.getName().equals(HazelcastSessionStore2.JSESSIONID))
+                    .map(Cookie::getValue)
+                    .filter(Objects::nonNull)
+                    .map(value -> value.split("\\.")[0])
+                    .findFirst()
+                    .orElse(null);
+        }
+        if (jsessionid == null) {
+            String[] split = request.getRequestURI().split(";");
+            if (split.length > 1 && split[1].contains("jsessionid=")) {
+                jsessionid = split[1].replace("jsessionid=", "");
+                if (jsessionid.contains(".")) {
+                    jsessionid = jsessionid.split("\\.")[0];
+                }
+            }
+        }
+        return jsessionid;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SessionIdResolverBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
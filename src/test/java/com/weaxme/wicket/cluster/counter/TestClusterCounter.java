@@ -0,0 +1,125 @@
+package com.weaxme.wicket.cluster.counter;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counters of the same name on two members
+ */
+public class TestClusterCounter {
+
+    private static final String NAME = "test-counter";
+    private static final long MAX_STALENESS_MILLIS = 200;
+
+    private HazelcastInstance hazelcast1;
+    private HazelcastInstance hazelcast2;
+    private ClusterCounter counter1;
+    private ClusterCounter counter2;
+
+    @Before
+    public void init() {
+        hazelcast1 = Hazelcast.newHazelcastInstance(newConfig());
+        hazelcast2 = Hazelcast.newHazelcastInstance(newConfig());
+        counter1 = new ClusterCounter(hazelcast1, NAME, MAX_STALENESS_MILLIS);
+        counter2 = new ClusterCounter(hazelcast2, NAME, MAX_STALENESS_MILLIS);
+    }
+
+    @After
+    public void destroy() {
+        counter1.destroy();
+        counter2.destroy();
+        hazelcast1.shutdown();
+        hazelcast2.shutdown();
+    }
+
+    @Test
+    public void testReadsWithinStalenessBound() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            counter1.increment();
+        }
+        assertEquals(10, counter1.get());
+        Thread.sleep(MAX_STALENESS_MILLIS + 50);
+        assertEquals(10, counter2.get());
+    }
+
+    @Test
+    public void testDecrementStopsAtZero() {
+        assertFalse(counter1.decrement());
+        counter1.increment();
+        counter1.flush();
+        assertTrue(counter2.decrement());
+        assertFalse(counter2.decrement());
+        assertFalse(counter1.decrement());
+        assertEquals(0, hazelcast1.getAtomicLong(NAME).get());
+    }
+
+    @Test
+    public void testConcurrentDecrementsNeverGoBelowZero() throws Exception {
+        int increments = 1000;
+        for (int i = 0; i < increments; i++) {
+            (i % 2 == 0 ? counter1 : counter2).increment();
+        }
+        counter1.flush();
+
+        // counter2 still holds its increments locally, decrements take them or the cluster value
+        // more decrements than increments, some of them are refused
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            ClusterCounter counter = t % 2 == 0 ? counter1 : counter2;
+            futures.add(executor.submit(() -> {
+                start.await();
+                int decremented = 0;
+                for (int i = 0; i < increments / 4; i++) {
+                    if (counter.decrement()) {
+                        decremented++;
+                    }
+                }
+                return decremented;
+            }));
+        }
+        start.countDown();
+        int decremented = 0;
+        for (Future<Integer> future : futures) {
+            decremented += future.get();
+        }
+        executor.shutdown();
+        counter1.flush();
+        counter2.flush();
+
+        // a decrement on one node may be refused while the other one still holds increments
+        assertEquals(increments - decremented, hazelcast1.getAtomicLong(NAME).get());
+        while (counter1.decrement()) {
+            decremented++;
+        }
+        assertEquals(increments, decremented);
+        assertEquals(0, hazelcast1.getAtomicLong(NAME).get());
+        assertFalse(counter2.decrement());
+    }
+
+    private static Config newConfig() {
+        Config config = ClusterSerialization.configure(new Config());
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+        return config;
+    }
+}
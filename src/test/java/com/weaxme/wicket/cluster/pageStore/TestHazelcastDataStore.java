@@ -0,0 +1,347 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import com.weaxme.wicket.cluster.pageStore.compression.PageCompression;
+import com.weaxme.wicket.cluster.pageStore.compression.PageCompressorType;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import org.apache.wicket.pageStore.IDataStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Page store on an embedded Hazelcast member
+ */
+public class TestHazelcastDataStore {
+
+    private static final byte[] OLD = {1};
+    private static final byte[] NEW = {2};
+
+    private HazelcastInstance hazelcast;
+    private HazelcastDataStore store;
+
+    /**
+     * Runs once between the read of the pages on the owner and their installation on this node
+     */
+    private volatile Runnable afterRead;
+
+    @Before
+    public void init() {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+        store = new HazelcastDataStore(hazelcast, 0, 0, 3, 60000) {
+            @Override
+            HazelcastPageData readPages(String sessionId, int id) {
+                HazelcastPageData read = super.readPages(sessionId, id);
+                Runnable interleaved = afterRead;
+                afterRead = null;
+                if (interleaved != null) {
+                    interleaved.run();
+                }
+                return read;
+            }
+        };
+    }
+
+    @After
+    public void destroy() {
+        store.destroy();
+        hazelcast.shutdown();
+    }
+
+    @Test
+    public void testConcurrentWritesKeepAllPages() throws Exception {
+        HazelcastDataStore concurrent = new HazelcastDataStore(hazelcast);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int writer = 0; writer < 4; writer++) {
+                int first = writer * 25;
+                writers.add(executor.submit(() -> {
+                    for (int id = first; id < first + 25; id++) {
+                        concurrent.storeData("s1", id, new byte[]{(byte) id});
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            // no writer replaced the pages of the others
+            for (int id = 0; id < 100; id++) {
+                assertArrayEquals(new byte[]{(byte) id}, concurrent.getData("s1", id));
+            }
+        } finally {
+            executor.shutdownNow();
+            concurrent.destroy();
+        }
+    }
+
+    @Test
+    public void testReadsSinglePage() {
+        HazelcastDataStore single = new HazelcastDataStore(hazelcast);
+        try {
+            single.storeData("s1", 1, OLD);
+            single.storeData("s1", 2, NEW);
+
+            assertArrayEquals(NEW, single.getData("s1", 2));
+            assertNull(single.getData("s1", 3));
+            assertNull(single.getData("missing", 1));
+            // the read-only processor doesn't create an entry for a missing session
+            assertFalse(hazelcast.getMap(HazelcastDataStore.STORE_NAME).containsKey("missing"));
+        } finally {
+            single.destroy();
+        }
+    }
+
+    @Test
+    public void testPageProcessorsOnRemoteOwner() {
+        HazelcastInstance member1 = Hazelcast.newHazelcastInstance(clusterConfig());
+        HazelcastInstance member2 = Hazelcast.newHazelcastInstance(clusterConfig());
+        HazelcastDataStore store1 = new HazelcastDataStore(member1);
+        HazelcastDataStore store2 = new HazelcastDataStore(member2);
+        try {
+            // sessions are owned by both members, so every processor runs on the other member for some of them
+            for (int i = 0; i < 20; i++) {
+                String sessionId = "session" + i;
+                store1.storeData(sessionId, 1, OLD);
+                store1.storeData(sessionId, 2, NEW);
+                assertArrayEquals(OLD, store2.getData(sessionId, 1));
+
+                store2.removeData(sessionId, 1);
+                assertNull(store1.getData(sessionId, 1));
+                assertArrayEquals(NEW, store1.getData(sessionId, 2));
+
+                // the entry of the session goes with its last page
+                store2.removeData(sessionId, 2);
+                assertFalse(member1.getMap(HazelcastDataStore.STORE_NAME).containsKey(sessionId));
+            }
+        } finally {
+            store2.destroy();
+            store1.destroy();
+            member2.shutdown();
+            member1.shutdown();
+        }
+    }
+
+    @Test
+    public void testPrefetchedPagesAreServed() {
+        store.storeData("s1", 1, OLD);
+        store.storeData("s1", 2, OLD);
+        store.storeData("s1", 3, OLD);
+
+        assertArrayEquals(OLD, store.getData("s1", 3));
+        // removed on the owner behind the back of the store, so only the prefetched copy is left
+        hazelcast.getMap(HazelcastDataStore.STORE_NAME).remove("s1");
+        assertArrayEquals(OLD, store.getData("s1", 2));
+    }
+
+    @Test
+    public void testWriteInvalidatesPrefetchedPage() {
+        store.storeData("s1", 1, OLD);
+        store.storeData("s1", 2, OLD);
+
+        assertArrayEquals(OLD, store.getData("s1", 2));
+        store.storeData("s1", 1, NEW);
+        assertArrayEquals(NEW, store.getData("s1", 1));
+    }
+
+    @Test
+    public void testWriteDuringReadIsNotHiddenByPrefetchedPages() {
+        store.storeData("s1", 1, OLD);
+        store.storeData("s1", 2, OLD);
+
+        // the read fetched the old page 1, the write completes before the fetched pages are installed
+        afterRead = () -> store.storeData("s1", 1, NEW);
+        assertArrayEquals(OLD, store.getData("s1", 2));
+
+        assertArrayEquals(NEW, store.getData("s1", 1));
+    }
+
+    @Test
+    public void testAsyncWriteDuringReadIsNotHiddenByPrefetchedPages() {
+        store.storeData("s1", 1, OLD);
+        store.storeData("s1", 2, OLD);
+
+        afterRead = () -> {
+            try {
+                store.storeDataAsync("s1", 1, NEW).get();
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        };
+        assertArrayEquals(OLD, store.getData("s1", 2));
+
+        assertArrayEquals(NEW, store.getData("s1", 1));
+    }
+
+    @Test
+    public void testRemovalDuringReadIsNotHiddenByPrefetchedPages() {
+        store.storeData("s1", 1, OLD);
+        store.storeData("s1", 2, OLD);
+        store.storeData("s1", 3, OLD);
+
+        afterRead = () -> store.removeData("s1", 1);
+        assertArrayEquals(OLD, store.getData("s1", 3));
+        assertNull(store.getData("s1", 1));
+
+        afterRead = () -> store.removeData("s1");
+        assertArrayEquals(OLD, store.getData("s1", 3));
+        assertNull(store.getData("s1", 2));
+    }
+
+    @Test
+    public void testMaxPagesPerSession() throws Exception {
+        HazelcastDataStore limited = new HazelcastDataStore(hazelcast, 3, 0);
+        try {
+            for (int id = 1; id <= 5; id++) {
+                limited.storeData("s1", id, page(id, 100));
+            }
+            limited.storeData("s2", 1, page(1, 100));
+
+            assertNull(limited.getData("s1", 1));
+            assertNull(limited.getData("s1", 2));
+            for (int id = 3; id <= 5; id++) {
+                assertArrayEquals(page(id, 100), limited.getData("s1", id));
+            }
+            // the limit is per session
+            assertNotNull(limited.getData("s2", 1));
+            assertEquals(2L, evictedPages());
+        } finally {
+            limited.destroy();
+        }
+    }
+
+    @Test
+    public void testMaxBytesPerSession() throws Exception {
+        HazelcastDataStore limited = new HazelcastDataStore(hazelcast, 0, 250);
+        try {
+            limited.storeData("s1", 1, page(1, 100));
+            limited.storeData("s1", 2, page(2, 100));
+            limited.storeData("s1", 3, page(3, 100));
+            assertNull(limited.getData("s1", 1));
+            assertNotNull(limited.getData("s1", 2));
+            assertEquals(1L, evictedPages());
+
+            // the page just stored is kept even if it alone exceeds the limit
+            limited.storeData("s1", 4, page(4, 300));
+            assertNull(limited.getData("s1", 2));
+            assertNull(limited.getData("s1", 3));
+            assertArrayEquals(page(4, 300), limited.getData("s1", 4));
+            assertEquals(3L, evictedPages());
+        } finally {
+            limited.destroy();
+        }
+    }
+
+    @Test
+    public void testMaxPagesKeepsSnapshotsOfDeltas() throws Exception {
+        HazelcastDataStore limited = new HazelcastDataStore(hazelcast, 4, 0);
+        IDataStore delta = new DeltaDataStore(
+                new CompressingDataStore(limited, new PageCompression(PageCompressorType.LZ4.newCompressor(), 0)), 3, 10);
+        try {
+            byte[] base = page(0, 2000);
+            for (int id = 1; id <= 12; id++) {
+                delta.storeData("s1", id, version(base, id));
+                // every page kept by the cluster store can be rebuilt
+                for (int kept = 1; kept <= id; kept++) {
+                    if (limited.getData("s1", kept) != null) {
+                        assertArrayEquals("page " + kept, version(base, kept), delta.getData("s1", kept));
+                    }
+                }
+            }
+            // snapshots 1, 5 and 9 went after their deltas
+            for (int id = 1; id <= 8; id++) {
+                assertNull(limited.getData("s1", id));
+            }
+            for (int id = 9; id <= 12; id++) {
+                assertArrayEquals(version(base, id), delta.getData("s1", id));
+            }
+            assertEquals(8L, evictedPages());
+        } finally {
+            limited.destroy();
+        }
+    }
+
+    @Test
+    public void testStoringSnapshotAgainKeepsItsDeltas() {
+        HazelcastDataStore cluster = new HazelcastDataStore(hazelcast);
+        IDataStore delta = new DeltaDataStore(cluster, 3, 10);
+        try {
+            byte[] base = page(0, 2000);
+            delta.storeData("s1", 1, version(base, 1));
+            delta.storeData("s1", 2, version(base, 2));
+            assertTrue(DeltaDataStore.isDelta(cluster.getData("s1", 2)));
+
+            // page 1 is the snapshot of page 2
+            delta.storeData("s1", 1, version(base, 11));
+            assertArrayEquals(version(base, 11), delta.getData("s1", 1));
+            assertArrayEquals(version(base, 2), delta.getData("s1", 2));
+
+            delta.storeData("s1", 1, version(base, 21));
+            delta.storeData("s1", 3, version(base, 3));
+            assertArrayEquals(version(base, 21), delta.getData("s1", 1));
+            assertArrayEquals(version(base, 2), delta.getData("s1", 2));
+            assertArrayEquals(version(base, 3), delta.getData("s1", 3));
+
+            // read on a node without the snapshot
+            IDataStore other = new DeltaDataStore(cluster, 3, 10);
+            for (int id = 1; id <= 3; id++) {
+                assertArrayEquals(delta.getData("s1", id), other.getData("s1", id));
+            }
+        } finally {
+            cluster.destroy();
+        }
+    }
+
+    /**
+     * Config of a cluster of its own, apart from the member of the other tests
+     */
+    private static Config clusterConfig() {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getGroupConfig().setName("processors");
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+        return config;
+    }
+
+    private static long evictedPages() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(JmxSupport.DOMAIN + ":type=DataStore,name=" + ObjectName.quote("session-window"));
+        return (Long) server.getAttribute(name, "EvictedPages");
+    }
+
+    private static byte[] version(byte[] base, int version) {
+        byte[] data = base.clone();
+        data[1000] = (byte) version;
+        return data;
+    }
+
+    private static byte[] page(int seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,171 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.PartitionService;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Per-page layout on an embedded Hazelcast member
+ */
+public class TestHazelcastPerPageDataStore {
+
+    private HazelcastInstance hazelcast;
+
+    @Before
+    public void init() {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+    }
+
+    @After
+    public void destroy() {
+        hazelcast.shutdown();
+    }
+
+    @Test
+    public void testStoreReadRemove() {
+        HazelcastPerPageDataStore store = new HazelcastPerPageDataStore(hazelcast);
+        try {
+            store.storeData("s1", 1, page(1, 10));
+            store.storeData("s1", 2, page(2, 10));
+            store.storeData("s2", 1, page(3, 10));
+            assertArrayEquals(page(2, 10), store.getData("s1", 2));
+
+            store.removeData("s1", 2);
+            assertNull(store.getData("s1", 2));
+            store.removeData("s1");
+            assertNull(store.getData("s1", 1));
+            assertNotNull(store.getData("s2", 1));
+            // nothing is indexed without limits
+            assertTrue(hazelcast.getMap(HazelcastPerPageDataStore.INDEX_NAME).isEmpty());
+        } finally {
+            store.destroy();
+        }
+    }
+
+    @Test
+    public void testMaxPagesPerSession() throws Exception {
+        HazelcastPerPageDataStore store = new HazelcastPerPageDataStore(hazelcast, 2, 0);
+        try {
+            for (int id = 1; id <= 5; id++) {
+                store.storeData("s1", id, page(id, 10));
+            }
+
+            awaitEvicted(3);
+            for (int id = 1; id <= 3; id++) {
+                assertNull(store.getData("s1", id));
+            }
+            assertNotNull(store.getData("s1", 4));
+            assertNotNull(store.getData("s1", 5));
+        } finally {
+            store.destroy();
+        }
+    }
+
+    @Test
+    public void testMaxPagesWithSparseIds() throws Exception {
+        HazelcastPerPageDataStore store = new HazelcastPerPageDataStore(hazelcast, 2, 0);
+        try {
+            store.storeData("s1", 10, page(10, 10));
+            store.storeData("s1", 20, page(20, 10));
+            store.storeData("s1", 35, page(35, 10));
+            store.storeData("s1", 51, page(51, 10));
+
+            awaitEvicted(2);
+            assertNull(store.getData("s1", 10));
+            assertNull(store.getData("s1", 20));
+            assertNotNull(store.getData("s1", 35));
+            assertNotNull(store.getData("s1", 51));
+        } finally {
+            store.destroy();
+        }
+    }
+
+    @Test
+    public void testMaxBytesPerSession() throws Exception {
+        HazelcastPerPageDataStore store = new HazelcastPerPageDataStore(hazelcast, 0, 250);
+        try {
+            store.storeData("s1", 1, page(1, 100));
+            store.storeData("s1", 2, page(2, 100));
+            store.storeDataAsync("s1", 3, page(3, 100)).get();
+
+            awaitEvicted(1);
+            assertNull(store.getData("s1", 1));
+            assertNotNull(store.getData("s1", 2));
+            assertNotNull(store.getData("s1", 3));
+        } finally {
+            store.destroy();
+        }
+    }
+
+    @Test
+    public void testRemovedPagesLeaveIndex() throws Exception {
+        HazelcastPerPageDataStore store = new HazelcastPerPageDataStore(hazelcast, 2, 0);
+        IMap<String, SessionPageIndex> index = hazelcast.getMap(HazelcastPerPageDataStore.INDEX_NAME);
+        try {
+            store.storeData("s1", 1, page(1, 10));
+            store.storeData("s1", 2, page(2, 10));
+            store.removeData("s1", 1);
+            assertEquals(1, index.get("s1").size());
+
+            // the removed page doesn't count, nothing is evicted
+            store.storeData("s1", 3, page(3, 10));
+            assertNotNull(store.getData("s1", 2));
+            assertEquals(0L, evictedPages());
+
+            store.removeData("s1");
+            assertFalse(index.containsKey("s1"));
+        } finally {
+            store.destroy();
+        }
+    }
+
+    @Test
+    public void testPagesShareSessionPartition() {
+        PartitionService partitions = hazelcast.getPartitionService();
+        for (int id = 1; id <= 10; id++) {
+            assertEquals(partitions.getPartition("s1"), partitions.getPartition(new HazelcastPageKey("s1", id)));
+        }
+    }
+
+    private static void awaitEvicted(long pages) throws Exception {
+        // evicted pages are removed asynchronously
+        long deadline = System.currentTimeMillis() + 5000;
+        while (evictedPages() < pages && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(pages, evictedPages());
+    }
+
+    private static long evictedPages() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(JmxSupport.DOMAIN + ":type=DataStore,name=" + ObjectName.quote("session-window"));
+        return (Long) server.getAttribute(name, "EvictedPages");
+    }
+
+    private static byte[] page(int seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
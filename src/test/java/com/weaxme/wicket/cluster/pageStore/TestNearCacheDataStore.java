@@ -0,0 +1,148 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.hazelcast.core.ICompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestNearCacheDataStore {
+
+    private ClusterStore clusterStore;
+    private NearCacheDataStore nearCache;
+
+    @Before
+    public void init() {
+        clusterStore = new ClusterStore();
+        nearCache = new NearCacheDataStore(clusterStore, clusterStore, 100);
+    }
+
+    @After
+    public void destroy() {
+        nearCache.destroy();
+    }
+
+    @Test
+    public void testStoredPageIsReadLocally() {
+        nearCache.storeData("session", 1, new byte[]{1});
+
+        assertArrayEquals(new byte[]{1}, nearCache.getData("session", 1));
+        assertEquals(0, clusterStore.reads);
+    }
+
+    @Test
+    public void testRemoteUpdateInvalidatesSession() {
+        nearCache.storeData("session", 1, new byte[]{1});
+        clusterStore.pages.put("session-1", new byte[]{2});
+        clusterStore.listener.sessionUpdated("session");
+
+        assertArrayEquals(new byte[]{2}, nearCache.getData("session", 1));
+        assertEquals(1, clusterStore.reads);
+        assertArrayEquals(new byte[]{2}, nearCache.getData("session", 1));
+        assertEquals(1, clusterStore.reads);
+    }
+
+    @Test
+    public void testPageReadDuringInvalidationIsNotCached() {
+        clusterStore.pages.put("session-1", new byte[]{1});
+        clusterStore.onRead = () -> clusterStore.listener.sessionUpdated("session");
+
+        assertArrayEquals(new byte[]{1}, nearCache.getData("session", 1));
+        clusterStore.onRead = null;
+        nearCache.getData("session", 1);
+        assertEquals(2, clusterStore.reads);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedPagesBySize() {
+        nearCache.storeData("session", 1, new byte[40]);
+        nearCache.storeData("session", 2, new byte[40]);
+        nearCache.getData("session", 1);
+        nearCache.storeData("session", 3, new byte[40]);
+
+        assertEquals(80, nearCache.getBytes());
+        assertEquals(2, nearCache.getPages());
+        nearCache.getData("session", 2);
+        assertEquals(1, clusterStore.reads);
+    }
+
+    @Test
+    public void testMembershipChangeDropsAllPages() {
+        nearCache.storeData("session1", 1, new byte[]{1});
+        nearCache.storeData("session2", 1, new byte[]{1});
+        clusterStore.listener.allUpdated();
+
+        assertEquals(0, nearCache.getBytes());
+        clusterStore.pages.clear();
+        assertNull(nearCache.getData("session1", 1));
+    }
+
+    private static class ClusterStore implements IHazelcastDataStore {
+
+        private final Map<String, byte[]> pages = new HashMap<>();
+        private SessionUpdateListener listener;
+        private Runnable onRead;
+        private int reads;
+
+        @Override
+        public byte[] getData(String sessionId, int id) {
+            reads++;
+            byte[] data = pages.get(sessionId + "-" + id);
+            if (onRead != null) {
+                onRead.run();
+            }
+            return data;
+        }
+
+        @Override
+        public void removeData(String sessionId, int id) {
+            pages.remove(sessionId + "-" + id);
+        }
+
+        @Override
+        public void removeData(String sessionId) {
+            pages.keySet().removeIf(key -> key.startsWith(sessionId + "-"));
+        }
+
+        @Override
+        public void storeData(String sessionId, int id, byte[] data) {
+            pages.put(sessionId + "-" + id, data);
+        }
+
+        @Override
+        public ICompletableFuture<?> storeDataAsync(String sessionId, int id, byte[] data) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String addSessionUpdateListener(SessionUpdateListener listener) {
+            this.listener = listener;
+            return "listener";
+        }
+
+        @Override
+        public void removeSessionUpdateListener(String registrationId) {
+            listener = null;
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public boolean isReplicated() {
+            return false;
+        }
+
+        @Override
+        public boolean canBeAsynchronous() {
+            return false;
+        }
+    }
+}
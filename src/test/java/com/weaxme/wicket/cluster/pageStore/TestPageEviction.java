@@ -0,0 +1,66 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestPageEviction {
+
+    private static final int[] IDS = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    private static final int[] LENGTHS = {100, 10, 10, 10, 100, 10, 10, 10, 100, 10};
+
+    /**
+     * Snapshots 1, 5 and 9, the other pages are deltas of the snapshot before them
+     */
+    private static final int[] BASES = {-1, 0, 0, 0, -1, 4, 4, 4, -1, 8};
+
+    private static final int[] NO_BASES = {-1, -1, -1, -1, -1, -1, -1, -1, -1, -1};
+
+    @Test
+    public void testNothingEvictedWithinLimits() {
+        assertNull(PageEviction.select(IDS, LENGTHS, BASES, 10, 400, 10, 10, 400));
+        assertNull(PageEviction.select(IDS, LENGTHS, BASES, 10, 400, 10, 0, 0));
+    }
+
+    @Test
+    public void testOldestPagesGoFirst() {
+        boolean[] evict = PageEviction.select(IDS, LENGTHS, NO_BASES, 10, 400, 10, 7, 0);
+        assertArrayEquals(marks(1, 2, 3), evict);
+
+        // the page just stored stays even when it is the oldest one
+        evict = PageEviction.select(IDS, LENGTHS, NO_BASES, 10, 400, 1, 8, 0);
+        assertArrayEquals(marks(2, 3), evict);
+
+        evict = PageEviction.select(IDS, LENGTHS, NO_BASES, 10, 400, 10, 0, 200);
+        assertArrayEquals(marks(1, 2, 3, 4, 5), evict);
+    }
+
+    @Test
+    public void testDeltasGoBeforeTheirBase() {
+        boolean[] evict = PageEviction.select(IDS, LENGTHS, BASES, 10, 400, 10, 4, 0);
+        // 1 goes after its deltas 2-4, 5 stays while its delta 8 is kept
+        assertArrayEquals(marks(1, 2, 3, 4, 6, 7), evict);
+
+        evict = PageEviction.select(IDS, LENGTHS, BASES, 10, 400, 10, 1, 0);
+        // 9 is the base of the page just stored
+        assertArrayEquals(marks(1, 2, 3, 4, 5, 6, 7, 8), evict);
+    }
+
+    @Test
+    public void testBaseOfKeptPageStaysAboveLimit() {
+        int[] ids = {1, 2};
+        int[] lengths = {100, 10};
+        int[] bases = {-1, 0};
+        assertNull(PageEviction.select(ids, lengths, bases, 2, 110, 2, 1, 0));
+        assertNull(PageEviction.select(ids, lengths, bases, 2, 110, 2, 0, 50));
+    }
+
+    private static boolean[] marks(int... ids) {
+        boolean[] marks = new boolean[IDS.length];
+        for (int id : ids) {
+            marks[id - 1] = true;
+        }
+        return marks;
+    }
+}
@@ -0,0 +1,203 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import org.apache.wicket.pageStore.IDataStore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestPageTable {
+
+    @Test
+    public void testPutGetRemove() {
+        PageTable table = new PageTable();
+        table.put(2, bytes(2, 10));
+        table.put(1, bytes(1, 20));
+        table.put(3, bytes(3, 30));
+
+        assertEquals(3, table.size());
+        assertEquals(60, table.getBytes());
+        assertEquals(1, table.getOldestId());
+        assertArrayEquals(bytes(1, 20), table.get(1));
+
+        // smaller version replaces in place, bigger one is appended
+        table.put(2, bytes(4, 5));
+        assertArrayEquals(bytes(4, 5), table.get(2));
+        table.put(2, bytes(5, 50));
+        assertArrayEquals(bytes(5, 50), table.get(2));
+        assertEquals(100, table.getBytes());
+
+        assertTrue(table.remove(1));
+        assertFalse(table.remove(1));
+        assertNull(table.get(1));
+        assertEquals(2, table.getOldestId());
+        assertArrayEquals(bytes(3, 30), table.get(3));
+    }
+
+    @Test
+    public void testEvictOldest() {
+        PageTable table = new PageTable();
+        for (int id = 0; id < 10; id++) {
+            table.put(id, bytes(id, 100));
+        }
+        assertEquals(0, table.evictOldest(9, 0, 0));
+        assertEquals(6, table.evictOldest(9, 4, 0));
+        assertEquals(6, table.getOldestId());
+        // the kept page stays even if it is the oldest one
+        table.put(0, bytes(0, 100));
+        assertEquals(4, table.evictOldest(0, 0, 100));
+        assertEquals(1, table.size());
+        assertArrayEquals(bytes(0, 100), table.get(0));
+    }
+
+    @Test
+    public void testEvictKeepsBasesOfDeltas() {
+        PageTable table = new PageTable();
+        DeltaDataStore delta = new DeltaDataStore(new TableDataStore(table), 3, 10);
+        byte[][] pages = new byte[11][];
+        for (int id = 1; id <= 10; id++) {
+            pages[id] = version(id);
+            delta.storeData("s1", id, pages[id]);
+        }
+        // snapshots 1, 5 and 9, the others are deltas
+        assertEquals(6, table.evictOldest(10, 4, 0));
+        assertEquals(5, table.getOldestId());
+        for (int id = 1; id <= 10; id++) {
+            if (table.contains(id)) {
+                assertArrayEquals(pages[id], delta.getData("s1", id));
+            }
+        }
+        assertTrue(table.contains(9));
+        assertTrue(table.contains(10));
+
+        // only the kept page and the base it needs are left
+        assertEquals(2, table.evictOldest(10, 1, 0));
+        assertEquals(2, table.size());
+        assertArrayEquals(pages[10], delta.getData("s1", 10));
+    }
+
+    @Test
+    public void testCopy() {
+        PageTable table = new PageTable();
+        for (int id = 0; id < 10; id += 2) {
+            table.put(id, bytes(id, 10 + id));
+        }
+        PageTable copy = table.copy(6, 2);
+        assertEquals(3, copy.size());
+        assertEquals(2, copy.getOldestId());
+        assertArrayEquals(bytes(6, 16), copy.get(6));
+        assertArrayEquals(bytes(4, 14), copy.get(4));
+
+        // missing page, the older ones are still copied
+        copy = table.copy(5, 5);
+        assertEquals(3, copy.size());
+        assertNull(copy.get(5));
+        assertArrayEquals(bytes(0, 10), copy.get(0));
+
+        assertEquals(1, table.copy(0, 3).size());
+        assertEquals(0, table.copy(-1, 3).size());
+    }
+
+    @Test
+    public void testRandomOperations() throws IOException {
+        Random random = new Random(1);
+        PageTable table = new PageTable();
+        Map<Integer, byte[]> expected = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            int id = random.nextInt(50);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id) != null, table.remove(id));
+            } else {
+                byte[] data = bytes(i, random.nextInt(200));
+                table.put(id, data);
+                expected.put(id, data);
+            }
+        }
+        PageTable copy = roundTrip(table);
+        assertEquals(expected.size(), table.size());
+        assertEquals(expected.size(), copy.size());
+        for (Map.Entry<Integer, byte[]> page : expected.entrySet()) {
+            assertArrayEquals(page.getValue(), table.get(page.getKey()));
+            assertArrayEquals(page.getValue(), copy.get(page.getKey()));
+        }
+        assertEquals(table.getBytes(), copy.getBytes());
+    }
+
+    private PageTable roundTrip(PageTable table) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        table.writeTo(new DataOutputStream(bytes));
+        return PageTable.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    /**
+     * Version of a page which differs from the others in a few bytes
+     */
+    private static byte[] version(int version) {
+        byte[] data = bytes(0, 1000);
+        data[500] = (byte) version;
+        return data;
+    }
+
+    private static byte[] bytes(int seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Data store of one session kept in a page table
+     */
+    private static class TableDataStore implements IDataStore {
+
+        private final PageTable table;
+
+        private TableDataStore(PageTable table) {
+            this.table = table;
+        }
+
+        @Override
+        public byte[] getData(String sessionId, int id) {
+            return table.get(id);
+        }
+
+        @Override
+        public void removeData(String sessionId, int id) {
+            table.remove(id);
+        }
+
+        @Override
+        public void removeData(String sessionId) {
+        }
+
+        @Override
+        public void storeData(String sessionId, int id, byte[] data) {
+            table.put(id, data);
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public boolean isReplicated() {
+            return false;
+        }
+
+        @Override
+        public boolean canBeAsynchronous() {
+            return false;
+        }
+    }
+}
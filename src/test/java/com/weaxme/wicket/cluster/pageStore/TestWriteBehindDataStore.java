@@ -0,0 +1,319 @@
+package com.weaxme.wicket.cluster.pageStore;
+
+import com.hazelcast.core.ExecutionCallback;
+import com.hazelcast.core.ICompletableFuture;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Write-behind pipeline against a cluster store whose writes are confirmed by the test
+ */
+public class TestWriteBehindDataStore {
+
+    private static final byte[] PAGE1 = {1};
+    private static final byte[] PAGE2 = {2};
+
+    private ManualDataStore cluster;
+    private WriteBehindDataStore store;
+
+    @Before
+    public void init() {
+        cluster = new ManualDataStore();
+        store = new WriteBehindDataStore(cluster, 100, 10);
+    }
+
+    @After
+    public void destroy() throws Exception {
+        cluster.completeAll();
+        store.destroy();
+    }
+
+    @Test
+    public void testReadsOwnWriteBeforeConfirmation() throws Exception {
+        store.storeData("s1", 1, PAGE1);
+        ManualWrite write = cluster.nextWrite();
+
+        assertArrayEquals(PAGE1, store.getData("s1", 1));
+        assertNull(cluster.getData("s1", 1));
+
+        write.complete();
+        assertArrayEquals(PAGE1, cluster.getData("s1", 1));
+        assertArrayEquals(PAGE1, store.getData("s1", 1));
+    }
+
+    @Test
+    public void testCoalescesWritesOfUnconfirmedPage() throws Exception {
+        store.storeData("s1", 1, PAGE1);
+        ManualWrite first = cluster.nextWrite();
+        store.storeData("s1", 1, PAGE2);
+        store.storeData("s1", 1, PAGE2);
+        assertArrayEquals(PAGE2, store.getData("s1", 1));
+
+        first.complete();
+        ManualWrite second = cluster.nextWrite();
+        assertArrayEquals(PAGE2, second.data);
+        second.complete();
+
+        assertNull(cluster.pollWrite());
+        assertArrayEquals(PAGE2, cluster.getData("s1", 1));
+    }
+
+    @Test
+    public void testRemovePageWaitsForWriteInFlight() throws Exception {
+        store.storeData("s1", 1, PAGE1);
+        ManualWrite write = cluster.nextWrite();
+
+        CountDownLatch removed = removeAsync(() -> store.removeData("s1", 1));
+        assertFalse("removal must wait for the write sent before it", removed.await(200, TimeUnit.MILLISECONDS));
+
+        // the write lands after the removal was requested
+        write.complete();
+        assertTrue(removed.await(5, TimeUnit.SECONDS));
+
+        assertNull(cluster.getData("s1", 1));
+        assertNull(store.getData("s1", 1));
+    }
+
+    @Test
+    public void testRemoveSessionWaitsForWritesInFlight() throws Exception {
+        store.storeData("s1", 1, PAGE1);
+        store.storeData("s1", 2, PAGE2);
+        store.storeData("s2", 1, PAGE1);
+        List<ManualWrite> writes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            writes.add(cluster.nextWrite());
+        }
+
+        CountDownLatch removed = removeAsync(() -> store.removeData("s1"));
+        assertFalse(removed.await(200, TimeUnit.MILLISECONDS));
+        for (ManualWrite write : writes) {
+            write.complete();
+        }
+        assertTrue(removed.await(5, TimeUnit.SECONDS));
+
+        assertNull(cluster.getData("s1", 1));
+        assertNull(cluster.getData("s1", 2));
+        assertNotNull(cluster.getData("s2", 1));
+    }
+
+    @Test
+    public void testStoreAfterRemoveIsWritten() throws Exception {
+        store.storeData("s1", 1, PAGE1);
+        ManualWrite write = cluster.nextWrite();
+        CountDownLatch removed = removeAsync(() -> store.removeData("s1", 1));
+        write.complete();
+        assertTrue(removed.await(5, TimeUnit.SECONDS));
+
+        store.storeData("s1", 1, PAGE2);
+        cluster.nextWrite().complete();
+        assertArrayEquals(PAGE2, cluster.getData("s1", 1));
+    }
+
+    @Test
+    public void testFailedWriteIsCounted() throws Exception {
+        store.storeData("s1", 1, PAGE1);
+        cluster.nextWrite().fail();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(JmxSupport.DOMAIN + ":type=DataStore,name=" + ObjectName.quote("write-behind"));
+        assertEquals(1L, server.getAttribute(name, "FailedPages"));
+        assertEquals(0, server.getAttribute(name, "PendingPages"));
+        assertNull(store.getData("s1", 1));
+    }
+
+    private static CountDownLatch removeAsync(Runnable removal) {
+        CountDownLatch removed = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            removal.run();
+            removed.countDown();
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return removed;
+    }
+
+    /**
+     * Cluster store whose asynchronous writes are applied when the test completes them
+     */
+    private static class ManualDataStore implements IAsyncDataStore {
+
+        private final Map<HazelcastPageKey, byte[]> pages = new ConcurrentHashMap<>();
+        private final BlockingQueue<ManualWrite> writes = new LinkedBlockingQueue<>();
+        private final List<ManualWrite> sent = new ArrayList<>();
+
+        ManualWrite nextWrite() throws InterruptedException {
+            ManualWrite write = writes.poll(5, TimeUnit.SECONDS);
+            assertNotNull("no write was sent", write);
+            return write;
+        }
+
+        ManualWrite pollWrite() throws InterruptedException {
+            return writes.poll(200, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void completeAll() {
+            // completed writes may send the next versions of their pages
+            for (int i = 0; i < sent.size(); i++) {
+                ManualWrite write = sent.get(i);
+                if (!write.isDone()) {
+                    write.complete();
+                }
+            }
+        }
+
+        @Override
+        public synchronized ICompletableFuture<?> storeDataAsync(String sessionId, int id, byte[] data) {
+            ManualWrite write = new ManualWrite(this, new HazelcastPageKey(sessionId, id), data);
+            sent.add(write);
+            return write;
+        }
+
+        @Override
+        public byte[] getData(String sessionId, int id) {
+            return pages.get(new HazelcastPageKey(sessionId, id));
+        }
+
+        @Override
+        public void removeData(String sessionId, int id) {
+            pages.remove(new HazelcastPageKey(sessionId, id));
+        }
+
+        @Override
+        public void removeData(String sessionId) {
+            pages.keySet().removeIf(key -> key.getSessionId().equals(sessionId));
+        }
+
+        @Override
+        public void storeData(String sessionId, int id, byte[] data) {
+            pages.put(new HazelcastPageKey(sessionId, id), data);
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public boolean isReplicated() {
+            return false;
+        }
+
+        @Override
+        public boolean canBeAsynchronous() {
+            return false;
+        }
+    }
+
+    private static class ManualWrite implements ICompletableFuture<Object> {
+
+        private final ManualDataStore store;
+        private final HazelcastPageKey key;
+        private final byte[] data;
+        private final List<ExecutionCallback<Object>> callbacks = new ArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Throwable failure;
+
+        private ManualWrite(ManualDataStore store, HazelcastPageKey key, byte[] data) {
+            this.store = store;
+            this.key = key;
+            this.data = data;
+        }
+
+        void complete() {
+            store.pages.put(key, data);
+            finish(null);
+        }
+
+        void fail() {
+            finish(new IllegalStateException("write failed"));
+        }
+
+        private void finish(Throwable failure) {
+            List<ExecutionCallback<Object>> toCall;
+            synchronized (this) {
+                this.failure = failure;
+                done.countDown();
+                toCall = new ArrayList<>(callbacks);
+            }
+            for (ExecutionCallback<Object> callback : toCall) {
+                notify(callback);
+            }
+        }
+
+        private void notify(ExecutionCallback<Object> callback) {
+            if (failure != null) {
+                callback.onFailure(failure);
+            } else {
+                callback.onResponse(null);
+            }
+        }
+
+        /**
+         * The write is handed to the test once the store listens to it, so the test can't complete it too early
+         */
+        @Override
+        public void andThen(ExecutionCallback<Object> callback) {
+            synchronized (this) {
+                if (done.getCount() > 0) {
+                    callbacks.add(callback);
+                    store.writes.add(this);
+                    return;
+                }
+            }
+            notify(callback);
+        }
+
+        @Override
+        public void andThen(ExecutionCallback<Object> callback, Executor executor) {
+            andThen(callback);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public Object get() throws InterruptedException {
+            done.await();
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException {
+            done.await(timeout, unit);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.weaxme.wicket.cluster.pageStore.compression;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestPageCompression {
+
+    private static final byte[] PAGE = repeat("<span wicket:id=\"label\">Compressible page content</span>", 100);
+
+    @Test
+    public void testLz4RoundTrip() {
+        PageCompression compression = new PageCompression(new Lz4PageCompressor(), 16);
+        byte[] encoded = compression.encode(PAGE);
+
+        assertTrue(encoded.length < PAGE.length);
+        assertEquals(Lz4PageCompressor.ID, encoded[2]);
+        assertArrayEquals(PAGE, compression.decode(encoded));
+    }
+
+    @Test
+    public void testDeflateRoundTrip() {
+        PageCompression compression = new PageCompression(new DeflatePageCompressor(), 16);
+        byte[] encoded = compression.encode(PAGE);
+
+        assertTrue(encoded.length < PAGE.length);
+        assertEquals(DeflatePageCompressor.ID, encoded[2]);
+        assertArrayEquals(PAGE, compression.decode(encoded));
+    }
+
+    @Test
+    public void testSmallPageIsNotCompressed() {
+        PageCompression compression = new PageCompression(new Lz4PageCompressor(), PAGE.length + 1);
+        byte[] encoded = compression.encode(PAGE);
+
+        assertEquals(PageCompression.UNCOMPRESSED, encoded[2]);
+        assertEquals(PAGE.length + PageCompression.HEADER_LENGTH, encoded.length);
+        assertArrayEquals(PAGE, compression.decode(encoded));
+    }
+
+    @Test
+    public void testReadsPagesOfOtherFormats() {
+        byte[] deflated = new PageCompression(new DeflatePageCompressor(), 16).encode(PAGE);
+        PageCompression lz4 = new PageCompression(new Lz4PageCompressor(), 16);
+
+        assertArrayEquals(PAGE, lz4.decode(deflated));
+        assertFalse(PageCompression.isEncoded(PAGE));
+        assertArrayEquals(PAGE, lz4.decode(PAGE));
+    }
+
+    private static byte[] repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(value).append(i);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
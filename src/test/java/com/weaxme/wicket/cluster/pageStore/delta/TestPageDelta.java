@@ -0,0 +1,63 @@
+package com.weaxme.wicket.cluster.pageStore.delta;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPageDelta {
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testChangedBytesInTheMiddle() {
+        byte[] base = randomBytes(10000);
+        byte[] target = base.clone();
+        target[5000] ^= 1;
+        target[7000] ^= 1;
+
+        byte[] delta = PageDelta.diff(base, target);
+        assertTrue(delta.length < 100);
+        assertArrayEquals(target, PageDelta.apply(base, delta, 0));
+    }
+
+    @Test
+    public void testInsertedAndRemovedBytes() {
+        byte[] base = randomBytes(10000);
+        byte[] inserted = randomBytes(10);
+        byte[] target = new byte[base.length + inserted.length - 100];
+        System.arraycopy(base, 0, target, 0, 3000);
+        System.arraycopy(inserted, 0, target, 3000, inserted.length);
+        System.arraycopy(base, 3100, target, 3000 + inserted.length, base.length - 3100);
+
+        byte[] delta = PageDelta.diff(base, target);
+        assertTrue(delta.length < 100);
+        assertArrayEquals(target, PageDelta.apply(base, delta, 0));
+    }
+
+    @Test
+    public void testUnrelatedData() {
+        byte[] base = randomBytes(1000);
+        byte[] target = randomBytes(1500);
+
+        assertArrayEquals(target, PageDelta.apply(base, PageDelta.diff(base, target), 0));
+    }
+
+    @Test
+    public void testEmptyAndEqualData() {
+        byte[] base = randomBytes(100);
+
+        assertArrayEquals(new byte[0], PageDelta.apply(base, PageDelta.diff(base, new byte[0]), 0));
+        assertArrayEquals(base, PageDelta.apply(new byte[0], PageDelta.diff(new byte[0], base), 0));
+        assertArrayEquals(base, PageDelta.apply(base, PageDelta.diff(base, Arrays.copyOf(base, base.length)), 0));
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,80 @@
+package com.weaxme.wicket.cluster.pageStore.memory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TestOffHeapPageMemory {
+
+    private OffHeapPageMemory memory;
+
+    @Before
+    public void init() {
+        memory = new OffHeapPageMemory(1000, 100);
+    }
+
+    @After
+    public void destroy() {
+        memory.destroy();
+    }
+
+    @Test
+    public void testReadsAllocatedPage() {
+        byte[] data = randomBytes(250);
+        CachedPage page = memory.allocate(data);
+
+        assertEquals(250, page.length());
+        assertArrayEquals(data, page.read());
+        assertEquals(300, memory.getUsedBytes());
+    }
+
+    @Test
+    public void testReusesFreedBlocks() {
+        CachedPage first = memory.allocate(randomBytes(600));
+        assertNotNull(first);
+        assertNull(memory.allocate(randomBytes(500)));
+
+        first.free();
+        byte[] data = randomBytes(1000);
+        CachedPage second = memory.allocate(data);
+        assertArrayEquals(data, second.read());
+        assertEquals(1000, memory.getUsedBytes());
+    }
+
+    @Test
+    public void testEmptyPage() {
+        CachedPage page = memory.allocate(new byte[0]);
+
+        assertEquals(0, page.read().length);
+        assertEquals(100, memory.getUsedBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPageCantBeReadAfterDestroy() {
+        CachedPage page = memory.allocate(randomBytes(250));
+        memory.destroy();
+
+        assertEquals(0, memory.getUsedBytes());
+        page.free();
+        page.read();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDestroyedMemoryCantAllocate() {
+        memory.destroy();
+        memory.allocate(randomBytes(100));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,79 @@
+package com.weaxme.wicket.cluster.pageStore.tiered;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestPageSegmentStore {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadsAppendedPages() throws IOException {
+        PageSegmentStore store = new PageSegmentStore("node", folder.newFolder(), 4096);
+        byte[] first = randomBytes(100);
+        byte[] second = randomBytes(200);
+
+        PageLocation firstLocation = store.append("session", 1, first);
+        PageLocation secondLocation = store.append("session", 2, second);
+
+        assertArrayEquals(first, store.read(firstLocation));
+        assertArrayEquals(second, store.read(secondLocation));
+    }
+
+    @Test
+    public void testStartsNewSegmentWhenFull() throws IOException {
+        PageSegmentStore store = new PageSegmentStore("node", folder.newFolder(), 1024);
+
+        PageLocation first = store.append("session", 1, randomBytes(700));
+        PageLocation second = store.append("session", 2, randomBytes(700));
+
+        assertNotEquals(first.getSegment(), second.getSegment());
+        assertEquals(2, store.getSegmentCount());
+        assertEquals(1, store.getSealedSegments().size());
+    }
+
+    @Test
+    public void testRecoversAfterTornRecord() throws IOException {
+        File directory = folder.newFolder();
+        PageSegmentStore store = new PageSegmentStore("node", directory, 4096);
+        byte[] page = randomBytes(100);
+        PageLocation valid = store.append("session", 1, page);
+        PageLocation torn = store.append("session", 2, randomBytes(100));
+        store.flush();
+        // simulate a crash in the middle of the second record
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "segment-0.dat"), "rw")) {
+            file.seek(torn.getOffset() + 50);
+            file.write(new byte[50]);
+        }
+
+        PageSegmentStore recovered = new PageSegmentStore("node", directory, 4096);
+        List<Integer> pages = new ArrayList<>();
+        recovered.scan(0, (sessionId, pageId, offset, data) -> pages.add(pageId));
+
+        assertEquals(1, pages.size());
+        assertArrayEquals(page, recovered.read(valid));
+        assertNull(recovered.read(torn));
+        // the torn record is overwritten by the next append
+        assertEquals(torn.getOffset(), recovered.append("session", 3, page).getOffset());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
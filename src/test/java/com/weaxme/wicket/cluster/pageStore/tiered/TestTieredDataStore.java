@@ -0,0 +1,183 @@
+package com.weaxme.wicket.cluster.pageStore.tiered;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import com.weaxme.wicket.cluster.pageStore.HazelcastDataStore;
+import com.weaxme.wicket.cluster.pageStore.SessionPageIndex;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tiered store over the map store of an embedded Hazelcast member
+ */
+public class TestTieredDataStore {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HazelcastInstance hazelcast;
+    private HazelcastDataStore delegate;
+    private TieredDataStore store;
+
+    @Before
+    public void init() {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getMemberAttributeConfig().setStringAttribute(TieredDataStore.MEMBER_NODE_ATTRIBUTE, "node1");
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+    }
+
+    @After
+    public void destroy() {
+        if (store != null) {
+            store.destroy();
+        }
+        hazelcast.shutdown();
+    }
+
+    @Test
+    public void testDemotedPagesAreReadBack() throws Exception {
+        open(2, 0, 0);
+        for (int id = 1; id <= 5; id++) {
+            store.storeData("s1", id, page(id, 100));
+        }
+
+        awaitDemoted(3);
+        for (int id = 1; id <= 3; id++) {
+            assertNull(delegate.getData("s1", id));
+        }
+        for (int id = 1; id <= 5; id++) {
+            assertArrayEquals(page(id, 100), store.getData("s1", id));
+        }
+        assertEquals(3, coldIndex().get("s1").size());
+    }
+
+    @Test
+    public void testMaxPagesWithSparseIds() throws Exception {
+        // one hot page, so two pages are kept in the segments
+        open(1, 3, 0);
+        for (int id : new int[]{10, 20, 35, 51, 60}) {
+            store.storeData("s1", id, page(id, 100));
+        }
+
+        awaitDemoted(4);
+        assertNull(store.getData("s1", 10));
+        assertNull(store.getData("s1", 20));
+        for (int id : new int[]{35, 51, 60}) {
+            assertArrayEquals(page(id, 100), store.getData("s1", id));
+        }
+        assertEquals(2L, stat("EvictedColdPages"));
+        assertEquals(2, locations().size());
+    }
+
+    @Test
+    public void testMaxBytesOfColdPages() throws Exception {
+        open(1, 0, 250);
+        for (int id = 1; id <= 4; id++) {
+            store.storeData("s1", id, page(id, 100));
+        }
+
+        awaitDemoted(3);
+        assertNull(store.getData("s1", 1));
+        for (int id = 2; id <= 4; id++) {
+            assertArrayEquals(page(id, 100), store.getData("s1", id));
+        }
+        assertEquals(200L, coldIndex().get("s1").getBytes());
+    }
+
+    @Test
+    public void testRemovedColdPageLeavesIndex() throws Exception {
+        open(1, 0, 0);
+        store.storeData("s1", 1, page(1, 100));
+        store.storeData("s1", 2, page(2, 100));
+        store.storeData("s1", 3, page(3, 100));
+        awaitDemoted(2);
+
+        store.removeData("s1", 1);
+        assertNull(store.getData("s1", 1));
+        assertArrayEquals(new int[]{2}, coldIndex().get("s1").getIds());
+        assertEquals(1, locations().size());
+    }
+
+    @Test
+    public void testRemovedSessionLeavesNoLocations() throws Exception {
+        open(1, 0, 0);
+        for (int id = 1; id <= 3; id++) {
+            store.storeData("s1", id, page(id, 100));
+            store.storeData("s2", id, page(id, 100));
+        }
+        awaitDemoted(4);
+
+        store.removeData("s1");
+        for (int id = 1; id <= 3; id++) {
+            assertNull(store.getData("s1", id));
+        }
+        assertArrayEquals(page(1, 100), store.getData("s2", 1));
+        assertEquals(2, locations().size());
+        assertTrue(coldIndex().get("s1").isRemoved());
+
+        // demotions which come after the removal don't publish locations, the pages stay in the delegate
+        for (int id = 4; id <= 6; id++) {
+            store.storeData("s1", id, page(id, 100));
+        }
+        store.storeData("s2", 4, page(4, 100));
+        awaitDemoted(5);
+        assertEquals(3, locations().size());
+        assertNotNull(delegate.getData("s1", 4));
+        assertArrayEquals(page(4, 100), store.getData("s1", 4));
+    }
+
+    private void open(int hotPages, int maxPages, long maxBytes) throws IOException {
+        delegate = new HazelcastDataStore(hazelcast);
+        store = new TieredDataStore(delegate, hazelcast, "node1", folder.newFolder(), 64 * 1024,
+                hotPages, maxPages, maxBytes, 100, 0.5);
+    }
+
+    private IMap<String, SessionPageIndex> coldIndex() {
+        return hazelcast.getMap(TieredDataStore.COLD_INDEX_NAME);
+    }
+
+    private IMap<?, ?> locations() {
+        return hazelcast.getMap(TieredDataStore.LOCATION_STORE_NAME);
+    }
+
+    private static void awaitDemoted(long pages) throws Exception {
+        // pages are demoted by the background thread
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stat("DemotedPages") < pages && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(pages, stat("DemotedPages"));
+    }
+
+    private static long stat(String attribute) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(JmxSupport.DOMAIN + ":type=DataStore,name=" + ObjectName.quote("tiered"));
+        return (Long) server.getAttribute(name, attribute);
+    }
+
+    private static byte[] page(int seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,125 @@
+package com.weaxme.wicket.cluster.persistence;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryEventType;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class TestFileMapStore {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File root;
+    private FileMapStore store;
+
+    @Before
+    public void init() throws IOException {
+        root = folder.newFolder();
+        store = newStore(0);
+    }
+
+    @Test
+    public void testLoadsStoredEntryAfterRestart() {
+        store.store("session", "value");
+        store.store("session", "new value");
+
+        assertEquals("new value", newStore(0).load("session"));
+    }
+
+    @Test
+    public void testDeletesEntries() {
+        store.storeAll(Collections.singletonMap("first", "1"));
+        store.store("second", "2");
+        store.deleteAll(Arrays.asList("first", "second"));
+
+        assertNull(store.load("first"));
+        assertNull(store.load("second"));
+    }
+
+    @Test
+    public void testLoadsOnlyExistingEntries() {
+        store.store("first", "1");
+
+        Map<Object, Object> entries = store.loadAll(Arrays.asList("first", "second"));
+
+        assertEquals(Collections.singletonMap("first", "1"), entries);
+    }
+
+    @Test
+    public void testSkipsExpiredEntries() throws IOException {
+        store.store("session", "value");
+        touchAll(root, System.currentTimeMillis() - 10000);
+
+        assertNull(newStore(5000).load("session"));
+    }
+
+    @Test
+    public void testDeletesEntryExpiredInMemory() {
+        store.store("session", "value");
+
+        store.entryExpired(new EntryEvent<>("map", null, EntryEventType.EXPIRED.getType(), "session", null));
+
+        assertNull(newStore(0).load("session"));
+    }
+
+    @Test
+    public void testIdleEntryIsNotLoadedAgain() throws InterruptedException {
+        Config config = new Config();
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getMapConfig("idle").setMaxIdleSeconds(2);
+        MapPersistence.configure(config, root, 0, 1, 0, "idle");
+        HazelcastInstance hazelcast = Hazelcast.newHazelcastInstance(config);
+        try {
+            IMap<String, String> map = hazelcast.getMap("idle");
+            map.put("session", "value");
+            Thread.sleep(3500);
+
+            // an access finds the entry expired and asks the store for it
+            assertFalse(map.containsKey("session"));
+        } finally {
+            hazelcast.shutdown();
+        }
+    }
+
+    @Test
+    public void testDoesNotLoadAllKeys() {
+        store.store("session", "value");
+
+        assertNull(store.loadAllKeys());
+        assertFalse(store.loadAll(Collections.singletonList("session")).isEmpty());
+    }
+
+    private FileMapStore newStore(long maxAgeMillis) {
+        FileMapStore mapStore = new FileMapStore(root, maxAgeMillis);
+        mapStore.init(null, new Properties(), "map");
+        return mapStore;
+    }
+
+    private static void touchAll(File file, long time) {
+        if (file.isDirectory()) {
+            for (File child : file.listFiles()) {
+                touchAll(child, time);
+            }
+        } else {
+            file.setLastModified(time);
+        }
+    }
+}
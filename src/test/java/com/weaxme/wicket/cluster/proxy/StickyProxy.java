@@ -0,0 +1,133 @@
+package com.weaxme.wicket.cluster.proxy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.weaxme.wicket.cluster.session.HazelcastSessionStore2;
+import com.weaxme.wicket.cluster.session.RoutingHints;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for a sticky balancer in front of the nodes, for trying the routing hints without a real one.
+ * <p>
+ * Requests with a {@value HazelcastSessionStore2#JSESSIONID} cookie are sent to the node from the route suffix
+ * of the cookie, other requests and requests to an unknown node go round robin.
+ * <p>
+ * Usage: {@code StickyProxy 8080 node1=http://localhost:8081 node2=http://localhost:8082}
+ */
+@Slf4j
+public class StickyProxy {
+
+    private final Map<String, String> nodes;
+    private final List<String> urls;
+    private final AtomicInteger next = new AtomicInteger();
+    private HttpServer server;
+
+    /**
+     * @param nodes base urls of the nodes by node name
+     */
+    public StickyProxy(Map<String, String> nodes) {
+        this.nodes = new LinkedHashMap<>(nodes);
+        this.urls = new ArrayList<>(nodes.values());
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::forward);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        log.info("Sticky proxy on port {} for {}", port, nodes);
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * @return base url of the node for the request with the given Cookie header
+     */
+    String route(String cookieHeader) {
+        String route = cookieHeader != null ? getRoute(cookieHeader) : null;
+        String url = route != null ? nodes.get(route) : null;
+        return url != null ? url : urls.get(Math.floorMod(next.getAndIncrement(), urls.size()));
+    }
+
+    private static String getRoute(String cookieHeader) {
+        for (String cookie : cookieHeader.split(";")) {
+            int eq = cookie.indexOf('=');
+            if (eq > 0 && cookie.substring(0, eq).trim().equals(HazelcastSessionStore2.JSESSIONID)) {
+                return RoutingHints.getRoute(cookie.substring(eq + 1).trim());
+            }
+        }
+        return null;
+    }
+
+    private void forward(HttpExchange exchange) throws IOException {
+        String target = route(exchange.getRequestHeaders().getFirst("Cookie"));
+        HttpURLConnection connection = (HttpURLConnection) new URL(target + exchange.getRequestURI()).openConnection();
+        try {
+            connection.setInstanceFollowRedirects(false);
+            connection.setRequestMethod(exchange.getRequestMethod());
+            exchange.getRequestHeaders().forEach((name, values) -> {
+                if (!name.equalsIgnoreCase("Host") && !name.equalsIgnoreCase("Content-Length")) {
+                    values.forEach(value -> connection.addRequestProperty(name, value));
+                }
+            });
+            if ("POST".equals(exchange.getRequestMethod()) || "PUT".equals(exchange.getRequestMethod())) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    copy(exchange.getRequestBody(), out);
+                }
+            }
+            int status = connection.getResponseCode();
+            connection.getHeaderFields().forEach((name, values) -> {
+                if (name != null && !name.equalsIgnoreCase("Transfer-Encoding") && !name.equalsIgnoreCase("Content-Length")) {
+                    exchange.getResponseHeaders().put(name, values);
+                }
+            });
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            exchange.sendResponseHeaders(status, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                if (in != null) {
+                    copy(in, out);
+                }
+            }
+            log.debug("{} {} -> {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), target, status);
+        } catch (IOException ex) {
+            log.warn("Can't forward {} to {}", exchange.getRequestURI(), target, ex);
+            exchange.sendResponseHeaders(502, -1);
+        } finally {
+            exchange.close();
+            connection.disconnect();
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> nodes = new LinkedHashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String[] node = args[i].split("=", 2);
+            nodes.put(node[0], node[1]);
+        }
+        new StickyProxy(nodes).start(Integer.parseInt(args[0]));
+    }
+}
@@ -0,0 +1,28 @@
+package com.weaxme.wicket.cluster.proxy;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class TestStickyProxy {
+
+    @Test
+    public void testRoute() {
+        Map<String, String> nodes = new LinkedHashMap<>();
+        nodes.put("node1", "http://localhost:8081");
+        nodes.put("node2", "http://localhost:8082");
+        StickyProxy proxy = new StickyProxy(nodes);
+
+        assertEquals("http://localhost:8082", proxy.route("JSESSIONID=abc.node2"));
+        assertEquals("http://localhost:8082", proxy.route("lang=en; JSESSIONID=abc.node2; a=b"));
+        assertEquals("http://localhost:8081", proxy.route("JSESSIONID=abc.node1"));
+
+        // without route the requests are spread over the nodes
+        assertNotEquals(proxy.route("JSESSIONID=abc"), proxy.route(null));
+        assertNotEquals(proxy.route("JSESSIONID=abc.node3"), proxy.route("lang=en"));
+    }
+}
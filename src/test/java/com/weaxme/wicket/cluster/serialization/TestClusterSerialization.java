@@ -0,0 +1,124 @@
+package com.weaxme.wicket.cluster.serialization;
+
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import com.weaxme.wicket.cluster.pageStore.HazelcastPageKey;
+import com.weaxme.wicket.cluster.pageStore.SessionPageIndex;
+import com.weaxme.wicket.cluster.pageStore.tiered.PageLocation;
+import com.weaxme.wicket.cluster.session.SessionAttributes;
+import com.weaxme.wicket.cluster.session.SessionEdge;
+import com.weaxme.wicket.cluster.session.SessionGraph;
+import com.weaxme.wicket.cluster.session.SessionVertex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestClusterSerialization {
+
+    private InternalSerializationService serializationService;
+
+    @Before
+    public void init() {
+        serializationService = new DefaultSerializationServiceBuilder()
+                .addDataSerializableFactory(ClusterSerialization.FACTORY_ID, new ClusterSerialization())
+                .build();
+    }
+
+    @After
+    public void destroy() {
+        serializationService.dispose();
+    }
+
+    @Test
+    public void testGraph() {
+        SessionGraph graph = new SessionGraph("id1");
+        graph.addVertex(new SessionVertex("id1", "node1"));
+        graph.addEdge(new SessionEdge("id1", "id1"));
+        graph.addVertex(new SessionVertex("id2", "node2"));
+        graph.addEdge(new SessionEdge("id1", "id2"));
+        graph.addVertex(new SessionVertex("id3", "node3"));
+        graph.addEdge(new SessionEdge("id2", "id3"));
+        graph.removeVertex(graph.getVertex("id2"));
+
+        SessionGraph copy = roundTrip(graph);
+
+        assertEquals("id1", copy.getRootId());
+        assertEquals(graph.getCreatedAt(), copy.getCreatedAt());
+        assertEquals(2, copy.getVertices().size());
+        assertEquals("id3", copy.findVertex("id1", "node3").getId());
+        assertEquals("id1", copy.findVertex("id3", "node1").getId());
+        assertNull(copy.findVertex("id1", "node2"));
+        assertEquals(new HashSet<>(graph.getEdges("id1")), new HashSet<>(copy.getEdges("id1")));
+        // only the self edge of the root is left, the edges of the removed session are gone
+        assertEquals(1, copy.getEdges("id1").size());
+        assertTrue(copy.getEdges("id3").isEmpty());
+    }
+
+    @Test
+    public void testGraphSizeDoesNotGrowWithRemovedSessions() {
+        SessionGraph graph = new SessionGraph("id1");
+        graph.addVertex(new SessionVertex("id1", "node1"));
+        int size = 0;
+        for (int i = 0; i < 1000; i++) {
+            SessionVertex alias = new SessionVertex("alias" + i, "node2");
+            graph.addVertex(alias);
+            graph.addEdge(new SessionEdge("id1", alias.getId()));
+            graph.removeVertex(alias);
+            if (i == 0) {
+                size = serializationService.toData(graph).totalSize();
+            }
+        }
+
+        assertEquals(size, serializationService.toData(graph).totalSize());
+        SessionGraph copy = roundTrip(graph);
+        assertEquals(1, copy.getVertices().size());
+        assertEquals("id1", copy.findVertex("id1", "node1").getId());
+    }
+
+    @Test
+    public void testAttributes() {
+        SessionAttributes attributes = new SessionAttributes();
+        attributes.set("a", new byte[]{1, 2, 3});
+        attributes.set("b", new byte[0]);
+
+        SessionAttributes copy = roundTrip(attributes);
+
+        assertEquals(2, copy.getValues().size());
+        assertArrayEquals(new byte[]{1, 2, 3}, copy.get("a"));
+        assertArrayEquals(new byte[0], copy.get("b"));
+    }
+
+    @Test
+    public void testPageRecords() {
+        HazelcastPageKey key = new HazelcastPageKey("session", 7);
+        assertEquals(key, roundTrip(key));
+        PageLocation location = new PageLocation("node1", 2, 4096, 512);
+        assertEquals(location, roundTrip(location));
+    }
+
+    @Test
+    public void testPageIndex() {
+        SessionPageIndex index = new SessionPageIndex();
+        index.put(3, 100, -1);
+        index.put(9, 20, 3);
+        index.put(5, 30, -1);
+
+        SessionPageIndex copy = roundTrip(index);
+
+        assertEquals(3, copy.size());
+        assertEquals(150, copy.getBytes());
+        // the delta 9 keeps its base 3
+        assertArrayEquals(new int[]{5}, copy.evictOldest(9, 2, 0));
+    }
+
+    private <T> T roundTrip(T value) {
+        return serializationService.toObject(serializationService.toData(value));
+    }
+}
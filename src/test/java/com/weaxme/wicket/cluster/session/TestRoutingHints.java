@@ -0,0 +1,105 @@
+package com.weaxme.wicket.cluster.session;
+
+import org.junit.Test;
+
+import javax.servlet.ServletContext;
+import javax.servlet.SessionCookieConfig;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestRoutingHints {
+
+    private final RoutingHints hints = new RoutingHints("node1");
+    private final List<Cookie> added = new ArrayList<>();
+
+    @Test
+    public void testSetsCookieOfNewSession() {
+        assertTrue(hints.apply(request("/app"), response(), "abc"));
+
+        assertEquals(1, added.size());
+        Cookie cookie = added.get(0);
+        assertEquals(HazelcastSessionStore2.JSESSIONID, cookie.getName());
+        assertEquals("abc.node1", cookie.getValue());
+        assertEquals("/app", cookie.getPath());
+        assertTrue(cookie.isHttpOnly());
+    }
+
+    @Test
+    public void testKeepsCookieWithOwnRoute() {
+        assertFalse(hints.apply(request("", new Cookie(HazelcastSessionStore2.JSESSIONID, "abc.node1")), response(), "abc"));
+        assertTrue(added.isEmpty());
+    }
+
+    @Test
+    public void testRefreshesCookieWithoutRoute() {
+        // the container wrote the plain id
+        assertTrue(hints.apply(request("", new Cookie(HazelcastSessionStore2.JSESSIONID, "abc")), response(), "abc"));
+        assertEquals("abc.node1", added.get(0).getValue());
+        assertEquals("/", added.get(0).getPath());
+    }
+
+    @Test
+    public void testReplacesForeignRoute() {
+        // failover from node2, or a route of a longer node name which ends with this one
+        assertTrue(hints.apply(request("", new Cookie(HazelcastSessionStore2.JSESSIONID, "abc.node2")), response(), "abc"));
+        assertTrue(hints.apply(request("", new Cookie(HazelcastSessionStore2.JSESSIONID, "abc.xnode1")), response(), "abc"));
+        assertEquals(2, added.size());
+        assertEquals("abc.node1", added.get(1).getValue());
+    }
+
+    @Test
+    public void testRouteFollowsLastDot() {
+        assertEquals("node1", RoutingHints.getRoute("abc.node1"));
+        assertEquals("node1", RoutingHints.getRoute("node0abc.x.node1"));
+        assertNull(RoutingHints.getRoute("abc"));
+        assertNull(RoutingHints.getRoute("abc."));
+    }
+
+    private HttpServletRequest request(String contextPath, Cookie... cookies) {
+        SessionCookieConfig config = (SessionCookieConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{SessionCookieConfig.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isHttpOnly":
+                            return true;
+                        case "isSecure":
+                            return false;
+                        default:
+                            return null;
+                    }
+                });
+        ServletContext context = (ServletContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ServletContext.class}, (proxy, method, args) -> "getSessionCookieConfig".equals(method.getName()) ? config : null);
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getServletContext":
+                            return context;
+                        case "getContextPath":
+                            return contextPath;
+                        case "getCookies":
+                            return cookies.length > 0 ? cookies : null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private HttpServletResponse response() {
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> {
+                    if ("addCookie".equals(method.getName())) {
+                        added.add((Cookie) args[0]);
+                    }
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,118 @@
+package com.weaxme.wicket.cluster.session;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Session graphs kept per user on an embedded Hazelcast member
+ */
+public class TestSessionAliases {
+
+    private HazelcastInstance hazelcast;
+    private SessionAliases aliases;
+
+    @Before
+    public void init() {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+        IMap<String, Serializable> store = hazelcast.getMap(HazelcastSessionStore2.STORE_NAME);
+        aliases = new SessionAliases(hazelcast, store, new SessionStoreStats());
+    }
+
+    @After
+    public void destroy() {
+        hazelcast.shutdown();
+    }
+
+    @Test
+    public void testGraphPerUser() {
+        aliases.createRoot("user1", "node1");
+        aliases.createRoot("user2", "node1");
+        aliases.addAlias("user1", "user1", "user1-node2", "node2");
+
+        assertEquals("user1", aliases.getMasterId("user1"));
+        assertEquals("user1", aliases.getMasterId("user1-node2"));
+        assertEquals("user2", aliases.getMasterId("user2"));
+        // every user has an entry of its own
+        assertEquals(2, hazelcast.getMap(SessionAliases.GRAPH_STORE_NAME).size());
+        assertEquals(2, aliases.getGraph("user1").getVertices().size());
+        assertEquals(1, aliases.getGraph("user2").getVertices().size());
+
+        assertEquals("user1-node2", aliases.getGraph("user1").findVertex("user1", "node2").getId());
+        assertNull(aliases.getGraph("user2").findVertex("user2", "node2"));
+    }
+
+    @Test
+    public void testGraphIsRemovedWithLastSession() {
+        aliases.createRoot("user1", "node1");
+        aliases.addAlias("user1", "user1", "user1-node2", "node2");
+
+        assertFalse(aliases.removeAlias("user1", "user1-node2"));
+        assertNull(aliases.getMasterId("user1-node2"));
+        assertEquals(1, aliases.getGraph("user1").getVertices().size());
+
+        assertTrue(aliases.removeAlias("user1", "user1"));
+        assertNull(aliases.getMasterId("user1"));
+        assertTrue(hazelcast.getMap(SessionAliases.GRAPH_STORE_NAME).isEmpty());
+    }
+
+    @Test
+    public void testGraphIsRemovedWithGroup() {
+        aliases.createRoot("user1", "node1");
+        aliases.createRoot("user2", "node1");
+        aliases.addAlias("user1", "user1", "user1-node2", "node2");
+
+        assertEquals(new HashSet<>(Arrays.asList("user1", "user1-node2")), new HashSet<>(aliases.removeGroup("user1")));
+        assertNull(aliases.getGraph("user1"));
+        assertNull(aliases.getMasterId("user1"));
+        assertNull(aliases.getMasterId("user1-node2"));
+        // the graph of the other user stays
+        assertEquals(1, hazelcast.getMap(SessionAliases.GRAPH_STORE_NAME).size());
+        assertEquals("user2", aliases.getMasterId("user2"));
+    }
+
+    @Test
+    public void testTouchKeepsGraph() {
+        aliases.createRoot("user1", "node1");
+        aliases.touch("user1");
+        aliases.touch("missing");
+
+        assertEquals(1, aliases.getGraph("user1").getVertices().size());
+        assertNull(aliases.getGraph("missing"));
+    }
+
+    @Test
+    public void testLostGraphIsStartedAgain() {
+        aliases.createRoot("user1", "node1");
+        hazelcast.getMap(SessionAliases.GRAPH_STORE_NAME).delete("user1");
+
+        aliases.addAlias("user1", "user1", "user1-node2", "node2");
+        SessionGraph graph = aliases.getGraph("user1");
+        assertEquals("user1", graph.getRootId());
+        assertNotNull(graph.getVertex("user1"));
+        assertEquals("user1-node2", graph.findVertex("user1", "node2").getId());
+    }
+
+    @Test
+    public void testUnknownSession() {
+        assertNull(aliases.getMasterId("missing"));
+        assertNull(aliases.getGraph("missing"));
+    }
+}
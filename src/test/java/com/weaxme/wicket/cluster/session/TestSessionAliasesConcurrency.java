@@ -0,0 +1,115 @@
+package com.weaxme.wicket.cluster.session;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Concurrent first requests of the same users on the same nodes
+ */
+@Slf4j
+public class TestSessionAliasesConcurrency {
+
+    private static final int USERS = 200;
+    private static final String[] NODES = {"node1", "node2", "node3"};
+    private static final int REQUESTS_PER_NODE = 4;
+
+    private HazelcastInstance hazelcast;
+    private SessionAliases aliases;
+
+    @Before
+    public void init() {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+        IMap<String, Serializable> store = hazelcast.getMap(HazelcastSessionStore2.STORE_NAME);
+        aliases = new SessionAliases(hazelcast, store, new SessionStoreStats());
+    }
+
+    @After
+    public void destroy() {
+        hazelcast.shutdown();
+    }
+
+    @Test
+    public void testOneAliasPerUserAndNode() throws Exception {
+        for (int i = 0; i < USERS; i++) {
+            aliases.createRoot("user" + i, "node0");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String[]>> futures = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            String jsessionid = "user" + i;
+            for (String node : NODES) {
+                for (int r = 0; r < REQUESTS_PER_NODE; r++) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        String id = UUID.randomUUID().toString();
+                        String alias = aliases.addAlias(jsessionid, jsessionid, id, node);
+                        return new String[]{jsessionid, node, id, alias};
+                    }));
+                }
+            }
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        Map<String, String> winners = new HashMap<>();
+        Map<String, Set<String>> created = new HashMap<>();
+        for (Future<String[]> future : futures) {
+            String[] result = future.get(1, TimeUnit.MINUTES);
+            String winner = winners.putIfAbsent(result[0] + "@" + result[1], result[3]);
+            if (winner != null) {
+                assertEquals("All requests of a user on a node get the same alias", winner, result[3]);
+            }
+            // every created session still resolves to the user and is a vertex of its graph
+            assertEquals(result[0], aliases.getMasterId(result[2]));
+            created.computeIfAbsent(result[0], user -> new HashSet<>()).add(result[2]);
+        }
+        long time = System.nanoTime() - begin;
+        executor.shutdown();
+
+        log.info("{} concurrent alias requests in {} ms, {} requests/s", futures.size(),
+                TimeUnit.NANOSECONDS.toMillis(time), futures.size() * TimeUnit.SECONDS.toNanos(1) / time);
+
+        for (int i = 0; i < USERS; i++) {
+            SessionGraph graph = aliases.getGraph("user" + i);
+            assertNotNull(graph);
+            assertEquals(NODES.length * REQUESTS_PER_NODE + 1, graph.getVertices().size());
+            for (String node : NODES) {
+                SessionVertex vertex = graph.findVertex("user" + i, node);
+                assertNotNull(vertex);
+                assertEquals(winners.get("user" + i + "@" + node), vertex.getId());
+            }
+            // the sessions which lost the race go with the group too
+            Set<String> removed = new HashSet<>(aliases.removeGroup("user" + i));
+            assertTrue(removed.containsAll(created.get("user" + i)));
+        }
+    }
+}
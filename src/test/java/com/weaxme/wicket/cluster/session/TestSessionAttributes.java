@@ -0,0 +1,77 @@
+package com.weaxme.wicket.cluster.session;
+
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestSessionAttributes {
+
+    @Test
+    public void testSerializesValues() {
+        ArrayList<String> value = new ArrayList<>(Arrays.asList("a", "b"));
+
+        assertEquals(value, AttributeSerializer.deserialize(AttributeSerializer.serialize(value)));
+    }
+
+    @Test
+    public void testEqualValuesHaveEqualForm() {
+        assertArrayEquals(AttributeSerializer.serialize(new ArrayList<>(Arrays.asList("a", "b"))),
+                AttributeSerializer.serialize(new ArrayList<>(Arrays.asList("a", "b"))));
+    }
+
+    @Test
+    public void testProcessorSetsAndRemovesAttributes() {
+        Map.Entry<String, Serializable> entry = new AbstractMap.SimpleEntry<>("master", null);
+
+        new SessionAttributes.SetProcessor("first", new byte[]{1}).process(entry);
+        new SessionAttributes.SetProcessor("second", new byte[]{2}).process(entry);
+        new SessionAttributes.SetProcessor("first", null).process(entry);
+
+        SessionAttributes attributes = (SessionAttributes) entry.getValue();
+        assertNull(attributes.get("first"));
+        assertArrayEquals(new byte[]{2}, attributes.get("second"));
+
+        new SessionAttributes.SetProcessor("second", null).process(entry);
+        assertNull(entry.getValue());
+    }
+
+    @Test
+    public void testTouchKeepsValues() {
+        Map.Entry<String, Serializable> entry = new AbstractMap.SimpleEntry<>("master", null);
+        new SessionAttributes.SetProcessor("first", new byte[]{1}).process(entry);
+        ((SessionAttributes) entry.getValue()).setWrittenAt(0);
+
+        new SessionAttributes.TouchProcessor().process(entry);
+
+        SessionAttributes attributes = (SessionAttributes) entry.getValue();
+        assertTrue(attributes.getWrittenAt() > 0);
+        assertArrayEquals(new byte[]{1}, attributes.get("first"));
+    }
+
+    @Test
+    public void testTouchDoesNotCreateRecord() {
+        Map.Entry<String, Serializable> entry = new AbstractMap.SimpleEntry<>("master", null);
+
+        new SessionAttributes.TouchProcessor().process(entry);
+
+        assertNull(entry.getValue());
+    }
+
+    @Test
+    public void testRemovingFromMissingRecordKeepsItMissing() {
+        Map.Entry<String, Serializable> entry = new AbstractMap.SimpleEntry<>("master", null);
+
+        new SessionAttributes.SetProcessor("first", null).process(entry);
+
+        assertNull(entry.getValue());
+    }
+}
@@ -0,0 +1,134 @@
+package com.weaxme.wicket.cluster.session;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Dump of one session through the diagnostics MBean of {@link HazelcastSessionStore2}
+ */
+public class TestSessionDiagnostics {
+
+    private HazelcastInstance hazelcast;
+    private HazelcastSessionStore2 sessionStore;
+
+    @Before
+    public void init() {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+        sessionStore = new HazelcastSessionStore2(hazelcast, "node1");
+        SessionAliases aliases = new SessionAliases(hazelcast, hazelcast.getMap(HazelcastSessionStore2.STORE_NAME),
+                new SessionStoreStats());
+        aliases.createRoot("s1", "node1");
+        aliases.addAlias("s1", "s1", "s1-node2", "node2");
+    }
+
+    @After
+    public void destroy() {
+        sessionStore.destroy();
+        hazelcast.shutdown();
+    }
+
+    @Test
+    public void testAttributeNamesOfOneSession() {
+        Request request = request("s1");
+        sessionStore.setAttribute(request, "first", "value");
+        sessionStore.setAttribute(request, "second", "value");
+        sessionStore.setAttribute(request("s2-unknown"), "other", "value");
+
+        assertEquals(new HashSet<>(Arrays.asList("first", "second")),
+                new HashSet<>(sessionStore.getAttributeNames(request)));
+
+        sessionStore.removeAttribute(request, "first");
+        assertEquals(Arrays.asList("second"), sessionStore.getAttributeNames(request));
+        // the alias sees the attributes of its user
+        assertEquals(Arrays.asList("second"), sessionStore.getAttributeNames(request("s1-node2")));
+    }
+
+    @Test
+    public void testDumpSession() throws Exception {
+        sessionStore.setAttribute(request("s1"), "name", "value");
+
+        String dump = dumpSession("s1-node2");
+        assertTrue(dump, dump.contains("session = s1-node2, master id = s1"));
+        assertTrue(dump, dump.contains("attributes = [name]"));
+        assertTrue(dump, dump.contains("id = s1, node = node1, in = "));
+        assertTrue(dump, dump.contains("id = s1-node2, node = node2, in = [s1], out = []"));
+
+        assertEquals("Session missing is unknown", dumpSession("missing"));
+    }
+
+    private static String dumpSession(String sessionId) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(JmxSupport.DOMAIN + ":type=SessionStore,name=" + ObjectName.quote("session-diagnostics"));
+        return (String) server.invoke(name, "dumpSession", new Object[]{sessionId}, new String[]{String.class.getName()});
+    }
+
+    /**
+     * Request of the http session {@code sessionId} outside of a request cycle
+     */
+    private Request request(String sessionId) {
+        HttpSession session = (HttpSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpSession.class}, (proxy, method, args) -> "getId".equals(method.getName()) ? sessionId : null);
+        HttpServletRequest servletRequest = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getSession":
+                            return session;
+                        case "getRequestURI":
+                            return "/";
+                        default:
+                            return null;
+                    }
+                });
+        return new Request() {
+            @Override
+            public Url getUrl() {
+                return Url.parse("/");
+            }
+
+            @Override
+            public Url getClientUrl() {
+                return getUrl();
+            }
+
+            @Override
+            public Locale getLocale() {
+                return Locale.getDefault();
+            }
+
+            @Override
+            public Charset getCharset() {
+                return StandardCharsets.UTF_8;
+            }
+
+            @Override
+            public Object getContainerRequest() {
+                return servletRequest;
+            }
+        };
+    }
+}
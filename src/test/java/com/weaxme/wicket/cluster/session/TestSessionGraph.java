@@ -0,0 +1,93 @@
+package com.weaxme.wicket.cluster.session;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestSessionGraph {
+
+    private SessionGraph graph;
+
+    @Before
+    public void init() {
+        graph = new SessionGraph("id1");
+        addAlias("id1", "id1", "node1");
+        addAlias("id1", "id2", "node2");
+        addAlias("id2", "id3", "node3");
+    }
+
+    @Test
+    public void testFindsSessionOnSameNode() {
+        assertEquals("id2", graph.findVertex("id2", "node2").getId());
+    }
+
+    @Test
+    public void testFindsConnectedSessionOnOtherNode() {
+        assertEquals("id1", graph.findVertex("id3", "node1").getId());
+        assertEquals("id3", graph.findVertex("id1", "node3").getId());
+    }
+
+    @Test
+    public void testDoesNotFindUnknownNode() {
+        assertNull(graph.findVertex("id1", "node4"));
+        assertNull(graph.findVertex("id4", "node1"));
+    }
+
+    @Test
+    public void testKeepsFirstSessionOnNode() {
+        addAlias("id3", "id4", "node1");
+
+        assertEquals("id1", graph.findVertex("id3", "node1").getId());
+        assertEquals("id4", graph.findVertex("id4", "node1").getId());
+    }
+
+    @Test
+    public void testReplacesRemovedSession() {
+        addAlias("id3", "id4", "node1");
+        graph.removeVertex(graph.getVertex("id1"));
+
+        assertEquals("id4", graph.findVertex("id2", "node1").getId());
+    }
+
+    @Test
+    public void testRemovedSessionLeavesNoEdges() {
+        graph.removeVertex(graph.getVertex("id2"));
+
+        assertTrue(graph.getEdges("id2").isEmpty());
+        assertTrue(graph.getEdges("id3").isEmpty());
+        assertEquals(1, graph.getEdges("id1").size());
+        // the component stays joined without the session
+        assertEquals("id1", graph.findVertex("id3", "node1").getId());
+    }
+
+    @Test
+    public void testComponentSurvivesRemovedRoots() {
+        addAlias("id3", "id4", "node1");
+        for (String id : new String[]{"id1", "id2"}) {
+            graph.removeVertex(graph.getVertex(id));
+        }
+
+        assertEquals("id4", graph.findVertex("id3", "node1").getId());
+        assertEquals("id3", graph.findVertex("id4", "node3").getId());
+        assertNull(graph.findVertex("id3", "node2"));
+    }
+
+    @Test
+    public void testJoinsSeparateComponents() {
+        addAlias("id5", "id5", "node4");
+        assertNull(graph.findVertex("id1", "node4"));
+
+        graph.addEdge(new SessionEdge("id3", "id5"));
+
+        assertEquals("id5", graph.findVertex("id1", "node4").getId());
+        assertEquals("id1", graph.findVertex("id5", "node1").getId());
+    }
+
+    private void addAlias(String from, String id, String node) {
+        graph.addVertex(new SessionVertex(id, node));
+        graph.addEdge(new SessionEdge(from, id));
+    }
+}
@@ -0,0 +1,148 @@
+package com.weaxme.wicket.cluster.session;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.weaxme.wicket.cluster.pageStore.HazelcastDataStore;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Pages of the sessions of a group are removed together with the group
+ */
+public class TestSessionGroupRemoval {
+
+    private static final byte[] PAGE = {1, 2, 3};
+
+    private HazelcastInstance hazelcast;
+    private HazelcastDataStore dataStore;
+    private SessionAliases aliases;
+    private HazelcastSessionStore2 sessionStore;
+
+    @Before
+    public void init() {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+        dataStore = new HazelcastDataStore(hazelcast);
+        IMap<String, Serializable> store = hazelcast.getMap(HazelcastSessionStore2.STORE_NAME);
+        aliases = new SessionAliases(hazelcast, store, new SessionStoreStats());
+        sessionStore = new HazelcastSessionStore2(hazelcast, "node2", 1800, 3600, 100,
+                SessionIdResolver.standard(), null, dataStore);
+
+        aliases.createRoot("master", "node1");
+        aliases.addAlias("master", "master", "alias", "node2");
+        dataStore.storeData("master", 1, PAGE);
+        dataStore.storeData("alias", 1, PAGE);
+        dataStore.storeData("alias", 2, PAGE);
+    }
+
+    @After
+    public void destroy() {
+        sessionStore.destroy();
+        dataStore.destroy();
+        hazelcast.shutdown();
+    }
+
+    @Test
+    public void testInvalidateRemovesPagesOfGroup() {
+        sessionStore.invalidate(request("alias"));
+
+        assertNull(dataStore.getData("master", 1));
+        assertNull(dataStore.getData("alias", 1));
+        assertNull(dataStore.getData("alias", 2));
+        assertNull(aliases.getMasterId("alias"));
+        assertNull(aliases.getGraph("master"));
+    }
+
+    @Test
+    public void testInvalidateDoesNotCreateGroup() {
+        dataStore.storeData("orphan", 1, PAGE);
+
+        sessionStore.invalidate(request("orphan"));
+
+        assertNull(dataStore.getData("orphan", 1));
+        assertNull(aliases.getMasterId("orphan"));
+        assertNull(aliases.getGraph("orphan"));
+        assertNotNull(dataStore.getData("alias", 1));
+    }
+
+    @Test
+    public void testSweeperRemovesPagesOfGroup() throws Exception {
+        // the graphs are older than the timeout as soon as they are created
+        HazelcastSessionStore2 sweeping = new HazelcastSessionStore2(hazelcast, "node1", 0, 1, 100,
+                SessionIdResolver.standard(), null, dataStore);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (aliases.getGraph("master") != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        sweeping.destroy();
+
+        assertNull(aliases.getGraph("master"));
+        assertNull(dataStore.getData("master", 1));
+        assertNull(dataStore.getData("alias", 1));
+        assertFalse(hazelcast.getMap(HazelcastDataStore.STORE_NAME).containsKey("alias"));
+    }
+
+    /**
+     * Request of the node with the http session {@code sessionId}
+     */
+    private Request request(String sessionId) {
+        HttpSession session = (HttpSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpSession.class}, (proxy, method, args) -> "getId".equals(method.getName()) ? sessionId : null);
+        HttpServletRequest servletRequest = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getSession":
+                            return session;
+                        case "getRequestURI":
+                            return "/";
+                        default:
+                            return null;
+                    }
+                });
+        return new Request() {
+            @Override
+            public Url getUrl() {
+                return Url.parse("/");
+            }
+
+            @Override
+            public Url getClientUrl() {
+                return getUrl();
+            }
+
+            @Override
+            public Locale getLocale() {
+                return Locale.getDefault();
+            }
+
+            @Override
+            public Charset getCharset() {
+                return StandardCharsets.UTF_8;
+            }
+
+            @Override
+            public Object getContainerRequest() {
+                return servletRequest;
+            }
+        };
+    }
+}
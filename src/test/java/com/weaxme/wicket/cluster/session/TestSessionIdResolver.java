@@ -0,0 +1,61 @@
+package com.weaxme.wicket.cluster.session;
+
+import org.junit.Test;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestSessionIdResolver {
+
+    @Test
+    public void testCookie() {
+        SessionIdResolver resolver = SessionIdResolver.standard();
+        assertEquals("abc", resolver.resolve(request("/", null, new Cookie("other", "x.y"),
+                new Cookie(HazelcastSessionStore2.JSESSIONID, "abc.node1"))));
+        assertEquals("abc", resolver.resolve(request("/", null, new Cookie(HazelcastSessionStore2.JSESSIONID, "abc"))));
+        assertNull(resolver.resolve(request("/", null, new Cookie("other", "abc"))));
+        // only the part after the last dot is the route
+        assertEquals("node0abc.x", resolver.resolve(request("/", null, new Cookie(HazelcastSessionStore2.JSESSIONID, "node0abc.x.node1"))));
+        assertNull(resolver.resolve(request("/", null)));
+    }
+
+    @Test
+    public void testUrl() {
+        SessionIdResolver resolver = SessionIdResolver.standard();
+        assertEquals("abc", resolver.resolve(request("/page;jsessionid=abc.node1", null)));
+        assertEquals("abc", resolver.resolve(request("/page;jsessionid=abc;other=1", null)));
+        assertEquals("a.b", resolver.resolve(request("/page;jsessionid=a.b.node1;other=1.2", null)));
+        assertEquals("abc", resolver.resolve(request("/page;jsessionid=abc", null)));
+        assertNull(resolver.resolve(request("/page;jsessionid=", null)));
+        assertNull(resolver.resolve(request("/page;other=1", null)));
+    }
+
+    @Test
+    public void testHeader() {
+        SessionIdResolver resolver = SessionIdResolver.chain(SessionIdResolver.standard(),
+                new HeaderSessionIdResolver("X-Session-Id"));
+        assertEquals("abc", resolver.resolve(request("/", "abc.node2")));
+        assertEquals("cookie", resolver.resolve(request("/", "abc",
+                new Cookie(HazelcastSessionStore2.JSESSIONID, "cookie"))));
+    }
+
+    private HttpServletRequest request(String uri, String header, Cookie... cookies) {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getCookies":
+                            return cookies.length > 0 ? cookies : null;
+                        case "getRequestURI":
+                            return uri;
+                        case "getHeader":
+                            return header;
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
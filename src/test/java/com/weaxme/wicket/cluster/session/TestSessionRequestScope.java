@@ -0,0 +1,214 @@
+package com.weaxme.wicket.cluster.session;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.weaxme.wicket.cluster.metrics.JmxSupport;
+import com.weaxme.wicket.cluster.serialization.ClusterSerialization;
+import org.apache.wicket.ThreadContext;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.cycle.RequestCycleContext;
+import org.apache.wicket.request.mapper.CompoundRequestMapper;
+import org.apache.wicket.response.StringResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Session resolved once per request cycle by {@link HazelcastSessionStore2}
+ */
+public class TestSessionRequestScope {
+
+    private HazelcastInstance hazelcast;
+    private HazelcastSessionStore2 sessionStore;
+
+    @Before
+    public void init() {
+        Config config = ClusterSerialization.configure(new Config());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+        sessionStore = new HazelcastSessionStore2(hazelcast, "node1");
+        new SessionAliases(hazelcast, hazelcast.getMap(HazelcastSessionStore2.STORE_NAME), new SessionStoreStats())
+                .createRoot("s1", "node1");
+    }
+
+    @After
+    public void destroy() {
+        ThreadContext.detach();
+        sessionStore.destroy();
+        hazelcast.shutdown();
+    }
+
+    @Test
+    public void testReadsSessionOncePerRequest() throws Exception {
+        Request first = request("s1", new AtomicBoolean(true));
+        startCycle(first);
+        sessionStore.setAttribute(first, "list", new ArrayList<>());
+
+        Request second = request("s1", new AtomicBoolean(true));
+        startCycle(second);
+        long remoteCalls = stat("RemoteCalls");
+        Object value = sessionStore.getAttribute(second, "list");
+        assertEquals(new ArrayList<>(), value);
+        // the pointer and the attributes are read by the first access only
+        assertEquals(remoteCalls + 2, stat("RemoteCalls"));
+
+        long scopeHits = stat("ScopeHits");
+        assertSame(value, sessionStore.getAttribute(second, "list"));
+        assertEquals("s1", sessionStore.getSessionId(second, false));
+        assertEquals(remoteCalls + 2, stat("RemoteCalls"));
+        assertEquals(scopeHits + 4, stat("ScopeHits"));
+
+        // an unchanged attribute isn't written back
+        long skippedWrites = stat("SkippedWrites");
+        sessionStore.setAttribute(second, "list", new ArrayList<>());
+        assertEquals(skippedWrites + 1, stat("SkippedWrites"));
+        assertEquals(remoteCalls + 2, stat("RemoteCalls"));
+    }
+
+    @Test
+    public void testSessionOnlyReadIsWrittenAgain() throws Exception {
+        Request first = request("s1", new AtomicBoolean(true));
+        startCycle(first);
+        sessionStore.setAttribute(first, "name", "value");
+        IMap<String, Serializable> store = hazelcast.getMap(HazelcastSessionStore2.STORE_NAME);
+        SessionAttributes old = (SessionAttributes) store.get("s1");
+        old.setWrittenAt(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        store.set("s1", old);
+
+        Request second = request("s1", new AtomicBoolean(true));
+        startCycle(second);
+        long remoteCalls = stat("RemoteCalls");
+        assertEquals("value", sessionStore.getAttribute(second, "name"));
+        // the pointer, the attributes and the touch of the record written more than half of the timeout ago
+        // and of the graph
+        assertEquals(remoteCalls + 4, stat("RemoteCalls"));
+        long writtenAt = ((SessionAttributes) store.get("s1")).getWrittenAt();
+        assertTrue(writtenAt > old.getWrittenAt());
+
+        Request third = request("s1", new AtomicBoolean(true));
+        startCycle(third);
+        remoteCalls = stat("RemoteCalls");
+        assertEquals("value", sessionStore.getAttribute(third, "name"));
+        assertEquals(remoteCalls + 2, stat("RemoteCalls"));
+        assertEquals(writtenAt, ((SessionAttributes) store.get("s1")).getWrittenAt());
+    }
+
+    @Test
+    public void testInvalidateClearsScope() throws Exception {
+        AtomicBoolean valid = new AtomicBoolean(true);
+        Request request = request("s1", valid);
+        startCycle(request);
+        sessionStore.setAttribute(request, "name", "value");
+        assertEquals("value", sessionStore.getAttribute(request, "name"));
+
+        sessionStore.invalidate(request);
+
+        // the request has no session anymore, nothing is served from the scope
+        assertNull(sessionStore.getSessionId(request, false));
+        assertNull(sessionStore.getAttribute(request, "name"));
+        assertNull(hazelcast.getMap(HazelcastSessionStore2.STORE_NAME).get("s1"));
+    }
+
+    @Test
+    public void testRequestOfOtherCycleIsNotCached() throws Exception {
+        Request request = request("s1", new AtomicBoolean(true));
+        startCycle(request);
+        sessionStore.setAttribute(request, "name", "value");
+
+        // e.g. a request read by a background thread of the application, the scope belongs to the cycle
+        Request other = request("s1", new AtomicBoolean(true));
+        long remoteCalls = stat("RemoteCalls");
+        assertEquals("value", sessionStore.getAttribute(other, "name"));
+        assertEquals("value", sessionStore.getAttribute(other, "name"));
+        assertEquals(remoteCalls + 4, stat("RemoteCalls"));
+    }
+
+    private long stat(String name) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(JmxSupport.DOMAIN + ":type=SessionStore,name=" + ObjectName.quote("session-store"));
+        return (Long) server.getAttribute(objectName, name);
+    }
+
+    private static void startCycle(Request request) {
+        ThreadContext.setRequestCycle(new RequestCycle(new RequestCycleContext(request, new StringResponse(),
+                new CompoundRequestMapper(), exception -> null)));
+    }
+
+    /**
+     * Request of the http session {@code sessionId}, which is gone once the session is invalidated
+     */
+    private Request request(String sessionId, AtomicBoolean valid) {
+        HttpSession session = (HttpSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpSession.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return sessionId;
+                        case "invalidate":
+                            valid.set(false);
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        HttpServletRequest servletRequest = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getSession":
+                            return valid.get() ? session : null;
+                        case "getRequestURI":
+                            return "/";
+                        default:
+                            return null;
+                    }
+                });
+        return new Request() {
+            @Override
+            public Url getUrl() {
+                return Url.parse("/");
+            }
+
+            @Override
+            public Url getClientUrl() {
+                return getUrl();
+            }
+
+            @Override
+            public Locale getLocale() {
+                return Locale.getDefault();
+            }
+
+            @Override
+            public Charset getCharset() {
+                return StandardCharsets.UTF_8;
+            }
+
+            @Override
+            public Object getContainerRequest() {
+                return servletRequest;
+            }
+        };
+    }
+}